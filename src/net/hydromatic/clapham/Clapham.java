@@ -33,15 +33,20 @@ import java.io.IOException;
 import java.io.PrintStream;
 import java.io.StringReader;
 import java.util.Arrays;
+import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 
 import net.hydromatic.clapham.chart.Chart;
 import net.hydromatic.clapham.chart.ChartFactory;
 import net.hydromatic.clapham.chart.exporter.ChartExporterMonitor;
 import net.hydromatic.clapham.chart.exporter.ChartHtmlExporter;
 import net.hydromatic.clapham.chart.java2d.Batik2DChart;
+import net.hydromatic.clapham.chart.java2d.ImageChart;
+import net.hydromatic.clapham.chart.svg.SvgChart;
 import net.hydromatic.clapham.graph.Grammar;
+import net.hydromatic.clapham.graph.Rewrite;
 import net.hydromatic.clapham.parser.Language;
 import net.hydromatic.clapham.parser.LanguageParserException;
 import net.hydromatic.clapham.parser.ProductionNode;
@@ -59,6 +64,20 @@ import net.hydromatic.clapham.parser.wirth.WirthParser;
 public class Clapham {
 	private File outputDir;
 
+	private int parallelism = 1;
+
+	private ImageFormat imageFormat = ImageFormat.PNG;
+
+	private boolean directRaster;
+
+	private boolean styledSvg;
+
+	private boolean incremental;
+
+	private boolean sharedImages;
+
+	private final Set<Rewrite> rewrites = EnumSet.allOf(Rewrite.class);
+
 	public Clapham() {
 	}
 
@@ -66,6 +85,113 @@ public class Clapham {
 		this.outputDir = file;
 	}
 
+	/**
+	 * Sets the number of threads used to render the rules.
+	 * 
+	 * @param parallelism
+	 *            Number of threads
+	 */
+	public void setParallelism(int parallelism) {
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Sets the format of the generated images.
+	 * 
+	 * @param imageFormat
+	 *            Image format
+	 */
+	public void setImageFormat(ImageFormat imageFormat) {
+		this.imageFormat = imageFormat;
+	}
+
+	/**
+	 * Sets whether PNG images are drawn directly into an image, rather than
+	 * drawn as SVG and transcoded by Batik. Direct drawing is faster, but
+	 * writes no SVG sources.
+	 * 
+	 * @param directRaster
+	 *            Whether to draw PNG images directly
+	 */
+	public void setDirectRaster(boolean directRaster) {
+		this.directRaster = directRaster;
+	}
+
+	/**
+	 * Sets whether SVG images use CSS classes and shared definitions, rather
+	 * than style each element.
+	 * 
+	 * @param styledSvg
+	 *            Whether to style SVG images with CSS classes
+	 */
+	public void setStyledSvg(boolean styledSvg) {
+		this.styledSvg = styledSvg;
+	}
+
+	/**
+	 * Sets whether to keep the images of a previous run in the output
+	 * directory, and draw again only the rules that changed.
+	 * 
+	 * @param incremental
+	 *            Whether to export incrementally
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Sets whether rules whose diagrams look the same share one image, named
+	 * after a hash of the diagram.
+	 * 
+	 * @param sharedImages
+	 *            Whether to share images between rules
+	 */
+	public void setSharedImages(boolean sharedImages) {
+		this.sharedImages = sharedImages;
+	}
+
+	/**
+	 * Turns off one of the rewrites that optimize the graph of each rule.
+	 * 
+	 * @param rewrite
+	 *            Rewrite not to apply
+	 */
+	public void disableRewrite(Rewrite rewrite) {
+		rewrites.remove(rewrite);
+	}
+
+	/**
+	 * Creates the factory of the charts that write the images in the current
+	 * format.
+	 * 
+	 * @return Chart factory
+	 */
+	private ChartFactory createChartFactory() {
+		switch (imageFormat) {
+		case SVG:
+			return new ChartFactory() {
+				public Chart createChart(Grammar grammar) {
+					SvgChart chart = new SvgChart(grammar);
+					chart.setStyled(styledSvg);
+					return chart;
+				}
+			};
+		default:
+			if (directRaster) {
+				return new ChartFactory() {
+					public Chart createChart(Grammar grammar) {
+						return new ImageChart(grammar);
+					}
+				};
+			}
+			return new ChartFactory() {
+				public Chart createChart(Grammar grammar) {
+					return new Batik2DChart(grammar);
+				}
+			};
+		}
+	}
+
 	/**
 	 * Deduces the dialect of the grammar from the suffix of the file name.
 	 * 
@@ -93,16 +219,16 @@ public class Clapham {
 		try {
 			Dialect dialect = deduceDialect(inputFile);
 
-			final ChartFactory chartFactory = new ChartFactory() {
-				public Chart createChart(Grammar grammar) {
-					return new Batik2DChart(grammar);
-				}
-			};
+			final ChartFactory chartFactory = createChartFactory();
 
 			ChartHtmlExporter exporter = new ChartHtmlExporter(chartFactory);
 
 			exporter.withOptimize(true)
+					.withRewrites(rewrites)
 					.withEbnfNotation(true)
+					.withParallelism(parallelism)
+					.withIncremental(incremental)
+					.withSharedImages(sharedImages)
 					.withOutputDirectory(outputDir);
 
 			exporter.export(ChartExporterMonitor.SYS_OUT, inputFile, dialect);
@@ -146,6 +272,46 @@ public class Clapham {
 									"-d option requires argument");
 						}
 						outputDirName = argIter.next();
+					} else if (arg.equals("-p")) {
+						if (!argIter.hasNext()) {
+							throw new RuntimeException(
+									"-p option requires argument");
+						}
+						setParallelism(Integer.parseInt(argIter.next()));
+					} else if (arg.equals("-f")) {
+						if (!argIter.hasNext()) {
+							throw new RuntimeException(
+									"-f option requires argument");
+						}
+						final String format = argIter.next();
+						try {
+							setImageFormat(ImageFormat.valueOf(format
+									.toUpperCase()));
+						} catch (IllegalArgumentException e) {
+							throw new RuntimeException("Bad image format: "
+									+ format);
+						}
+					} else if (arg.equals("-r")) {
+						setDirectRaster(true);
+					} else if (arg.equals("-c")) {
+						setStyledSvg(true);
+					} else if (arg.equals("-i")) {
+						setIncremental(true);
+					} else if (arg.equals("-s")) {
+						setSharedImages(true);
+					} else if (arg.equals("-x")) {
+						if (!argIter.hasNext()) {
+							throw new RuntimeException(
+									"-x option requires argument");
+						}
+						final String rewrite = argIter.next();
+						try {
+							disableRewrite(Rewrite.valueOf(rewrite
+									.toUpperCase()));
+						} catch (IllegalArgumentException e) {
+							throw new RuntimeException("Bad rewrite: "
+									+ rewrite);
+						}
 					} else if (arg.equals("--help")) {
 						usage(System.out);
 						return;
@@ -184,6 +350,15 @@ public class Clapham {
 		out.println("Options:");
 		out.println("  --help       Print this help");
 		out.println("  -d directory Specify output directory");
+		out.println("  -p threads   Build and render rules on this many threads");
+		out.println("  -f format    Image format: png (default) or svg");
+		out.println("  -r           Draw png images directly, without Batik");
+		out.println("  -c           Style svg images with css classes");
+		out.println("  -i           Draw only the rules changed since the last run");
+		out.println("  -s           Share one image between rules that look");
+		out.println("               the same");
+		out.println("  -x rewrite   Skip a graph rewrite: linebreaks, redundancy,");
+		out.println("               epsilon or rerun (may be repeated)");
 		out.println("  -o optimize graph");
 		out.println("  filename     Name of file containing grammar");
 	}
@@ -33,11 +33,19 @@ import java.io.File;
 import java.io.IOException;
 
 import net.hydromatic.clapham.graph.Grammar;
+import net.hydromatic.clapham.graph.Graph;
+import net.hydromatic.clapham.graph.Layout;
+import net.hydromatic.clapham.graph.Node;
 import net.hydromatic.clapham.graph.NodeType;
+import net.hydromatic.clapham.graph.Size;
 import net.hydromatic.clapham.graph.Symbol;
 
 public abstract class AbstractChart implements Chart, ChartOptions {
 
+	/**
+	 * Measures what is drawn, using the options and layout of another chart,
+	 * without keeping it.
+	 */
 	private static class SizeChart extends AbstractChart {
 
 		private AbstractChart owner;
@@ -72,7 +80,8 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 		}
 
 		@Override
-		protected void internalDrawRectangle(int x, int y, int width, int height) {
+		protected void internalDrawRectangle(int x, int y, int width,
+				int height) {
 		}
 		
 		@Override
@@ -85,6 +94,10 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 				int x, int y) {
 		}
 
+		@Override
+		protected void internalDrawPath(Path path) {
+		}
+
 		public ChartOptions createOptions() {
 			return null;
 		}
@@ -94,11 +107,16 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 			return owner.getOptions();
 		}
 
+		@Override
+		public Layout getLayout() {
+			return owner.getLayout();
+		}
+
 		public ChartOptions createOptions(String fontName) {
 			return null;
 		}
 
-		public void drawAndExport(String symbolName, File outputDirectory)
+		public void drawAndExport(DisplayList displayList, File output)
 				throws IOException {
 		}
 
@@ -106,6 +124,15 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 			return owner.fontHeightCorrectness();
 		}
 
+		public String imageFormat() {
+			return owner.imageFormat();
+		}
+
+		@Override
+		public String imageStyle() {
+			return owner.imageStyle();
+		}
+
 		public int width() {
 			return xMax + 5;
 		}
@@ -116,8 +143,75 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 
 	}
 
+	/**
+	 * Records what is drawn into a {@link DisplayList}, using the options and
+	 * layout of another chart.
+	 */
+	private static class RecordingChart extends SizeChart {
+
+		private DisplayList displayList;
+
+		public RecordingChart(AbstractChart owner, DisplayList displayList) {
+			super(owner);
+			this.displayList = displayList;
+		}
+
+		@Override
+		protected void internalDrawArc(int x, int y, int width, int height,
+				int startAngle, int arcAngle) {
+			displayList.arc(x, y, width, height, startAngle, arcAngle);
+		}
+
+		@Override
+		protected void internalDrawArrow(int x1, int y1, int x2, int y2,
+				int[] xpoints, int[] ypoints) {
+			displayList.arrow(x1, y1, x2, y2, xpoints, ypoints);
+		}
+
+		@Override
+		protected void internalDrawLine(int x1, int y1, int x2, int y2) {
+			displayList.line(x1, y1, x2, y2);
+		}
+
+		@Override
+		protected void internalDrawRectangle(int x, int y, int width,
+				int height) {
+			displayList.rectangle(x, y, width, height);
+		}
+		
+		@Override
+		public void internalDrawRoundRectangle(int x, int y, int width,
+		        int height, int arcWidth, int arcHeight) {
+			displayList.roundRectangle(x, y, width, height, arcWidth,
+					arcHeight);
+		}
+
+		@Override
+		protected void internalDrawString(NodeType nodeType, String text,
+				int x, int y) {
+			displayList.string(nodeType, text, x, y);
+		}
+
+		@Override
+		protected void internalDrawPath(Path path) {
+			displayList.path(path);
+		}
+
+		@Override
+		protected void internalDrawHotspot(String symbolName, int x, int y,
+				int width, int height) {
+			displayList.hotspot(symbolName, x, y, width, height);
+		}
+
+	}
+
 	private ChartOptions options;
 
+	private Layout layout;
+
+	// lines and arcs drawn since the last other primitive, not yet painted
+	private Path path;
+
 	protected final Grammar grammar;
 
 	public AbstractChart(Grammar grammar) {
@@ -125,17 +219,20 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 	}
 
 	public final void prepare() {
-		for (Symbol s : grammar.nonterminals) {
-			s.graph.graphSize = s.graph.l.calcSize(this);
-			s.graph.l.setWrapSize(this);
-			s.graph.l.calcPos(this, initialY(), false);
-			if (Grammar.TRACE) {
-				System.out.println("\n\n" + s.graph.graphSize.toString());
-			}
-		}
-		if (Grammar.TRACE) {
-			grammar.printNodes(System.out);
-		}
+		layout = grammar.layOut(getOptions());
+	}
+
+	public Layout getLayout() {
+		return layout;
+	}
+
+	public void setLayout(Layout layout) {
+		setOptions(layout.getOptions());
+		this.layout = layout;
+	}
+
+	public String imageStyle() {
+		return getClass().getName() + " " + imageFormat();
 	}
 
 	public void draw(String symbolName) {
@@ -150,11 +247,58 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 		
 //		grammar.printNodes(System.out);
 
-		internalDrawLine(initialX() - componentGapWidth() / 4 - arcSize() / 2,
-				symbol.graph.l.posLine.y, initialX(), symbol.graph.l.posLine.y);
+		final Layout layout = getLayout();
+		final int lineY = layout.lineY(symbol.graph.l);
+		path().line(initialX() - componentGapWidth() / 4 - arcSize() / 2,
+				lineY, initialX(), lineY);
+
+		Node.drawComponents(this, layout, symbol.graph.l, p,
+				layout.graphSize(symbol.graph));
+		flushPath();
+	}
+
+	private Path path() {
+		if (path == null) {
+			path = new Path();
+		}
+		return path;
+	}
+
+	/**
+	 * Draws the lines and arcs that have been drawn since the last other
+	 * primitive, as one path. Called before any other primitive is drawn, so
+	 * that the order in which things are painted does not change.
+	 */
+	private void flushPath() {
+		if (path != null) {
+			final Path p = path;
+			path = null;
+			internalDrawPath(p);
+		}
+	}
+
+	public final void drawPath(Path path) {
+		path.accept(new Path.SegmentVisitor() {
+			public void line(int x1, int y1, int x2, int y2,
+					boolean continues) {
+				drawLine(x1, y1, x2, y2);
+			}
 
-		symbol.graph.l.drawComponents(this, p, symbol.graph.graphSize);
+			public void arc(int x, int y, int width, int height,
+					int startAngle, int arcAngle, boolean continues) {
+				expandBounds(x, y);
+				expandBounds(x + width, y + height);
+				path().arc(x, y, width, height, startAngle, arcAngle);
+			}
+		});
+	}
 
+	/**
+	 * Draws a path. By default draws each of its segments as a separate line
+	 * or arc; charts that have a primitive for paths should override it.
+	 */
+	protected void internalDrawPath(Path path) {
+		path.draw(this);
 	}
 
 	public final void drawArc(int x, int y, int width, int height,
@@ -164,12 +308,13 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 		expandBounds(x - width, y + height);
 		expandBounds(x + width, y + height);
 
-		internalDrawArc(x, y, width, height, startAngle == 180 ? 90
+		path().arc(x, y, width, height, startAngle == 180 ? 90
 				: startAngle == 90 ? 180 : startAngle == 270 ? 0
 						: startAngle == 0 ? 270 : startAngle, (int) arcAngle);
 	}
 
 	public final void drawString(NodeType nodeType, String text, int x, int y) {
+		flushPath();
 		internalDrawString(nodeType, text, x, y);
 	}
 
@@ -180,31 +325,42 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 			Chart.ArrowDirection direction) {
 		expandBounds(x1, y1);
 		expandBounds(x2, y2);
-		int[] xpoints = null;
-		int[] ypoints = null;
+		int[][] head = arrowHead(direction, x2, y2);
+		flushPath();
+		internalDrawArrow(x1, y1, x2, y2, head[0], head[1]);
+	}
+
+	/**
+	 * Returns the corners of the head of an arrow, as an array of x
+	 * coordinates and an array of y coordinates. The first corner is the tip.
+	 * 
+	 * @param direction
+	 *            Direction the arrow points to
+	 * @param x
+	 *            X coordinate of the tip
+	 * @param y
+	 *            Y coordinate of the tip
+	 */
+	protected int[][] arrowHead(Chart.ArrowDirection direction, int x, int y) {
 		switch (direction) {
 		case RIGHT:
-			xpoints = new int[] { x2, x2 - arrowSize() * 2,
-					x2 - arrowSize() * 2 };
-			ypoints = new int[] { y2, y2 - arrowSize(), y2 + arrowSize() };
-			break;
+			return new int[][] {
+					{ x, x - arrowSize() * 2, x - arrowSize() * 2 },
+					{ y, y - arrowSize(), y + arrowSize() } };
 		case UP:
-			xpoints = new int[] { x2, x2 - arrowSize(), x2 + arrowSize() };
-			ypoints = new int[] { y2, y2 + arrowSize() * 2,
-					y2 + arrowSize() * 2 };
-			break;
+			return new int[][] { { x, x - arrowSize(), x + arrowSize() },
+					{ y, y + arrowSize() * 2, y + arrowSize() * 2 } };
 		case LEFT:
-			xpoints = new int[] { x2, x2 + arrowSize() * 2,
-					x2 + arrowSize() * 2 };
-			ypoints = new int[] { y2, y2 + arrowSize(), y2 - arrowSize() };
-			break;
+			return new int[][] {
+					{ x, x + arrowSize() * 2, x + arrowSize() * 2 },
+					{ y, y + arrowSize(), y - arrowSize() } };
 		case DOWN:
-			xpoints = new int[] { x2, x2 - arrowSize(), x2 + arrowSize() };
-			ypoints = new int[] { y2, y2 - arrowSize() * 2,
-					y2 - arrowSize() * 2 };
-			break;
+			return new int[][] { { x, x - arrowSize(), x + arrowSize() },
+					{ y, y - arrowSize() * 2, y - arrowSize() * 2 } };
+		default:
+			throw new IllegalArgumentException("Unknown direction: "
+					+ direction);
 		}
-		internalDrawArrow(x1, y1, x2, y2, xpoints, ypoints);
 	}
 
 	protected abstract void internalDrawArrow(int x1, int y1, int x2, int y2,
@@ -213,6 +369,7 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 	public final void drawRectangle(int x, int y, int width, int height) {
 		expandBounds(x, y);
 		expandBounds(x + width, y + height);
+		flushPath();
 		internalDrawRectangle(x, y, width, height);
 	}
 	
@@ -220,6 +377,7 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 	        int arcWidth, int arcHeight) {
 	    expandBounds(x, y);
         expandBounds(x + width, y + height);
+        flushPath();
         internalDrawRoundRectangle(x, y, width, height, arcWidth, arcHeight);	    
 	}
 
@@ -232,7 +390,7 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 	public final void drawLine(int x1, int y1, int x2, int y2) {
 		expandBounds(x1, y1);
 		expandBounds(x2, y2);
-		internalDrawLine(x1, y1, x2, y2);
+		path().line(x1, y1, x2, y2);
 	}
 
 	protected abstract void internalDrawLine(int x1, int y1, int x2, int y2);
@@ -248,16 +406,54 @@ public abstract class AbstractChart implements Chart, ChartOptions {
 	protected abstract void internalDrawArc(int x, int y, int width,
 			int height, int startAngle, int arcAngle);
 
+	public final void drawHotspot(String symbolName, int x, int y, int width,
+			int height) {
+		internalDrawHotspot(symbolName, x, y, width, height);
+	}
+
+	/**
+	 * Marks the region where a nonterminal is drawn. Only recorded drawings
+	 * keep the regions; other charts ignore them.
+	 */
+	protected void internalDrawHotspot(String symbolName, int x, int y,
+			int width, int height) {
+	}
+
 	protected void expandBounds(int x, int y) {
 	}
 
 	public Dimension size(String symbolName) {
-		// could not found a better way of doing this
-		SizeChart sizeChart = new SizeChart(this);
-		sizeChart.prepare();
-		// just fake the drawing
-		sizeChart.draw(symbolName);
-		return new Dimension(sizeChart.width(), sizeChart.height());
+		if (getLayout() == null) {
+			prepare();
+		}
+		// the size depends only on the layout, so measure each rule once
+		final Graph graph = symbol(symbolName).graph;
+		Size bounds = getLayout().bounds(graph);
+		if (bounds == null) {
+			SizeChart sizeChart = new SizeChart(this);
+			sizeChart.draw(symbolName);
+			bounds = new Size(sizeChart.width(), sizeChart.height());
+			getLayout().setBounds(graph, bounds);
+		}
+		return new Dimension(bounds.getWidth(), bounds.getHeight());
+	}
+
+	public DisplayList record(String symbolName) {
+		if (getLayout() == null) {
+			prepare();
+		}
+		DisplayList displayList = new DisplayList(symbolName);
+		RecordingChart recordingChart = new RecordingChart(this, displayList);
+		recordingChart.draw(symbolName);
+		displayList.setSize(recordingChart.width(), recordingChart.height());
+		getLayout().setBounds(symbol(symbolName).graph,
+				new Size(displayList.width(), displayList.height()));
+		return displayList;
+	}
+
+	public void drawAndExport(String symbolName, File output)
+			throws IOException {
+		drawAndExport(record(symbolName), output);
 	}
 
 	protected Symbol symbol(String name) {
@@ -31,7 +31,8 @@ import java.awt.Dimension;
 import java.io.File;
 import java.io.IOException;
 
-import net.hydromatic.clapham.graph.Node;
+import net.hydromatic.clapham.graph.Layout;
+import net.hydromatic.clapham.graph.NodeStore;
 import net.hydromatic.clapham.graph.NodeType;
 
 /**
@@ -63,7 +64,7 @@ public interface Chart {
 	 * TODO: review this
 	 */	
 	interface NodeVisitor {
-		void visit(Node node);
+		void visit(NodeStore nodes, int node);
 	}
 
 	/**
@@ -113,12 +114,51 @@ public interface Chart {
 			int arcAngle);
 
 	/**
-	 * Initialize and check all the resources before drawing
+	 * Draw a sequence of lines and arcs. Lines and arcs drawn one at a time
+	 * are also joined into paths, where they meet, before they are painted.
+	 * 
+	 * @param path
+	 */
+	void drawPath(Path path);
+
+	/**
+	 * Marks the region where a nonterminal is drawn, for an image map
+	 * 
+	 * @param symbolName
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 */
+	void drawHotspot(String symbolName, int x, int y, int width, int height);
+
+	/**
+	 * Initialize and check all the resources before drawing. Lays out every
+	 * rule of the grammar using the current options; other charts on the same
+	 * grammar can be given the resulting layout, and draw without preparing
+	 * again.
 	 */
 	void prepare();
 
 	/**
-	 * Returns the size of the graph that corresponds to the given symbolName
+	 * The layout this chart draws with, or null if it has not been prepared
+	 * 
+	 * @return
+	 */
+	Layout getLayout();
+
+	/**
+	 * Set the layout this chart draws with, instead of preparing it. The
+	 * options of the layout become the options of this chart.
+	 * 
+	 * @param layout
+	 */
+	void setLayout(Layout layout);
+
+	/**
+	 * Returns the size of the graph that corresponds to the given symbolName.
+	 * The size is measured the first time it is asked for, and is then kept
+	 * in the layout, for this chart and any other chart that shares it.
 	 * 
 	 * @param symbolName
 	 * @return The size of the graph that corresponds to the given symbolName
@@ -144,7 +184,48 @@ public interface Chart {
 	void drawAndExport(String symbolName, File outputDirectory)
 			throws IOException;
 
+	/**
+	 * Draw the diagram once, recording what is drawn so that it can be saved
+	 * as an image with {@link #drawAndExport(DisplayList, File)}, measured,
+	 * and used for an image map, without drawing it again
+	 * 
+	 * @param symbolName
+	 * @return The recorded drawing
+	 */
+	DisplayList record(String symbolName);
+
+	/**
+	 * Save a recorded drawing as an image
+	 * 
+	 * @param displayList
+	 *            Drawing recorded by a chart that uses the same layout
+	 * @param output
+	 *            The image file
+	 * @throws IOException
+	 */
+	void drawAndExport(DisplayList displayList, File output)
+			throws IOException;
+
 	int fontHeightCorrectness();
+
+	/**
+	 * The format of the image written by
+	 * {@link #drawAndExport(String, File)}, which is also its file extension;
+	 * for example "png" or "svg"
+	 * 
+	 * @return The image format
+	 */
+	String imageFormat();
+
+	/**
+	 * Describes how this chart draws its images, apart from its options: its
+	 * class, image format, and any setting that changes the image or the files
+	 * written. Two charts with the same style and options draw the same
+	 * image of a rule.
+	 * 
+	 * @return The image style
+	 */
+	String imageStyle();
 }
 
 // End Chart.java
@@ -29,6 +29,13 @@ package net.hydromatic.clapham.chart;
 
 import net.hydromatic.clapham.graph.Grammar;
 
+/**
+ * Creates the {@link Chart charts} used to draw a {@link Grammar grammar}.
+ * 
+ * <p>Each call must return a new chart that shares no graphics object with the
+ * others, because an exporter may draw several charts of the same grammar in
+ * parallel and may call this method from several threads at once.</p>
+ */
 public interface ChartFactory {
     Chart createChart(Grammar grammar);
 }
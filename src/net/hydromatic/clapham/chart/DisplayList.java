@@ -0,0 +1,330 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart;
+
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.hydromatic.clapham.graph.NodeType;
+
+/**
+ * The drawing of one rule, recorded by {@link Chart#record(String)} as a
+ * list of primitives: paths, rectangles, strings, arrows and the regions of
+ * the nonterminals. The graph of the rule is traversed once; the
+ * list can then be replayed into any {@link AbstractChart} that uses the
+ * same layout, and knows the size of the drawing and where the nonterminals
+ * are, for an image map.
+ * 
+ * <p>Primitives are held in one array of ints, an opcode followed by its
+ * arguments; text is held in a separate list and referred to by index.</p>
+ * 
+ * @version $Id: $
+ */
+public final class DisplayList {
+
+    private static final int LINE = 0;
+    private static final int ARC = 1;
+    private static final int RECTANGLE = 2;
+    private static final int ROUND_RECTANGLE = 3;
+    private static final int STRING = 4;
+    private static final int ARROW = 5;
+    private static final int HOTSPOT = 6;
+    private static final int PATH = 7;
+
+    private static final NodeType[] NODE_TYPES = NodeType.values();
+
+    private final String symbolName;
+
+    private int[] ops = new int[256];
+
+    private int size;
+
+    private final List<String> strings = new ArrayList<String>();
+
+    private int width;
+
+    private int height;
+
+    DisplayList(String symbolName) {
+        this.symbolName = symbolName;
+    }
+
+    /**
+     * The name of the rule that was drawn
+     * 
+     * @return
+     */
+    public String getSymbolName() {
+        return symbolName;
+    }
+
+    /**
+     * The width of the drawing, including its margin
+     * 
+     * @return
+     */
+    public int width() {
+        return width;
+    }
+
+    /**
+     * The height of the drawing, including its margin
+     * 
+     * @return
+     */
+    public int height() {
+        return height;
+    }
+
+    void setSize(int width, int height) {
+        this.width = width;
+        this.height = height;
+    }
+
+    void line(int x1, int y1, int x2, int y2) {
+        add(LINE, x1, y1, x2, y2);
+    }
+
+    void arc(int x, int y, int width, int height, int startAngle,
+            int arcAngle) {
+        add(ARC, x, y, width, height, startAngle, arcAngle);
+    }
+
+    void rectangle(int x, int y, int width, int height) {
+        add(RECTANGLE, x, y, width, height);
+    }
+
+    void roundRectangle(int x, int y, int width, int height, int arcWidth,
+            int arcHeight) {
+        add(ROUND_RECTANGLE, x, y, width, height, arcWidth, arcHeight);
+    }
+
+    void string(NodeType nodeType, String text, int x, int y) {
+        add(STRING, nodeType.ordinal(), text(text), x, y);
+    }
+
+    void arrow(int x1, int y1, int x2, int y2, int[] xpoints,
+            int[] ypoints) {
+        add(ARROW, x1, y1, x2, y2, xpoints.length);
+        add(xpoints);
+        add(ypoints);
+    }
+
+    void path(Path path) {
+        final int[] segments = path.toArray();
+        add(PATH, segments.length);
+        add(segments);
+    }
+
+    void hotspot(String symbolName, int x, int y, int width, int height) {
+        add(HOTSPOT, text(symbolName), x, y, width, height);
+    }
+
+    private int text(String text) {
+        strings.add(text);
+        return strings.size() - 1;
+    }
+
+    private void add(int... values) {
+        if (size + values.length > ops.length) {
+            int[] newOps = new int[Math.max(size + values.length,
+                    ops.length * 2)];
+            System.arraycopy(ops, 0, newOps, 0, size);
+            ops = newOps;
+        }
+        System.arraycopy(values, 0, ops, size, values.length);
+        size += values.length;
+    }
+
+    /**
+     * Draws the recorded primitives on a chart, in the order they were
+     * recorded. Regions are not drawn.
+     * 
+     * @param chart
+     */
+    public void replay(AbstractChart chart) {
+        int i = 0;
+        while (i < size) {
+            final int[] o = ops;
+            switch (o[i]) {
+            case LINE:
+                chart.internalDrawLine(o[i + 1], o[i + 2], o[i + 3], o[i + 4]);
+                i += 5;
+                break;
+            case ARC:
+                chart.internalDrawArc(o[i + 1], o[i + 2], o[i + 3], o[i + 4],
+                        o[i + 5], o[i + 6]);
+                i += 7;
+                break;
+            case RECTANGLE:
+                chart.internalDrawRectangle(o[i + 1], o[i + 2], o[i + 3],
+                        o[i + 4]);
+                i += 5;
+                break;
+            case ROUND_RECTANGLE:
+                chart.internalDrawRoundRectangle(o[i + 1], o[i + 2],
+                        o[i + 3], o[i + 4], o[i + 5], o[i + 6]);
+                i += 7;
+                break;
+            case STRING:
+                chart.internalDrawString(NODE_TYPES[o[i + 1]], strings
+                        .get(o[i + 2]), o[i + 3], o[i + 4]);
+                i += 5;
+                break;
+            case ARROW: {
+                final int n = o[i + 5];
+                final int[] xpoints = new int[n];
+                final int[] ypoints = new int[n];
+                System.arraycopy(o, i + 6, xpoints, 0, n);
+                System.arraycopy(o, i + 6 + n, ypoints, 0, n);
+                chart.internalDrawArrow(o[i + 1], o[i + 2], o[i + 3],
+                        o[i + 4], xpoints, ypoints);
+                i += 6 + 2 * n;
+                break;
+            }
+            case PATH: {
+                final int[] segments = new int[o[i + 1]];
+                System.arraycopy(o, i + 2, segments, 0, segments.length);
+                chart.internalDrawPath(new Path(segments));
+                i += 2 + segments.length;
+                break;
+            }
+            case HOTSPOT:
+                i += 6;
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode " + o[i]);
+            }
+        }
+    }
+
+    /**
+     * The regions of the nonterminals, in the order they were drawn
+     * 
+     * @return
+     */
+    public List<Hotspot> hotspots() {
+        List<Hotspot> hotspots = new ArrayList<Hotspot>();
+        for (int i = 0; i < size; i += length(i)) {
+            if (ops[i] == HOTSPOT) {
+                hotspots.add(new Hotspot(strings.get(ops[i + 1]), ops[i + 2],
+                        ops[i + 3], ops[i + 4], ops[i + 5]));
+            }
+        }
+        return hotspots;
+    }
+
+    /**
+     * Adds what the drawing looks like to a digest: its size, and its
+     * primitives with their text, in order. Regions are left out, because they
+     * are not drawn, so drawings of different rules that look the same have
+     * the same digest.
+     * 
+     * @param digest
+     */
+    public void digest(MessageDigest digest) {
+        final byte[] buf = new byte[4];
+        update(digest, buf, width);
+        update(digest, buf, height);
+        for (int i = 0; i < size; i += length(i)) {
+            switch (ops[i]) {
+            case HOTSPOT:
+                break;
+            case STRING:
+                update(digest, buf, STRING);
+                update(digest, buf, ops[i + 1]);
+                final String text = strings.get(ops[i + 2]);
+                update(digest, buf, text.length());
+                for (int j = 0; j < text.length(); j++) {
+                    update(digest, buf, text.charAt(j));
+                }
+                update(digest, buf, ops[i + 3]);
+                update(digest, buf, ops[i + 4]);
+                break;
+            default:
+                for (int j = i; j < i + length(i); j++) {
+                    update(digest, buf, ops[j]);
+                }
+            }
+        }
+    }
+
+    private static void update(MessageDigest digest, byte[] buf, int value) {
+        buf[0] = (byte) (value >>> 24);
+        buf[1] = (byte) (value >>> 16);
+        buf[2] = (byte) (value >>> 8);
+        buf[3] = (byte) value;
+        digest.update(buf);
+    }
+
+    /**
+     * Returns the number of ints taken by the primitive at the given index,
+     * including its opcode.
+     */
+    private int length(int i) {
+        switch (ops[i]) {
+        case LINE:
+        case RECTANGLE:
+        case STRING:
+            return 5;
+        case HOTSPOT:
+            return 6;
+        case ARC:
+        case ROUND_RECTANGLE:
+            return 7;
+        case ARROW:
+            return 6 + 2 * ops[i + 5];
+        case PATH:
+            return 2 + ops[i + 1];
+        default:
+            throw new IllegalStateException("Unknown opcode " + ops[i]);
+        }
+    }
+
+    /**
+     * The region of a nonterminal in a drawing.
+     */
+    public static final class Hotspot {
+        public final String symbolName;
+        public final int x;
+        public final int y;
+        public final int width;
+        public final int height;
+
+        Hotspot(String symbolName, int x, int y, int width, int height) {
+            this.symbolName = symbolName;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+        }
+    }
+}
+
+// End DisplayList.java
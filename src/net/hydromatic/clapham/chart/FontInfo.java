@@ -0,0 +1,66 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart;
+
+/**
+ * Describes the font of {@link ChartOptions options} that measure text, so
+ * that a chart that writes the text, such as an SVG chart, can name the font
+ * without loading it.
+ * 
+ * @version $Id: $
+ */
+public interface FontInfo {
+
+    /**
+     * The name of the font, either a logical name such as "Serif" or the name
+     * of a font face
+     * 
+     * @return The name of the font
+     */
+    String getFontName();
+
+    /**
+     * The family of the font. Same as the name for logical fonts.
+     * 
+     * @return The family of the font
+     */
+    String getFontFamily();
+
+    /**
+     * The point size of the font
+     * 
+     * @return The point size of the font
+     */
+    float getFontSize();
+
+    boolean isBold();
+
+    boolean isItalic();
+}
+
+// End FontInfo.java
@@ -0,0 +1,195 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link ChartOptions Options} that measure text with the metrics of an AWT
+ * {@link Font}. The metrics are obtained once, when the options are created,
+ * so the options hold no reference to a graphics object and may be shared by
+ * charts that draw on different threads.
+ * 
+ * <p>Measurements are cached per font and rendering context, and shared by
+ * all the options that use them: the font height is computed once, and the
+ * width of each distinct string once, however many nodes and charts display
+ * it.</p>
+ * 
+ * @version $Id: $
+ */
+public class FontMetricsChartOptions extends AbstractChartOptions implements
+        FontInfo {
+
+    /** Upper bound on the number of widths cached for a font. */
+    private static final int MAX_CACHED_WIDTHS = 10000;
+
+    /** Metrics by font and rendering context. */
+    private static final ConcurrentMap<List<Object>, CachedMetrics> CACHE =
+        new ConcurrentHashMap<List<Object>, CachedMetrics>();
+
+    private final Font font;
+
+    private final CachedMetrics metrics;
+
+    /**
+     * Creates options for the given font, measured by the given metrics.
+     * 
+     * @param font
+     * @param metrics
+     */
+    public FontMetricsChartOptions(Font font, FontMetrics metrics) {
+        if (font == null) {
+            throw new IllegalArgumentException("font can't be null");
+        }
+        if (metrics == null) {
+            throw new IllegalArgumentException("metrics can't be null");
+        }
+        this.font = font;
+        this.metrics = cachedMetrics(metrics);
+    }
+
+    /**
+     * Creates options for the given font, measured the way an off-screen
+     * image would render it.
+     * 
+     * @param font
+     */
+    public FontMetricsChartOptions(Font font) {
+        this(font, metrics(font));
+    }
+
+    /**
+     * Measures a font the way an off-screen image renders it.
+     */
+    public static FontMetrics metrics(Font font) {
+        Graphics2D g = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB)
+                .createGraphics();
+        try {
+            return g.getFontMetrics(font);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static CachedMetrics cachedMetrics(FontMetrics metrics) {
+        List<Object> key = Arrays.<Object> asList(metrics.getFont(), metrics
+                .getFontRenderContext());
+        CachedMetrics cachedMetrics = CACHE.get(key);
+        if (cachedMetrics == null) {
+            cachedMetrics = new CachedMetrics(metrics);
+            CachedMetrics previous = CACHE.putIfAbsent(key, cachedMetrics);
+            if (previous != null) {
+                cachedMetrics = previous;
+            }
+        }
+        return cachedMetrics;
+    }
+
+    /**
+     * The font used to draw and measure the text
+     * 
+     * @return The font
+     */
+    public Font getFont() {
+        return font;
+    }
+
+    public String getFontName() {
+        return font.getName();
+    }
+
+    public String getFontFamily() {
+        return font.getFamily();
+    }
+
+    public float getFontSize() {
+        return font.getSize2D();
+    }
+
+    public boolean isBold() {
+        return font.isBold();
+    }
+
+    public boolean isItalic() {
+        return font.isItalic();
+    }
+
+    public int stringWidth(String text) {
+        return textWidth(text) + symbolGapWidth() * 6;
+    }
+
+    /**
+     * Returns the width of the text itself, without the gaps around it.
+     */
+    int textWidth(String text) {
+        return metrics.stringWidth(text);
+    }
+
+    public int fontHeight() {
+        return metrics.height;
+    }
+
+    /**
+     * The metrics of a font in a rendering context, with the widths of the
+     * strings measured so far. Thread-safe.
+     */
+    private static class CachedMetrics {
+        private final FontMetrics metrics;
+
+        private final int height;
+
+        private final ConcurrentMap<String, Integer> widths =
+            new ConcurrentHashMap<String, Integer>();
+
+        CachedMetrics(FontMetrics metrics) {
+            this.metrics = metrics;
+            this.height = metrics.getHeight();
+        }
+
+        int stringWidth(String text) {
+            Integer width = widths.get(text);
+            if (width == null) {
+                if (widths.size() >= MAX_CACHED_WIDTHS) {
+                    widths.clear();
+                }
+                width = metrics.stringWidth(text);
+                widths.put(text, width);
+            }
+            return width;
+        }
+    }
+}
+
+// End FontMetricsChartOptions.java
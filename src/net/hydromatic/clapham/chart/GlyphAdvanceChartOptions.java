@@ -0,0 +1,291 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart;
+
+import java.awt.Font;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link ChartOptions Options} that measure text with a precomputed table of
+ * glyph advances, so that a grammar can be laid out, and drawn as SVG,
+ * without loading AWT or any font, as long as its text is in the table.
+ * 
+ * <p>A table is a properties resource in package
+ * <code>net.hydromatic.clapham.chart.fonts</code> named
+ * <code><i>name</i>-<i>style</i>-<i>size</i>.advances</code>, for example
+ * <code>Serif-plain-12.advances</code>. It holds the advance of
+ * each character from <code>first</code> on, measured with the same rendering
+ * context as {@link FontMetricsChartOptions}, so that both options lay out a
+ * diagram identically for the characters in the table. Text with other
+ * characters, such as math symbols or CJK, is measured with the font itself,
+ * by {@link FontMetricsChartOptions}, which loads AWT. Tables are generated by
+ * {@link net.hydromatic.clapham.chart.java2d.GlyphAdvanceTableWriter}.</p>
+ * 
+ * @version $Id: $
+ */
+public class GlyphAdvanceChartOptions extends AbstractChartOptions implements
+        FontInfo {
+
+    /**
+     * The font used by default, as <code>Font.decode</code> understands it
+     */
+    public static final String DEFAULT_FONT = "Serif-plain-12";
+
+    private static final String RESOURCE_PREFIX =
+        "/net/hydromatic/clapham/chart/fonts/";
+
+    private static final String RESOURCE_SUFFIX = ".advances";
+
+    /** Tables loaded so far, by normalized font name. */
+    private static final ConcurrentMap<String, Table> TABLES =
+        new ConcurrentHashMap<String, Table>();
+
+    private final Table table;
+
+    private GlyphAdvanceChartOptions(Table table) {
+        this.table = table;
+    }
+
+    /**
+     * Creates options for the default font.
+     * 
+     * @return Options, or null if the table of the default font is missing
+     */
+    public static GlyphAdvanceChartOptions forDefaultFont() {
+        return forFont(DEFAULT_FONT);
+    }
+
+    /**
+     * Creates options for a font, named as <code>Font.decode</code> names it:
+     * <code>name[-style][-size]</code>, style being plain (the default), bold,
+     * italic or bolditalic, and size 12 by default.
+     * 
+     * @param fontName
+     *            Name of the font
+     * @return Options, or null if there is no table for the font
+     */
+    public static GlyphAdvanceChartOptions forFont(String fontName) {
+        if (fontName == null) {
+            throw new IllegalArgumentException("fontName can't be null");
+        }
+        String key = normalize(fontName);
+        Table table = TABLES.get(key);
+        if (table == null) {
+            InputStream in = GlyphAdvanceChartOptions.class
+                    .getResourceAsStream(RESOURCE_PREFIX + key
+                            + RESOURCE_SUFFIX);
+            if (in == null) {
+                return null;
+            }
+            try {
+                try {
+                    table = Table.load(key, in);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                throw new RuntimeException("Error while loading the glyph"
+                        + " advances of " + key, e);
+            }
+            Table previous = TABLES.putIfAbsent(key, table);
+            if (previous != null) {
+                table = previous;
+            }
+        }
+        return new GlyphAdvanceChartOptions(table);
+    }
+
+    /**
+     * Normalizes a font name to the name of its table: the name, the style
+     * and the size, separated by '-'.
+     */
+    static String normalize(String fontName) {
+        String name = fontName.trim();
+        String style = "plain";
+        String size = "12";
+        int dash = name.lastIndexOf('-');
+        if (dash > 0 && isSize(name.substring(dash + 1))) {
+            size = size(name.substring(dash + 1));
+            name = name.substring(0, dash);
+            dash = name.lastIndexOf('-');
+        }
+        if (dash > 0) {
+            String s = name.substring(dash + 1).toLowerCase(Locale.ENGLISH);
+            if (s.equals("plain") || s.equals("bold") || s.equals("italic")
+                    || s.equals("bolditalic")) {
+                style = s;
+                name = name.substring(0, dash);
+            }
+        }
+        return name + "-" + style + "-" + size;
+    }
+
+    private static boolean isSize(String s) {
+        try {
+            Float.parseFloat(s);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Formats a size without a fraction if it is integral, so that "12" and
+     * "12.0" name the same table.
+     */
+    static String size(String s) {
+        float size = Float.parseFloat(s);
+        if (size == (int) size) {
+            return Integer.toString((int) size);
+        }
+        return Float.toString(size);
+    }
+
+    public String getFontName() {
+        return table.name;
+    }
+
+    public String getFontFamily() {
+        return table.family;
+    }
+
+    public float getFontSize() {
+        return table.size;
+    }
+
+    public boolean isBold() {
+        return table.style.startsWith("bold");
+    }
+
+    public boolean isItalic() {
+        return table.style.endsWith("italic");
+    }
+
+    public int stringWidth(String text) {
+        int width = table.stringWidth(text);
+        if (width < 0) {
+            // a character is not in the table
+            width = table.fallback().textWidth(text);
+        }
+        return width + symbolGapWidth() * 6;
+    }
+
+    public int fontHeight() {
+        return table.height;
+    }
+
+    /**
+     * The glyph advances of a font. Thread-safe.
+     */
+    private static class Table {
+        private final String key;
+
+        private final String name;
+
+        private final String family;
+
+        private final float size;
+
+        private final String style;
+
+        private final int height;
+
+        private final int first;
+
+        private final int[] advances;
+
+        /** Measures text that is not in the table; created when needed. */
+        private volatile FontMetricsChartOptions fallback;
+
+        private Table(String key, Properties properties) {
+            this.key = key;
+            this.name = property(properties, "name");
+            this.family = property(properties, "family");
+            this.size = Float.parseFloat(property(properties, "size"));
+            this.style = property(properties, "style");
+            this.height = Integer.parseInt(property(properties, "height"));
+            this.first = Integer.parseInt(property(properties, "first"));
+            String[] values = property(properties, "advances").split(" ");
+            this.advances = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                advances[i] = Integer.parseInt(values[i]);
+            }
+        }
+
+        static Table load(String key, InputStream in) throws IOException {
+            Properties properties = new Properties();
+            properties.load(in);
+            return new Table(key, properties);
+        }
+
+        private static String property(Properties properties, String key) {
+            String value = properties.getProperty(key);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing property: " + key);
+            }
+            return value.trim();
+        }
+
+        /**
+         * Adds up the advances of the characters, as <code>FontMetrics</code>
+         * does for text without complex layout.
+         * 
+         * @return The width, or -1 if a character is not in the table
+         */
+        int stringWidth(String text) {
+            int width = 0;
+            for (int i = 0; i < text.length(); i++) {
+                int index = text.charAt(i) - first;
+                if (index < 0 || index >= advances.length) {
+                    return -1;
+                }
+                width += advances[index];
+            }
+            return width;
+        }
+
+        /**
+         * Returns options that measure text with the font of the table.
+         */
+        FontMetricsChartOptions fallback() {
+            FontMetricsChartOptions options = fallback;
+            if (options == null) {
+                options = new FontMetricsChartOptions(Font.decode(key));
+                fallback = options;
+            }
+            return options;
+        }
+    }
+}
+
+// End GlyphAdvanceChartOptions.java
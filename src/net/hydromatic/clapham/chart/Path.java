@@ -0,0 +1,220 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart;
+
+/**
+ * A sequence of connected lines and arcs, drawn by
+ * {@link Chart#drawPath(Path)} as one primitive.
+ * 
+ * <p>Each segment either continues from the end of the previous segment or
+ * starts a new subpath. A line that continues the previous line in the same
+ * direction extends it rather than adding a segment, so a track drawn in
+ * several pieces becomes a single segment. Arcs have the same meaning of the
+ * arguments as {@link java.awt.Graphics#drawArc}.</p>
+ * 
+ * <p>Segments are held in one array of ints: a segment type, which also says
+ * whether the segment continues the previous one, followed by its
+ * arguments.</p>
+ * 
+ * @version $Id: $
+ */
+public final class Path {
+
+    private static final int LINE = 0;
+    private static final int ARC = 1;
+    private static final int CONTINUES = 2;
+
+    private static final double EPSILON = 1e-6;
+
+    private int[] segments;
+
+    private int size;
+
+    /** the position of the last line segment, or -1 */
+    private int lastLine = -1;
+
+    // the end of the last segment
+    private double x = Double.NaN;
+    private double y = Double.NaN;
+
+    public Path() {
+        segments = new int[32];
+    }
+
+    Path(int[] segments) {
+        this.segments = segments;
+        this.size = segments.length;
+    }
+
+    /**
+     * Adds a line from (x1, y1) to (x2, y2).
+     * 
+     * @return This path
+     */
+    public Path line(int x1, int y1, int x2, int y2) {
+        final boolean continues = at(x1, y1);
+        if (continues && x1 == x2 && y1 == y2) {
+            // nothing to add to the track
+            return this;
+        }
+        if (continues && lastLine == size - 5
+                && goesOn(segments[lastLine + 1], segments[lastLine + 2],
+                        x1, y1, x2, y2)) {
+            segments[lastLine + 3] = x2;
+            segments[lastLine + 4] = y2;
+        } else {
+            lastLine = size;
+            add(continues ? LINE | CONTINUES : LINE, x1, y1, x2, y2);
+        }
+        x = x2;
+        y = y2;
+        return this;
+    }
+
+    /**
+     * Adds the outline of an arc.
+     * 
+     * @return This path
+     */
+    public Path arc(int x, int y, int width, int height, int startAngle,
+            int arcAngle) {
+        final double rx = width / 2d;
+        final double ry = height / 2d;
+        final double start = Math.toRadians(startAngle);
+        final double end = Math.toRadians(startAngle + arcAngle);
+        final boolean continues = at(x + rx + rx * Math.cos(start), y + ry
+                - ry * Math.sin(start));
+        add(continues ? ARC | CONTINUES : ARC, x, y, width, height,
+                startAngle, arcAngle);
+        this.x = x + rx + rx * Math.cos(end);
+        this.y = y + ry - ry * Math.sin(end);
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Calls a visitor for each segment, in order.
+     * 
+     * @param visitor
+     */
+    public void accept(SegmentVisitor visitor) {
+        int i = 0;
+        while (i < size) {
+            final int[] s = segments;
+            final boolean continues = (s[i] & CONTINUES) != 0;
+            if ((s[i] & ARC) != 0) {
+                visitor.arc(s[i + 1], s[i + 2], s[i + 3], s[i + 4], s[i + 5],
+                        s[i + 6], continues);
+                i += 7;
+            } else {
+                visitor.line(s[i + 1], s[i + 2], s[i + 3], s[i + 4],
+                        continues);
+                i += 5;
+            }
+        }
+    }
+
+    /**
+     * Draws each segment as a separate line or arc, for charts that have no
+     * primitive for paths.
+     * 
+     * @param chart
+     */
+    void draw(final AbstractChart chart) {
+        accept(new SegmentVisitor() {
+            public void line(int x1, int y1, int x2, int y2,
+                    boolean continues) {
+                chart.internalDrawLine(x1, y1, x2, y2);
+            }
+
+            public void arc(int x, int y, int width, int height,
+                    int startAngle, int arcAngle, boolean continues) {
+                chart.internalDrawArc(x, y, width, height, startAngle,
+                        arcAngle);
+            }
+        });
+    }
+
+    int[] toArray() {
+        int[] array = new int[size];
+        System.arraycopy(segments, 0, array, 0, size);
+        return array;
+    }
+
+    private boolean at(double x, double y) {
+        return Math.abs(x - this.x) < EPSILON
+                && Math.abs(y - this.y) < EPSILON;
+    }
+
+    /**
+     * Returns whether the line from (x1, y1) to (x2, y2) goes on in the same
+     * direction as the line from (x0, y0) to (x1, y1).
+     */
+    private static boolean goesOn(int x0, int y0, int x1, int y1, int x2,
+            int y2) {
+        final long dx1 = x1 - x0;
+        final long dy1 = y1 - y0;
+        final long dx2 = x2 - x1;
+        final long dy2 = y2 - y1;
+        return dx1 * dy2 == dy1 * dx2 && dx1 * dx2 + dy1 * dy2 > 0;
+    }
+
+    private void add(int... values) {
+        if (size + values.length > segments.length) {
+            int[] newSegments = new int[Math.max(size + values.length,
+                    segments.length * 2)];
+            System.arraycopy(segments, 0, newSegments, 0, size);
+            segments = newSegments;
+        }
+        System.arraycopy(values, 0, segments, size, values.length);
+        size += values.length;
+    }
+
+    /**
+     * Receives the segments of a path.
+     */
+    public interface SegmentVisitor {
+        /**
+         * A line from (x1, y1) to (x2, y2); continues is true if (x1, y1) is
+         * the end of the previous segment.
+         */
+        void line(int x1, int y1, int x2, int y2, boolean continues);
+
+        /**
+         * An arc; continues is true if it starts at the end of the previous
+         * segment.
+         */
+        void arc(int x, int y, int width, int height, int startAngle,
+                int arcAngle, boolean continues);
+    }
+}
+
+// End Path.java
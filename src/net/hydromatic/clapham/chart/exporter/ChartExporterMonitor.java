@@ -27,6 +27,14 @@
  */
 package net.hydromatic.clapham.chart.exporter;
 
+/**
+ * Receives progress notifications from the {@link ChartHtmlExporter exporter}.
+ * 
+ * <p>All the methods are called from the thread that invoked
+ * {@link ChartHtmlExporter#export}, in rule order, even if the rules are
+ * rendered in parallel. Implementations therefore need no synchronization of
+ * their own.</p>
+ */
 public interface ChartExporterMonitor {
 
     ChartExporterMonitor SYS_OUT = new ChartExporterMonitor() {
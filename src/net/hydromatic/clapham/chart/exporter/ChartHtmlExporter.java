@@ -27,31 +27,41 @@
  */
 package net.hydromatic.clapham.chart.exporter;
 
-import java.awt.Dimension;
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.EnumSet;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
-import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import net.hydromatic.clapham.chart.Chart;
 import net.hydromatic.clapham.chart.ChartFactory;
 import net.hydromatic.clapham.chart.ChartOptions;
-import net.hydromatic.clapham.chart.Chart.NodeVisitor;
+import net.hydromatic.clapham.chart.DisplayList;
 import net.hydromatic.clapham.graph.Grammar;
 import net.hydromatic.clapham.graph.GrammarFactory;
-import net.hydromatic.clapham.graph.Node;
-import net.hydromatic.clapham.graph.NodeType;
-import net.hydromatic.clapham.graph.Symbol;
+import net.hydromatic.clapham.graph.Layout;
+import net.hydromatic.clapham.graph.Rewrite;
 import net.hydromatic.clapham.parser.EbnfDecorator;
 import net.hydromatic.clapham.parser.Language;
 import net.hydromatic.clapham.parser.ProductionNode;
@@ -65,31 +75,46 @@ import net.hydromatic.clapham.parser.ProductionNode;
  */
 public class ChartHtmlExporter {
 
+	private static final String IMAGE_FOLDER_NAME = "images";
+
 	private ChartFactory chartFactory;
 
 	private File outputDirectory;
 
 	private boolean optimize;
 
+	private Set<Rewrite> rewrites;
+
 	private boolean ebnfNotation;
 
+	private boolean sharedLayout;
+
+	private int parallelism;
+
+	private boolean incremental;
+
+	private boolean sharedImages;
+
 	private ChartDocumentationProvider documentationProvider;
 
-	private Map<String, String> templateCache;
+	private final ConcurrentMap<String, Template> templateCache =
+			new ConcurrentHashMap<String, Template>();
 
 	public ChartHtmlExporter(ChartFactory chartFactory) {
 		if (chartFactory == null) {
 			throw new IllegalArgumentException("chartFactory can't be null");
 		}
 		this.chartFactory = chartFactory;
-		// the cache template
-		templateCache = new HashMap<String, String>();
 		// set the output directory to the clapham home location
 		withOutputDirectory(new File(""));
 		// optimize Graph by default
 		withOptimize(true);
 		// add the ebnf notation by default
 		withEbnfNotation(true);
+		// lay out the grammar once for all the rules by default
+		withSharedLayout(true);
+		// render one rule at a time by default
+		withParallelism(1);
 	}
 
 	public void export(ChartExporterMonitor monitor, File input,
@@ -120,7 +145,8 @@ public class ChartHtmlExporter {
 			throw new IllegalArgumentException("language can't be null");
 		}
 
-		Grammar grammar = GrammarFactory.build(language, input, optimize);
+		Grammar grammar = GrammarFactory.build(language, input, rewrites,
+				parallelism);
 
 		int totalOfWork = grammar.symbolMap.size() + 1;
 		monitor.beginTask("Generating " + grammarName + " railroad diagrams",
@@ -130,18 +156,26 @@ public class ChartHtmlExporter {
 		if (!outputDirectory.exists()) {
 			outputDirectory.mkdirs();
 			monitor.subTask("Creating directory: " + outputDirectory);
+		} else if (incremental) {
+			monitor.subTask("Updating directory: " + outputDirectory);
 		} else {
 			monitor.subTask("Cleaning directory: " + outputDirectory);
 			clean(outputDirectory);
 		}
-		Set<String> keySet = grammar.symbolMap.keySet();
-		StringBuilder content = new StringBuilder();
-		String NL = "\n";
-		for (String symbolName : keySet) {
-			content.append(
-					exportRule(monitor, grammar, symbolName, outputDirectory))
-					.append(NL);
-			monitor.worked(1);
+		// lay out the grammar once; every rule is drawn with the same layout
+		Chart layoutChart = prepareChart(chartFactory.createChart(grammar));
+		String imageFormat = layoutChart.imageFormat();
+		Layout layout = null;
+		if (sharedLayout) {
+			layout = layoutChart.getLayout();
+		}
+		// only an incremental export, or one that shares images, needs to
+		// know what each image depends on
+		ExportManifest manifest = null;
+		if (incremental || sharedImages) {
+			manifest = ExportManifest.load(outputDirectory, new File(
+					outputDirectory, IMAGE_FOLDER_NAME), layoutChart,
+					grammar, sharedImages);
 		}
 		File output = new File(outputDirectory, grammarName + ".html");
 		monitor.subTask("Creating page: " + output);
@@ -153,9 +187,39 @@ public class ChartHtmlExporter {
 			}
 		}
 		Map<String, String> args = toMap("title", grammarName, "gname",
-				grammarName, "rules", content.toString(), "gdoc", doc, "toc",
-				toc(grammar));
-		write(output, merge("grammar.html", args));
+				grammarName, "gdoc", doc);
+		// the page is written as the rules are drawn: the head and table of
+		// contents, each rule as soon as it is done, then the tail
+		Template[] page = template("grammar.html").split("toc");
+		Template[] body = page[1].split("rules");
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(output), "UTF-8"));
+		try {
+			page[0].merge(out, args);
+			toc(out, grammar);
+			body[0].merge(out, args);
+			Set<String> keySet = grammar.symbolMap.keySet();
+			if (parallelism > 1) {
+				exportRules(monitor, grammar, keySet, outputDirectory,
+						layout, imageFormat, manifest, out);
+			} else {
+				for (String symbolName : keySet) {
+					ExportedRule rule = exportRule(grammar, symbolName,
+							outputDirectory, layout, imageFormat, manifest);
+					monitor.subTask(ruleMessage(symbolName, rule.image));
+					out.write(rule.section);
+					out.write("\n");
+					monitor.worked(1);
+				}
+			}
+			body[1].merge(out, args);
+		} finally {
+			out.close();
+		}
+		if (manifest != null) {
+			manifest.deleteUnusedImages();
+			manifest.store(outputDirectory);
+		}
 		monitor.worked(1);
 		monitor.done();
 	}
@@ -172,25 +236,14 @@ public class ChartHtmlExporter {
 		}
 	}
 
-	private String exportRule(ChartExporterMonitor monitor, Grammar grammar,
-			String symbolName, File outputDirectory) throws IOException {
-		// rule.png
-		String filename = new StringBuilder().append(symbolName).append(".png")
-				.toString();
-		// images/rule.png
-		String imageFolderName = "images";
-		String relativePath = imageFolderName + "/" + filename;
-		monitor.subTask("Rule \"" + symbolName + "\" to: " + relativePath);
-		File imageFolder = new File(outputDirectory, imageFolderName);
-		if (!imageFolder.exists()) {
-			imageFolder.mkdirs();
-		}
-
-		// absoultePath/images/rule.png
-		File outputFile = new File(imageFolder, filename);
-
-		Chart chart = chartFactory.createChart(grammar);
-		// create chart options
+	/**
+	 * Creates the options for the given chart and lays out the grammar with
+	 * them.
+	 * 
+	 * @param chart
+	 * @return The prepared chart
+	 */
+	private Chart prepareChart(Chart chart) {
 		ChartOptions options = chart.createOptions();
 		options.withOptimize(optimize)
 		/**no top margin*/
@@ -198,10 +251,130 @@ public class ChartHtmlExporter {
 		
 		chart.setOptions(options);
 		chart.prepare();
-		
-		chart.drawAndExport(symbolName, outputFile);
-		
-		Dimension size = chart.size(symbolName);
+		return chart;
+	}
+
+	/**
+	 * Renders the rules using a pool of {@link #parallelism} threads. Each
+	 * rule gets its own chart, so no graphics object is shared between
+	 * threads. The monitor is only called from the current thread, in rule
+	 * order, as the results are collected and written to the page.
+	 * 
+	 * <p>At most twice as many rules as there are threads are rendered or
+	 * waiting to be written at any time: a rule is submitted only once the
+	 * rule that many places before it has been written. A slow rule
+	 * therefore holds back a bounded number of sections, not the rest of the
+	 * page.</p>
+	 */
+	private void exportRules(ChartExporterMonitor monitor,
+			final Grammar grammar, Collection<String> symbolNames,
+			final File outputDirectory, final Layout layout,
+			final String imageFormat, final ExportManifest manifest,
+			Writer out) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+		try {
+			List<String> names = new ArrayList<String>(symbolNames);
+			int window = 2 * parallelism;
+			Queue<Future<ExportedRule>> futures =
+					new ArrayDeque<Future<ExportedRule>>(window);
+			for (int i = 0; i < names.size() && i < window; i++) {
+				futures.add(submitRule(executor, grammar, names.get(i),
+						outputDirectory, layout, imageFormat, manifest));
+			}
+			for (int i = 0; i < names.size(); i++) {
+				ExportedRule rule = futures.remove().get();
+				monitor.subTask(ruleMessage(names.get(i), rule.image));
+				out.write(rule.section);
+				out.write("\n");
+				monitor.worked(1);
+				if (i + window < names.size()) {
+					futures.add(submitRule(executor, grammar, names.get(i
+							+ window), outputDirectory, layout, imageFormat,
+							manifest));
+				}
+			}
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException("Error while exporting rules", cause);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while exporting rules", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private Future<ExportedRule> submitRule(ExecutorService executor,
+			final Grammar grammar, final String symbolName,
+			final File outputDirectory, final Layout layout,
+			final String imageFormat, final ExportManifest manifest) {
+		return executor.submit(new Callable<ExportedRule>() {
+			public ExportedRule call() throws IOException {
+				return exportRule(grammar, symbolName, outputDirectory,
+						layout, imageFormat, manifest);
+			}
+		});
+	}
+
+	private static String ruleMessage(String symbolName, String image) {
+		return "Rule \"" + symbolName + "\" to: " + IMAGE_FOLDER_NAME + "/"
+				+ image;
+	}
+
+	/**
+	 * Writes the image of a rule, unless the manifest says that the image of
+	 * the previous export is still right, and returns the name of the image
+	 * and the rule's section of the page. The manifest is null unless the
+	 * export is incremental or shares images.
+	 */
+	private ExportedRule exportRule(Grammar grammar, String symbolName,
+			File outputDirectory, Layout layout, String imageFormat,
+			ExportManifest manifest) throws IOException {
+		String imageFolderName = IMAGE_FOLDER_NAME;
+		File imageFolder = new File(outputDirectory, imageFolderName);
+		if (!imageFolder.exists()) {
+			imageFolder.mkdirs();
+		}
+
+		String image;
+		String width;
+		String height;
+		String map;
+		String hash = manifest == null ? null : manifest.hash(grammar,
+				symbolName);
+		if (hash != null
+				&& manifest.isUpToDate(symbolName, hash, imageFolder)) {
+			// the image of the previous export is still right
+			manifest.keep(symbolName);
+			image = manifest.image(symbolName);
+			width = manifest.width(symbolName);
+			height = manifest.height(symbolName);
+			map = manifest.map(symbolName);
+		} else {
+			if (manifest != null && !sharedImages) {
+				manifest.deletePreviousImages(symbolName);
+			}
+			// draw once for the image, its size and the image map
+			Drawing drawing = drawRule(grammar, symbolName, layout,
+					imageFolder, imageFormat, manifest);
+			DisplayList displayList = drawing.displayList;
+			image = drawing.image;
+			width = Integer.toString(displayList.width());
+			height = Integer.toString(displayList.height());
+			map = map(grammar, displayList);
+			if (manifest != null) {
+				manifest.put(symbolName, hash, image, width, height, map);
+			}
+		}
+		// images/rule.png
+		String relativePath = imageFolderName + "/" + image;
 
 		// add documentation
 		String documentation = "";
@@ -219,54 +392,80 @@ public class ChartHtmlExporter {
 			ebnf = merge("ebnf.html", toMap("ebnf", production
 					.toEbnf(EbnfDecorator.HTML)));
 		}
-		Map<String, String> args = toMap("rule", symbolName, "map", map(
-				grammar, symbolName), "output", relativePath, "width", Integer
-				.toString(size.width), "height", Integer.toString(size
-				.height), "doc", documentation, "ebnf", ebnf);
-		String out = merge("rule.html", args);
-		return out;
+		Map<String, String> args = toMap("rule", symbolName, "map", map,
+				"output", relativePath, "width", width, "height", height,
+				"doc", documentation, "ebnf", ebnf);
+		return new ExportedRule(image, merge("rule.html", args));
+	}
+
+	/**
+	 * Draws a rule on a chart of its own and writes its image, unless it is a
+	 * shared image that is already written. The chart, and any document it
+	 * built, can be collected as soon as this method returns; only the
+	 * recorded drawing is kept, for the image map, with the name of its
+	 * image.
+	 */
+	private Drawing drawRule(Grammar grammar, String symbolName,
+			Layout layout, File imageFolder, String imageFormat,
+			ExportManifest manifest) throws IOException {
+		Chart chart = chartFactory.createChart(grammar);
+		if (layout != null) {
+			// the grammar is already laid out
+			chart.setLayout(layout);
+		} else {
+			prepareChart(chart);
+		}
+		DisplayList displayList = chart.record(symbolName);
+		String image = imageName(symbolName, displayList, imageFormat,
+				manifest);
+		File outputFile = new File(imageFolder, image);
+		if (!sharedImages || manifest.claim(outputFile)) {
+			chart.drawAndExport(displayList, outputFile);
+		}
+		return new Drawing(displayList, image);
+	}
+
+	/**
+	 * Returns the name of the image file of a rule: rule.png, or if images
+	 * are shared, the hash of what the drawing looks like, such as
+	 * 3f2a...9c.png.
+	 */
+	private String imageName(String symbolName, DisplayList displayList,
+			String imageFormat, ExportManifest manifest) {
+		String name = sharedImages ? manifest.imageName(displayList)
+				: symbolName;
+		return name + "." + imageFormat;
 	}
 
-	private String toc(Grammar grammar) throws IOException {
+	private void toc(Writer out, Grammar grammar) throws IOException {
 		Set<String> keySet = grammar.symbolMap.keySet();
-		StringBuilder builder = new StringBuilder();
+		Template template = template("toc-entry.html");
 		for (String ruleName : keySet) {
-			builder.append(merge("toc-entry.html", toMap("rule", ruleName)))
-					.append("\n");
+			template.merge(out, toMap("rule", ruleName));
+			out.write("\n");
 		}
-		return builder.toString();
 	}
 
-	private String map(final Grammar grammar, String symbolName)
+	private String map(Grammar grammar, DisplayList displayList)
 			throws IOException {
 		StringBuilder map = new StringBuilder();
+		Template template = template("map.html");
 
-		final Collection<Node> nonterminals = new HashSet<Node>();
-		Symbol symbol = grammar.symbolMap.get(symbolName);
-
-		// the nonterminals collector
-		NodeVisitor nonterminalVisitor = new NodeVisitor() {
-
-			public void visit(Node node) {
-				if (node.typ == NodeType.NONTERM) {
-					if (grammar.symbolMap.get(node.sym.name) != null) {
-						nonterminals.add(node);
-					}
-				}
-				node.visitChildren(this);
+		// the regions of the nonterminals that have a rule, in drawing order,
+		// so that the page is the same on every run
+		for (DisplayList.Hotspot hotspot : displayList.hotspots()) {
+			if (grammar.symbolMap.get(hotspot.symbolName) == null) {
+				continue;
 			}
-		};
-		// traverse the graph
-		symbol.graph.l.accept(nonterminalVisitor);
-
-		for (Node node : nonterminals) {
-			int x = node.posBegin.x;
-			int y = node.posBegin.y;
-			int w = x + node.size.getWidth();
-			int h = y + node.size.getHeight() - 5;
+			int x = hotspot.x;
+			int y = hotspot.y;
+			int w = x + hotspot.width;
+			int h = y + hotspot.height - 5;
 			Map<String, String> args = toMap("coords", x + "," + y + "," + w
-					+ "," + h, "alt", node.sym.name, "href", node.sym.name);
-			map.append(merge("map.html", args)).append("\n");
+					+ "," + h, "alt", hotspot.symbolName, "href",
+					hotspot.symbolName);
+			template.merge(map, args);
+			map.append("\n");
 		}
 		return map.toString();
 	}
@@ -289,47 +488,44 @@ public class ChartHtmlExporter {
 	 */
 	private String merge(String templateName, Map<String, String> args)
 			throws IOException {
-		String template = template(templateName);
-		Set<Entry<String, String>> entrySet = args.entrySet();
-		for (Entry<String, String> entry : entrySet) {
-			template = template.replace("${" + entry.getKey() + "}", entry
-					.getValue());
-		}
-		return template;
+		return template(templateName).merge(args);
 	}
 
 	/**
-	 * Get from the classpath the given template
+	 * Get from the classpath the given template, parsed. Each template is
+	 * read and parsed once, however many threads ask for it.
 	 * 
 	 * @param templateName
 	 * @return
 	 * @throws IOException
 	 */
-	private String template(String templateName) throws IOException {
-		String template = templateCache.get(templateName);
+	private Template template(String templateName) throws IOException {
+		Template template = templateCache.get(templateName);
 		if (template == null) {
 			InputStream in = getClass().getResourceAsStream(templateName);
+			if (in == null) {
+				throw new IOException("Template not found: " + templateName);
+			}
+			Reader reader = new InputStreamReader(in, "UTF-8");
 			StringBuilder builder = new StringBuilder();
-			BufferedInputStream bis = new BufferedInputStream(in);
-			int b = bis.read();
-			while (b != -1) {
-				builder.append((char) b);
-				b = bis.read();
+			try {
+				char[] buf = new char[4096];
+				for (int n; (n = reader.read(buf)) != -1;) {
+					builder.append(buf, 0, n);
+				}
+			} finally {
+				reader.close();
+			}
+			template = Template.parse(builder.toString());
+			Template previous = templateCache.putIfAbsent(templateName,
+					template);
+			if (previous != null) {
+				template = previous;
 			}
-			bis.close();
-			template = builder.toString();
 		}
 		return template;
 	}
 
-	private void write(File file, String content) throws IOException {
-		BufferedOutputStream out = new BufferedOutputStream(
-				new FileOutputStream(file));
-		out.write(content.getBytes());
-		out.flush();
-		out.close();
-	}
-
 	public ChartHtmlExporter withOutputDirectory(File outputDirectory) {
 		if (outputDirectory == null) {
 			throw new IllegalArgumentException("outputDirectory");
@@ -340,6 +536,26 @@ public class ChartHtmlExporter {
 
 	public ChartHtmlExporter withOptimize(boolean optimize) {
 		this.optimize = optimize;
+		this.rewrites = optimize ? EnumSet.allOf(Rewrite.class) : EnumSet
+				.of(Rewrite.LINEBREAKS);
+		return this;
+	}
+
+	/**
+	 * Sets which rewrites optimize the graph of each rule. Turning off
+	 * rewrites makes a huge grammar quicker to process, at the cost of larger
+	 * diagrams.
+	 * 
+	 * @param rewrites
+	 *            Rewrites to apply
+	 * @return this exporter
+	 */
+	public ChartHtmlExporter withRewrites(Set<Rewrite> rewrites) {
+		if (rewrites == null) {
+			throw new IllegalArgumentException("rewrites can't be null");
+		}
+		this.rewrites = EnumSet.noneOf(Rewrite.class);
+		this.rewrites.addAll(rewrites);
 		return this;
 	}
 
@@ -348,9 +564,93 @@ public class ChartHtmlExporter {
 		return this;
 	}
 
+	/**
+	 * Whether to lay out the grammar once and share the layout between all
+	 * the rules, rather than laying out the whole grammar again for each rule.
+	 * 
+	 * @param sharedLayout
+	 * @return This exporter
+	 */
+	public ChartHtmlExporter withSharedLayout(boolean sharedLayout) {
+		this.sharedLayout = sharedLayout;
+		return this;
+	}
+
+	/**
+	 * Number of threads used to build and optimize the grammar and to render
+	 * the rules. With more than one thread the chart factory and the
+	 * documentation provider may be called concurrently, and the generated
+	 * page is identical to the one produced by a single thread.
+	 * 
+	 * @param parallelism
+	 * @return This exporter
+	 */
+	public ChartHtmlExporter withParallelism(int parallelism) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("parallelism must be positive");
+		}
+		this.parallelism = parallelism;
+		return this;
+	}
+
+	/**
+	 * Whether to keep the images of a previous export to the same directory,
+	 * and draw again only the rules whose images would change. The export
+	 * writes a manifest, {@value ExportManifest#FILE_NAME}, with a hash of
+	 * what each image depends on; images of rules that are gone are removed.
+	 * 
+	 * @param incremental
+	 * @return This exporter
+	 */
+	public ChartHtmlExporter withIncremental(boolean incremental) {
+		this.incremental = incremental;
+		return this;
+	}
+
+	/**
+	 * Whether to name each image after a hash of what it looks like, rather
+	 * than after its rule. Rules whose diagrams look the same, such as rules
+	 * with the same right-hand side, then share one image, which is written
+	 * once. The export writes a manifest, as an incremental export does.
+	 * 
+	 * @param sharedImages
+	 * @return This exporter
+	 */
+	public ChartHtmlExporter withSharedImages(boolean sharedImages) {
+		this.sharedImages = sharedImages;
+		return this;
+	}
+
 	public ChartHtmlExporter withDocumentationProvider(
 			ChartDocumentationProvider documentationProvider) {
 		this.documentationProvider = documentationProvider;
 		return this;
 	}
+
+	/**
+	 * The recorded drawing of a rule, and the name of its image file.
+	 */
+	private static final class Drawing {
+		final DisplayList displayList;
+		final String image;
+
+		Drawing(DisplayList displayList, String image) {
+			this.displayList = displayList;
+			this.image = image;
+		}
+	}
+
+	/**
+	 * The name of the image file of an exported rule, and its section of the
+	 * page.
+	 */
+	private static final class ExportedRule {
+		final String image;
+		final String section;
+
+		ExportedRule(String image, String section) {
+			this.image = image;
+			this.section = section;
+		}
+	}
 }
@@ -0,0 +1,530 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart.exporter;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import net.hydromatic.clapham.chart.Chart;
+import net.hydromatic.clapham.chart.ChartOptions;
+import net.hydromatic.clapham.chart.DisplayList;
+import net.hydromatic.clapham.chart.FontInfo;
+import net.hydromatic.clapham.graph.Grammar;
+import net.hydromatic.clapham.parser.EbnfDecorator;
+import net.hydromatic.clapham.parser.ProductionNode;
+
+/**
+ * Remembers, for each rule of an exported grammar, a hash of everything its
+ * image depends on, and what the page needs to show the image: its file, size
+ * and image map. An export that finds a rule with the same hash in the
+ * manifest of the previous export keeps the image instead of drawing it
+ * again.
+ * 
+ * <p>The hash of a rule covers the rule's production, which of the
+ * nonterminals it refers to have a rule of their own (they are the links of
+ * the image map), the chart and its options, the rewrites of the grammar, and
+ * the version of Clapham.</p>
+ * 
+ * <p>The manifest also knows the image files of the previous export, so that
+ * the files of rules that are drawn again, or that no longer exist, can be
+ * removed.</p>
+ * 
+ * <p>If images are shared, an image is named after a hash of what it looks
+ * like, and rules whose diagrams look the same use the same file.</p>
+ * 
+ * <p>Rules may be added from several threads at once.</p>
+ */
+final class ExportManifest {
+
+	/**
+	 * Name of the manifest file in the output directory.
+	 */
+	static final String FILE_NAME = "manifest.properties";
+
+	/**
+	 * Version of the way images are drawn. Change it whenever a change to
+	 * Clapham changes the images, so that the images of previous exports are
+	 * drawn again.
+	 */
+	private static final String VERSION = "1";
+
+	private static final String HASH = ".hash";
+
+	private static final String WIDTH = ".width";
+
+	private static final String HEIGHT = ".height";
+
+	private static final String MAP = ".map";
+
+	private static final String IMAGE = ".image";
+
+	/**
+	 * Marks the nonterminals of a production, so that they can be found in
+	 * its EBNF.
+	 */
+	private static final EbnfDecorator MARKER = new EbnfDecorator() {
+
+		public String beginTerminal() {
+			return "\u0001";
+		}
+
+		public String endTerminal() {
+			return "\u0002";
+		}
+
+		public String beginNonterminal() {
+			return "\u0003";
+		}
+
+		public String endNonterminal() {
+			return "\u0004";
+		}
+	};
+
+	private final Properties previous;
+
+	private final Properties current = new Properties();
+
+	/**
+	 * The files in the image folder before the export, by the name of their
+	 * rule. The map is not modified once the manifest is created.
+	 */
+	private final Map<String, List<File>> previousImages;
+
+	/**
+	 * Names of the images of this export, without their extension.
+	 */
+	private final Set<String> usedImages = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * Names of the shared images that are written by this export.
+	 */
+	private final Set<String> writtenImages = Collections
+			.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+	/**
+	 * What the images of all the rules depend on.
+	 */
+	private final String fingerprint;
+
+	private ExportManifest(Properties previous,
+			Map<String, List<File>> previousImages, String fingerprint) {
+		this.previous = previous;
+		this.previousImages = previousImages;
+		this.fingerprint = fingerprint;
+	}
+
+	/**
+	 * Creates the manifest of an export, reading the manifest of the previous
+	 * export to the same directory if there is one.
+	 * 
+	 * @param directory
+	 *            Output directory
+	 * @param imageFolder
+	 *            Folder of the images, in the output directory
+	 * @param chart
+	 *            A chart of the grammar, with the options every rule is drawn
+	 *            with
+	 * @param grammar
+	 * @param sharedImages
+	 *            Whether images are named after what they look like, and
+	 *            shared between rules
+	 * @return The manifest
+	 * @throws IOException
+	 */
+	static ExportManifest load(File directory, File imageFolder, Chart chart,
+			Grammar grammar, boolean sharedImages) throws IOException {
+		Properties previous = new Properties();
+		File file = new File(directory, FILE_NAME);
+		if (file.isFile()) {
+			InputStream in = new BufferedInputStream(new FileInputStream(file));
+			try {
+				previous.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return new ExportManifest(previous, images(imageFolder), fingerprint(
+				chart, grammar, sharedImages));
+	}
+
+	/**
+	 * Lists the files in the image folder by the name of their rule, which is
+	 * the name of the file without its extension.
+	 */
+	private static Map<String, List<File>> images(File imageFolder) {
+		File[] files = imageFolder.listFiles();
+		if (files == null) {
+			return Collections.emptyMap();
+		}
+		Map<String, List<File>> images = new HashMap<String, List<File>>();
+		for (File file : files) {
+			if (!file.isFile()) {
+				continue;
+			}
+			String name = file.getName();
+			int dot = name.lastIndexOf('.');
+			if (dot >= 0) {
+				name = name.substring(0, dot);
+			}
+			List<File> list = images.get(name);
+			if (list == null) {
+				list = new ArrayList<File>();
+				images.put(name, list);
+			}
+			list.add(file);
+		}
+		return images;
+	}
+
+	private static String fingerprint(Chart chart, Grammar grammar,
+			boolean sharedImages) {
+		StringBuilder buf = new StringBuilder();
+		buf.append(VERSION);
+		Package p = ExportManifest.class.getPackage();
+		if (p != null && p.getImplementationVersion() != null) {
+			buf.append(' ').append(p.getImplementationVersion());
+		}
+		buf.append('\n').append(chart.imageStyle());
+		ChartOptions options = chart.getOptions();
+		buf.append('\n').append(options.getClass().getName()).append(' ')
+				.append(options.fontHeight()).append(' ')
+				.append(options.componentGapHeight()).append(' ')
+				.append(options.componentGapWidth()).append(' ')
+				.append(options.symbolGapHeight()).append(' ')
+				.append(options.symbolGapWidth()).append(' ')
+				.append(options.arcSize()).append(' ')
+				.append(options.arrowSize()).append(' ')
+				.append(options.initialX()).append(' ')
+				.append(options.initialY()).append(' ')
+				.append(options.showBorders()).append(' ')
+				.append(options.showSymbolName()).append(' ')
+				.append(options.optimize()).append(' ')
+				.append(options.iterationLayout());
+		if (options instanceof FontInfo) {
+			FontInfo font = (FontInfo) options;
+			buf.append('\n').append(font.getFontName()).append(' ')
+					.append(font.getFontFamily()).append(' ')
+					.append(font.getFontSize()).append(' ')
+					.append(font.isBold()).append(' ')
+					.append(font.isItalic());
+		}
+		buf.append('\n').append(grammar.getRewrites());
+		if (sharedImages) {
+			buf.append("\nshared");
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Returns the hash of everything the image of a rule depends on.
+	 * 
+	 * @param grammar
+	 * @param symbolName
+	 *            Name of the rule
+	 * @return The hash, in hexadecimal
+	 */
+	String hash(Grammar grammar, String symbolName) {
+		ProductionNode production = grammar.symbolMap.get(symbolName)
+				.getProduction();
+		String ebnf = production.toEbnf(MARKER);
+		StringBuilder buf = new StringBuilder(fingerprint);
+		buf.append('\n').append(symbolName);
+		buf.append('\n').append(ebnf);
+		// the nonterminals that link to a rule, in a stable order
+		SortedSet<String> links = new TreeSet<String>();
+		for (int i = ebnf.indexOf('\u0003'); i >= 0; i = ebnf.indexOf(
+				'\u0003', i)) {
+			int end = ebnf.indexOf('\u0004', i);
+			String name = ebnf.substring(i + 1, end);
+			if (grammar.symbolMap.get(name) != null) {
+				links.add(name);
+			}
+			i = end;
+		}
+		for (String link : links) {
+			buf.append('\n').append(link);
+		}
+		MessageDigest digest = newDigest();
+		digest.update(bytes(buf.toString()));
+		return hex(digest.digest());
+	}
+
+	/**
+	 * Returns the name of the shared image of a drawing, without its
+	 * extension: a hash of what the drawing looks like, and of the chart and
+	 * options it is drawn with.
+	 * 
+	 * @param displayList
+	 *            Recorded drawing of a rule
+	 * @return The name of the image
+	 */
+	String imageName(DisplayList displayList) {
+		MessageDigest digest = newDigest();
+		digest.update(bytes(fingerprint));
+		displayList.digest(digest);
+		return hex(digest.digest());
+	}
+
+	/**
+	 * Returns whether the given shared image still has to be written by this
+	 * export: it was not written by a previous export, nor by another rule of
+	 * this one.
+	 * 
+	 * @param image
+	 *            Image file
+	 */
+	boolean claim(File image) {
+		return writtenImages.add(image.getName()) && !image.exists();
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String hex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder(bytes.length * 2);
+		for (byte b : bytes) {
+			hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+			hex.append(Character.forDigit(b & 0xf, 16));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Returns whether the previous export drew the given rule with the same
+	 * hash, remembered its size and image map, and its image still exists.
+	 * 
+	 * @param symbolName
+	 * @param hash
+	 * @param imageFolder
+	 *            Folder of the images
+	 */
+	boolean isUpToDate(String symbolName, String hash, File imageFolder) {
+		String image = previous.getProperty(symbolName + IMAGE);
+		return hash.equals(previous.getProperty(symbolName + HASH))
+				&& previous.getProperty(symbolName + WIDTH) != null
+				&& previous.getProperty(symbolName + HEIGHT) != null
+				&& previous.getProperty(symbolName + MAP) != null
+				&& image != null && new File(imageFolder, image).exists();
+	}
+
+	/**
+	 * Copies a rule that is up to date from the previous manifest.
+	 * 
+	 * @param symbolName
+	 */
+	void keep(String symbolName) {
+		put(symbolName, previous.getProperty(symbolName + HASH), previous
+				.getProperty(symbolName + IMAGE), previous
+				.getProperty(symbolName + WIDTH), previous
+				.getProperty(symbolName + HEIGHT), previous
+				.getProperty(symbolName + MAP));
+	}
+
+	/**
+	 * Deletes the images that the previous export wrote for a rule, before
+	 * the rule is drawn again. A chart of another style may not overwrite
+	 * them all.
+	 * 
+	 * @param symbolName
+	 */
+	void deletePreviousImages(String symbolName) {
+		List<File> files = previousImages.get(symbolName);
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Deletes the images in the image folder that no rule of this export
+	 * uses.
+	 */
+	void deleteUnusedImages() {
+		for (Map.Entry<String, List<File>> entry : previousImages.entrySet()) {
+			if (!usedImages.contains(entry.getKey())) {
+				for (File file : entry.getValue()) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records a rule of this export.
+	 * 
+	 * @param symbolName
+	 *            Name of the rule
+	 * @param hash
+	 *            Hash of what its image depends on
+	 * @param image
+	 *            Name of its image file, in the image folder
+	 * @param width
+	 * @param height
+	 * @param map
+	 *            Its image map
+	 */
+	void put(String symbolName, String hash, String image, String width,
+			String height, String map) {
+		int dot = image.lastIndexOf('.');
+		usedImages.add(dot < 0 ? image : image.substring(0, dot));
+		current.setProperty(symbolName + HASH, hash);
+		current.setProperty(symbolName + IMAGE, image);
+		current.setProperty(symbolName + WIDTH, width);
+		current.setProperty(symbolName + HEIGHT, height);
+		current.setProperty(symbolName + MAP, map);
+	}
+
+	String image(String symbolName) {
+		return current.getProperty(symbolName + IMAGE);
+	}
+
+	String width(String symbolName) {
+		return current.getProperty(symbolName + WIDTH);
+	}
+
+	String height(String symbolName) {
+		return current.getProperty(symbolName + HEIGHT);
+	}
+
+	String map(String symbolName) {
+		return current.getProperty(symbolName + MAP);
+	}
+
+	/**
+	 * Writes the manifest of this export. The entries are written in the
+	 * order of their keys, with no date, so that exports of the same grammar
+	 * write the same file however many threads draw the rules.
+	 * 
+	 * @param directory
+	 *            Output directory
+	 * @throws IOException
+	 */
+	void store(File directory) throws IOException {
+		Writer out = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(new File(directory, FILE_NAME)),
+				"ISO-8859-1"));
+		try {
+			out.write("#Clapham export manifest\n");
+			for (String key : new TreeSet<String>(current
+					.stringPropertyNames())) {
+				out.write(escape(key, true));
+				out.write('=');
+				out.write(escape(current.getProperty(key), false));
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * Escapes a key or value as {@link Properties#store} does, so that
+	 * {@link Properties#load} reads it back.
+	 */
+	private static String escape(String s, boolean key) {
+		StringBuilder buf = new StringBuilder(s.length() + 16);
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case ' ':
+				if (key || i == 0) {
+					buf.append('\\');
+				}
+				buf.append(c);
+				break;
+			case '\t':
+				buf.append("\\t");
+				break;
+			case '\n':
+				buf.append("\\n");
+				break;
+			case '\r':
+				buf.append("\\r");
+				break;
+			case '\f':
+				buf.append("\\f");
+				break;
+			case '\\':
+			case '=':
+			case ':':
+			case '#':
+			case '!':
+				buf.append('\\').append(c);
+				break;
+			default:
+				if (c < 0x20 || c > 0x7e) {
+					String hex = Integer.toHexString(c);
+					buf.append("\\u");
+					for (int j = hex.length(); j < 4; j++) {
+						buf.append('0');
+					}
+					buf.append(hex);
+				} else {
+					buf.append(c);
+				}
+			}
+		}
+		return buf.toString();
+	}
+}
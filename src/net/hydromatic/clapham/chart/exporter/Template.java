@@ -0,0 +1,167 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart.exporter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An HTML template, parsed into the literal text and the <code>${name}</code>
+ * placeholders between it, so that it can be merged without searching or
+ * copying the template again.
+ * 
+ * <p>A template is immutable, and may be merged by several threads at
+ * once.</p>
+ */
+final class Template {
+
+	/**
+	 * The literal text; the placeholder <code>names[i]</code> goes between
+	 * <code>literals[i]</code> and <code>literals[i + 1]</code>.
+	 */
+	private final String[] literals;
+
+	private final String[] names;
+
+	private Template(String[] literals, String[] names) {
+		this.literals = literals;
+		this.names = names;
+	}
+
+	/**
+	 * Parses the text of a template. A <code>${</code> with no closing
+	 * <code>}</code> is literal text.
+	 * 
+	 * @param text
+	 * @return The template
+	 */
+	static Template parse(String text) {
+		List<String> literals = new ArrayList<String>();
+		List<String> names = new ArrayList<String>();
+		int start = 0;
+		while (true) {
+			int open = text.indexOf("${", start);
+			int close = open < 0 ? -1 : text.indexOf('}', open + 2);
+			if (close < 0) {
+				break;
+			}
+			literals.add(text.substring(start, open));
+			names.add(text.substring(open + 2, close));
+			start = close + 1;
+		}
+		literals.add(text.substring(start));
+		return new Template(literals.toArray(new String[literals.size()]),
+				names.toArray(new String[names.size()]));
+	}
+
+	/**
+	 * Splits the template at the first placeholder of the given name, so that
+	 * what goes in its place can be written between the two parts.
+	 * 
+	 * @param name
+	 *            Name of the placeholder
+	 * @return The part before the placeholder and the part after it
+	 */
+	Template[] split(String name) {
+		for (int i = 0; i < names.length; i++) {
+			if (names[i].equals(name)) {
+				return new Template[] {
+						new Template(copy(literals, 0, i + 1), copy(names, 0,
+								i)),
+						new Template(copy(literals, i + 1, literals.length),
+								copy(names, i + 1, names.length)) };
+			}
+		}
+		throw new IllegalArgumentException("No placeholder: " + name);
+	}
+
+	private static String[] copy(String[] array, int from, int to) {
+		String[] copy = new String[to - from];
+		System.arraycopy(array, from, copy, 0, copy.length);
+		return copy;
+	}
+
+	/**
+	 * Appends the template to the given output, with each placeholder
+	 * replaced by its value. A placeholder that has no value is written as
+	 * is. Values are written as they are; they are not searched for
+	 * placeholders.
+	 * 
+	 * @param out
+	 * @param args
+	 *            Values of the placeholders, by name
+	 * @throws IOException
+	 */
+	void merge(Appendable out, Map<String, String> args) throws IOException {
+		out.append(literals[0]);
+		for (int i = 0; i < names.length; i++) {
+			String value = args.get(names[i]);
+			if (value == null) {
+				out.append("${").append(names[i]).append('}');
+			} else {
+				out.append(value);
+			}
+			out.append(literals[i + 1]);
+		}
+	}
+
+	/**
+	 * Returns the template with each placeholder replaced by its value.
+	 * 
+	 * @param args
+	 *            Values of the placeholders, by name
+	 * @return The merged text
+	 */
+	String merge(Map<String, String> args) {
+		StringBuilder buf = new StringBuilder(length(args));
+		try {
+			merge(buf, args);
+		} catch (IOException e) {
+			// a StringBuilder never throws
+			throw new RuntimeException(e);
+		}
+		return buf.toString();
+	}
+
+	/**
+	 * Returns the length of the merged text.
+	 */
+	private int length(Map<String, String> args) {
+		int length = 0;
+		for (String literal : literals) {
+			length += literal.length();
+		}
+		for (String name : names) {
+			String value = args.get(name);
+			length += value == null ? name.length() + 3 : value.length();
+		}
+		return length;
+	}
+}
@@ -29,15 +29,19 @@ package net.hydromatic.clapham.chart.java2d;
 
 import java.awt.Dimension;
 import java.awt.Graphics2D;
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import net.hydromatic.clapham.chart.DisplayList;
 import net.hydromatic.clapham.graph.Grammar;
 
 import org.apache.batik.svggen.SVGGraphics2D;
@@ -46,9 +50,14 @@ import org.apache.batik.transcoder.TranscoderInput;
 import org.apache.batik.transcoder.TranscoderOutput;
 import org.apache.batik.transcoder.image.PNGTranscoder;
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 
 /**
- * TODO:
+ * A {@link Java2DChart} that draws into a Batik {@link SVGGraphics2D} and
+ * exports PNG images, optionally along with the SVG source.
+ * 
+ * <p>The PNG is transcoded straight from the in-memory SVG document, so the
+ * SVG file is neither read back nor parsed again.</p>
  * 
  * @author Edgar Espina
  * @version $Id: Batik2DChart.java 3 2009-05-11 08:11:57Z jhyde $
@@ -56,47 +65,136 @@ import org.w3c.dom.Document;
  */
 public class Batik2DChart extends Java2DChart {
 
+    private final boolean writeSvg;
+
     public Batik2DChart(Grammar grammar) {
+        this(grammar, true);
+    }
+
+    /**
+     * Creates a chart.
+     * 
+     * @param grammar
+     * @param writeSvg
+     *            Whether {@link #drawAndExport(String, File)} also writes the
+     *            SVG source of each image next to the PNG image, with the
+     *            same name and the extension <code>svg</code>
+     */
+    public Batik2DChart(Grammar grammar, boolean writeSvg) {
         super(grammar, createGraphics());
+        this.writeSvg = writeSvg;
     }
 
     @Override
-    public void drawAndExport(String symbolName, File output)
+    public void drawAndExport(DisplayList displayList, File output)
             throws IOException {
-        Dimension size = size(symbolName);
-        draw(symbolName);
-
-        File svgFile = new File(output.getParentFile(), symbolName + ".svg");
+        Element root = drawSvg(displayList);
+        try {
+            export(root, output);
+        } finally {
+            release(root);
+        }
+    }
 
-        SVGGraphics2D graphics = (SVGGraphics2D) g;
-        graphics.setSVGCanvasSize(new Dimension(size.width, size.height));
-        graphics.stream(svgFile.getPath(), true);
+    private void export(Element root, File output) throws IOException {
+        if (writeSvg) {
+            String name = output.getName();
+            int dot = name.lastIndexOf('.');
+            if (dot >= 0) {
+                name = name.substring(0, dot);
+            }
+            File svgFile = new File(output.getParentFile(), name + ".svg");
+            Writer writer = new OutputStreamWriter(new FileOutputStream(
+                    svgFile), "ISO-8859-1");
+            try {
+                ((SVGGraphics2D) g).stream(root, writer, true);
+            } finally {
+                writer.close();
+            }
+        }
 
+        OutputStream ostream = new BufferedOutputStream(new FileOutputStream(
+                output));
         try {
-            toPng(svgFile, output);
+            toPng(root, ostream);
         } catch (TranscoderException e) {
             throw new IOException("Can not create: " + output, e);
+        } finally {
+            ostream.close();
+        }
+    }
+
+    /**
+     * Draws the diagram and writes it as a PNG image to the given stream,
+     * without writing any file.
+     * 
+     * @param symbolName
+     * @param ostream
+     *            Stream the image is written to; it is not closed
+     * @throws IOException
+     */
+    public void drawAndExport(String symbolName, OutputStream ostream)
+            throws IOException {
+        Element root = drawSvg(record(symbolName));
+        try {
+            toPng(root, ostream);
+        } catch (TranscoderException e) {
+            throw new IOException("Can not create image of: " + symbolName, e);
+        } finally {
+            release(root);
         }
     }
 
-    private static void toPng(File inFile, File file) throws IOException,
-            TranscoderException {
+    /**
+     * Detaches the SVG document of a diagram from the chart's document, so
+     * that the chart does not keep it alive after it has been exported.
+     */
+    private static void release(Element root) {
+        Document document = root.getOwnerDocument();
+        if (document.getDocumentElement() == root) {
+            document.removeChild(root);
+        }
+    }
+
+    /**
+     * Replays a recorded drawing and returns the root of the SVG document,
+     * sized to fit the drawing.
+     */
+    private Element drawSvg(DisplayList displayList) {
+        displayList.replay(this);
+
+        SVGGraphics2D graphics = (SVGGraphics2D) g;
+        graphics.setSVGCanvasSize(new Dimension(displayList.width(),
+                displayList.height()));
+        return graphics.getRoot();
+    }
+
+    @Override
+    public String imageStyle() {
+        return writeSvg ? super.imageStyle() + " svg" : super.imageStyle();
+    }
+
+    private static void toPng(Element root, OutputStream ostream)
+            throws IOException, TranscoderException {
         // Create a PNG transcoder
         PNGTranscoder t = new PNGTranscoder();
 
-        // Create the transcoder input.
-        TranscoderInput input = new TranscoderInput("file:" + inFile.getPath());
-
-        // Create the transcoder output.
-        OutputStream ostream = new FileOutputStream(file);
-        TranscoderOutput output = new TranscoderOutput(ostream);
+        // Create the transcoder input from the document itself, whose root is
+        // the current diagram. The transcoder copies it into an SVG DOM, so
+        // nothing is serialized or parsed.
+        Document document = root.getOwnerDocument();
+        Element previous = document.getDocumentElement();
+        if (previous == null) {
+            document.appendChild(root);
+        } else if (previous != root) {
+            document.replaceChild(root, previous);
+        }
+        TranscoderInput input = new TranscoderInput(document);
 
         // Save the image.
-        t.transcode(input, output);
+        t.transcode(input, new TranscoderOutput(ostream));
 
-        // Flush and close the stream.
         ostream.flush();
-        ostream.close();
     }
 
     private static Graphics2D createGraphics() {
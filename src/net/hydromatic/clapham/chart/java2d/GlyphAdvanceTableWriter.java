@@ -0,0 +1,148 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart.java2d;
+
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+
+import net.hydromatic.clapham.chart.FontMetricsChartOptions;
+import net.hydromatic.clapham.chart.GlyphAdvanceChartOptions;
+
+/**
+ * Generates the table of glyph advances of a font, read by
+ * {@link GlyphAdvanceChartOptions}. The font is measured as
+ * {@link FontMetricsChartOptions} measures it.
+ * 
+ * <p>Usage</p>
+ * <pre>
+ * java net.hydromatic.clapham.chart.java2d.GlyphAdvanceTableWriter \
+ *     Serif-plain-12 directory
+ * </pre>
+ * 
+ * <p>writes <code>directory/Serif-plain-12.advances</code>.</p>
+ * 
+ * @version $Id: $
+ */
+public class GlyphAdvanceTableWriter {
+
+    /** The first character in a table, space. */
+    private static final char FIRST = ' ';
+
+    /** The last character in a table, the end of Latin-1. */
+    private static final char LAST = '\u00ff';
+
+    private final Font font;
+
+    private final FontMetrics metrics;
+
+    public GlyphAdvanceTableWriter(Font font) {
+        if (font == null) {
+            throw new IllegalArgumentException("font can't be null");
+        }
+        this.font = font;
+        this.metrics = FontMetricsChartOptions.metrics(font);
+    }
+
+    /**
+     * The name of the font's table, without the suffix.
+     * 
+     * @return The name of the font's table
+     */
+    public String tableName() {
+        float size = font.getSize2D();
+        return font.getName() + "-" + style() + "-"
+                + (size == (int) size ? Integer.toString((int) size) : Float
+                        .toString(size));
+    }
+
+    private String style() {
+        if (font.isBold()) {
+            return font.isItalic() ? "bolditalic" : "bold";
+        }
+        return font.isItalic() ? "italic" : "plain";
+    }
+
+    /**
+     * Writes the table.
+     * 
+     * @param writer
+     */
+    public void write(Writer writer) {
+        PrintWriter out = new PrintWriter(writer);
+        out.println("# Glyph advances of " + tableName() + ", generated by "
+                + getClass().getSimpleName());
+        out.println("name=" + font.getName());
+        out.println("family=" + font.getFamily());
+        out.println("size=" + font.getSize2D());
+        out.println("style=" + style());
+        out.println("height=" + metrics.getHeight());
+        out.println("first=" + (int) FIRST);
+        out.print("advances=");
+        for (char c = FIRST; c <= LAST; c++) {
+            if (c > FIRST) {
+                out.print(c % 16 == 0 ? " \\\n    " : " ");
+            }
+            out.print(metrics.charWidth(c));
+        }
+        out.println();
+        out.flush();
+    }
+
+    /**
+     * Command-line entry point.
+     * 
+     * @param args
+     *            Name of the font, as <code>Font.decode</code> understands it,
+     *            and the output directory
+     * @throws IOException
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            throw new RuntimeException("Usage: GlyphAdvanceTableWriter font"
+                    + " directory");
+        }
+        GlyphAdvanceTableWriter tableWriter = new GlyphAdvanceTableWriter(Font
+                .decode(args[0]));
+        File file = new File(args[1], tableWriter.tableName() + ".advances");
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file),
+                "ISO-8859-1");
+        try {
+            tableWriter.write(writer);
+        } finally {
+            writer.close();
+        }
+    }
+}
+
+// End GlyphAdvanceTableWriter.java
@@ -0,0 +1,172 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart.java2d;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import javax.imageio.ImageIO;
+
+import net.hydromatic.clapham.chart.DisplayList;
+import net.hydromatic.clapham.graph.Grammar;
+
+/**
+ * A {@link Java2DChart} that draws each diagram straight into a
+ * {@link BufferedImage} and encodes it with {@link ImageIO}. Unlike
+ * {@link Batik2DChart} it renders only once and does not need Batik.
+ * 
+ * <p>The image is sized from its {@link DisplayList}, and is transparent
+ * except for the diagram, as the images transcoded by Batik are.</p>
+ * 
+ * @version $Id: $
+ */
+public class ImageChart extends Java2DChart {
+
+    private final String formatName;
+
+    /**
+     * Creates a chart that writes PNG images.
+     * 
+     * @param grammar
+     */
+    public ImageChart(Grammar grammar) {
+        this(grammar, "png");
+    }
+
+    /**
+     * Creates a chart.
+     * 
+     * @param grammar
+     * @param formatName
+     *            Informal name of an {@link ImageIO} format that supports
+     *            transparency, such as "png" or "gif"
+     */
+    public ImageChart(Grammar grammar, String formatName) {
+        super(grammar, createGraphics(new BufferedImage(1, 1,
+                BufferedImage.TYPE_INT_ARGB)));
+        this.formatName = formatName;
+    }
+
+    @Override
+    public void drawAndExport(DisplayList displayList, File output)
+            throws IOException {
+        OutputStream ostream = new BufferedOutputStream(new FileOutputStream(
+                output));
+        try {
+            drawAndExport(displayList, ostream);
+        } finally {
+            ostream.close();
+        }
+    }
+
+    /**
+     * Draws the diagram and writes it as an image to the given stream.
+     * 
+     * @param symbolName
+     * @param ostream
+     *            Stream the image is written to; it is not closed
+     * @throws IOException
+     */
+    public void drawAndExport(String symbolName, OutputStream ostream)
+            throws IOException {
+        drawAndExport(record(symbolName), ostream);
+    }
+
+    /**
+     * Writes a recorded drawing as an image to the given stream.
+     * 
+     * @param displayList
+     * @param ostream
+     *            Stream the image is written to; it is not closed
+     * @throws IOException
+     */
+    public void drawAndExport(DisplayList displayList, OutputStream ostream)
+            throws IOException {
+        BufferedImage image = drawImage(displayList);
+        if (!ImageIO.write(image, formatName, ostream)) {
+            throw new IOException("No writer for image format: " + formatName);
+        }
+        ostream.flush();
+    }
+
+    /**
+     * Draws the diagram into a new image of the diagram's size.
+     * 
+     * @param symbolName
+     * @return Image
+     */
+    public BufferedImage drawImage(String symbolName) {
+        return drawImage(record(symbolName));
+    }
+
+    /**
+     * Replays a recorded drawing into a new image of the drawing's size.
+     * 
+     * @param displayList
+     * @return Image
+     */
+    public BufferedImage drawImage(DisplayList displayList) {
+        BufferedImage image = new BufferedImage(Math.max(displayList.width(),
+                1), Math.max(displayList.height(), 1),
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D measure = g;
+        g = createGraphics(image);
+        g.setFont(measure.getFont());
+        g.setColor(charColor);
+        try {
+            displayList.replay(this);
+        } finally {
+            g.dispose();
+            g = measure;
+        }
+        return image;
+    }
+
+    @Override
+    public String imageFormat() {
+        return formatName;
+    }
+
+    private static Graphics2D createGraphics(BufferedImage image) {
+        Graphics2D graphics = image.createGraphics();
+        // the same rendering as Batik's transcoder
+        graphics.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        graphics.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        return graphics;
+    }
+}
+
+// End ImageChart.java
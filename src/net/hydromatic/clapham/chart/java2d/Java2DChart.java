@@ -39,8 +39,9 @@ import java.io.File;
 import java.io.IOException;
 
 import net.hydromatic.clapham.chart.AbstractChart;
-import net.hydromatic.clapham.chart.AbstractChartOptions;
 import net.hydromatic.clapham.chart.ChartOptions;
+import net.hydromatic.clapham.chart.DisplayList;
+import net.hydromatic.clapham.chart.FontMetricsChartOptions;
 import net.hydromatic.clapham.graph.Grammar;
 import net.hydromatic.clapham.graph.NodeType;
 import net.hydromatic.clapham.graph.Size;
@@ -82,9 +83,10 @@ public class Java2DChart extends AbstractChart {
     private Size symbolSize = new Size(1, 1);
 
     /**
-     * the graphics object from the EBNFForm on which the drawing takes place
+     * the graphics object from the EBNFForm on which the drawing takes place;
+     * a subclass may replace it while it draws a diagram
      */
-    protected final Graphics2D g;
+    protected Graphics2D g;
 
     public Java2DChart(Grammar grammar, Graphics2D graphics) {
         super(grammar);
@@ -93,17 +95,20 @@ public class Java2DChart extends AbstractChart {
 
     private ChartOptions createOptions(Font font) {
         g.setFont(font);
-        return new AbstractChartOptions() {
-
-            public int stringWidth(String text) {
-                return g.getFontMetrics().stringWidth(text) + symbolGapWidth()
-                        * 6;
-            }
+        return new FontMetricsChartOptions(font, g.getFontMetrics(font));
+    }
 
-            public int fontHeight() {
-                return g.getFontMetrics().getHeight();
-            }
-        };
+    /**
+     * Uses the font of the given options if they were created by a
+     * {@link Java2DChart}, so that options (and the layout computed for them)
+     * can be shared between charts.
+     */
+    @Override
+    public void setOptions(ChartOptions options) {
+        super.setOptions(options);
+        if (options instanceof FontMetricsChartOptions) {
+            g.setFont(((FontMetricsChartOptions) options).getFont());
+        }
     }
 
     public ChartOptions createOptions(String font) {
@@ -122,7 +127,7 @@ public class Java2DChart extends AbstractChart {
         return symbolSize;
     }
 
-    public void drawAndExport(String symbolName, File output)
+    public void drawAndExport(DisplayList displayList, File output)
             throws IOException {
         throw new UnsupportedOperationException();
     }
@@ -162,6 +167,10 @@ public class Java2DChart extends AbstractChart {
     public int fontHeightCorrectness() {
         return symbolGapHeight() * 3;
     }
+
+    public String imageFormat() {
+        return "png";
+    }
 }
 
 // End Java2DChart.java
@@ -0,0 +1,633 @@
+/*
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2010-2010 Edgar Espina
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+ */
+package net.hydromatic.clapham.chart.svg;
+
+import java.awt.Dimension;
+import java.awt.Font;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+import net.hydromatic.clapham.chart.AbstractChart;
+import net.hydromatic.clapham.chart.Chart;
+import net.hydromatic.clapham.chart.ChartOptions;
+import net.hydromatic.clapham.chart.DisplayList;
+import net.hydromatic.clapham.chart.FontInfo;
+import net.hydromatic.clapham.chart.FontMetricsChartOptions;
+import net.hydromatic.clapham.chart.GlyphAdvanceChartOptions;
+import net.hydromatic.clapham.chart.Path;
+import net.hydromatic.clapham.graph.Grammar;
+import net.hydromatic.clapham.graph.NodeType;
+
+/**
+ * A {@link net.hydromatic.clapham.chart.Chart} that writes SVG elements
+ * straight to a {@link Writer} as the diagram is drawn. Unlike
+ * {@link net.hydromatic.clapham.chart.java2d.Batik2DChart} it builds no DOM,
+ * so memory does not grow with the size of the diagram.
+ * 
+ * <p>Usage</p>
+ * <pre>
+ * SvgChart chart = new SvgChart(grammar, writer);
+ * chart.setOptions(chart.createOptions());
+ * chart.prepare();
+ * chart.draw("rule");
+ * </pre>
+ * 
+ * <p>By default each element carries its own style. A chart that is
+ * {@link #setStyled(boolean) styled} instead writes the shared style once, in
+ * a <code>style</code> element, and gives each text the CSS class of its
+ * {@link NodeType}, such as <code>term</code> or <code>nonterm</code>; it also
+ * defines each arrow head once, as a <code>marker</code> that the class of the
+ * arrow's line refers to. Styled images are smaller, and can be restyled with
+ * a style sheet.</p>
+ * 
+ * @version $Id: $
+ */
+public class SvgChart extends AbstractChart {
+
+    private static final Chart.ArrowDirection[] ARROW_DIRECTIONS =
+            Chart.ArrowDirection.values();
+
+    private PrintWriter out;
+
+    private boolean styled;
+
+    /**
+     * Heads of the arrows in each direction, with the tip at the origin, if
+     * the chart is styled.
+     */
+    private int[][][] arrowHeads;
+
+    /**
+     * Whether the marker of the arrows in each direction has been written to
+     * the current image.
+     */
+    private boolean[] arrowDefined;
+
+    /**
+     * Creates a chart that can only be written to a file, using
+     * {@link #drawAndExport(String, File)}.
+     * 
+     * @param grammar
+     */
+    public SvgChart(Grammar grammar) {
+        super(grammar);
+    }
+
+    /**
+     * Creates a chart that writes an <code>svg</code> element to the given
+     * writer each time {@link #draw(String)} is called.
+     * 
+     * @param grammar
+     * @param writer
+     */
+    public SvgChart(Grammar grammar, Writer writer) {
+        super(grammar);
+        if (writer == null) {
+            throw new IllegalArgumentException("writer can't be null");
+        }
+        this.out = new PrintWriter(writer);
+    }
+
+    /**
+     * Creates options for the default font. Text is measured with the
+     * precomputed glyph advances of the font, so no font is loaded.
+     */
+    public ChartOptions createOptions() {
+        return createOptions(GlyphAdvanceChartOptions.DEFAULT_FONT);
+    }
+
+    /**
+     * Creates options for the given font. Text is measured with the
+     * precomputed glyph advances of the font if there are any, otherwise with
+     * the metrics of the font, which loads AWT.
+     */
+    public ChartOptions createOptions(String fontName) {
+        ChartOptions options = GlyphAdvanceChartOptions.forFont(fontName);
+        if (options == null) {
+            options = new FontMetricsChartOptions(Font.decode(fontName));
+        }
+        return options;
+    }
+
+    /**
+     * Sets whether the images use CSS classes and shared definitions rather
+     * than style each element.
+     */
+    public void setStyled(boolean styled) {
+        this.styled = styled;
+    }
+
+    public boolean isStyled() {
+        return styled;
+    }
+
+    @Override
+    public void draw(String symbolName) {
+        if (out == null) {
+            throw new IllegalStateException("The chart has no writer");
+        }
+        writeStart(size(symbolName));
+        super.draw(symbolName);
+        writeEnd();
+        if (out.checkError()) {
+            throw new RuntimeException("Error while writing the chart");
+        }
+    }
+
+    /**
+     * Writes the diagram of a rule to a file as it is drawn, without
+     * recording it first.
+     */
+    @Override
+    public void drawAndExport(final String symbolName, File output)
+            throws IOException {
+        export(output, new Runnable() {
+            public void run() {
+                writeStart(size(symbolName));
+                SvgChart.super.draw(symbolName);
+                writeEnd();
+            }
+        });
+    }
+
+    /**
+     * Writes a recorded drawing to a file. Use it when the recording is
+     * needed anyway, say for an image map or to tell whether the image has
+     * changed; otherwise {@link #drawAndExport(String, File)} writes the
+     * same file without holding the drawing in memory.
+     */
+    public void drawAndExport(final DisplayList displayList, File output)
+            throws IOException {
+        export(output, new Runnable() {
+            public void run() {
+                writeStart(new Dimension(displayList.width(),
+                        displayList.height()));
+                displayList.replay(SvgChart.this);
+                writeEnd();
+            }
+        });
+    }
+
+    private void export(File output, Runnable writer) throws IOException {
+        PrintWriter previous = out;
+        out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+                new FileOutputStream(output), "UTF-8")));
+        try {
+            out.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+            writer.run();
+            if (out.checkError()) {
+                throw new IOException("Can not create: " + output);
+            }
+        } finally {
+            out.close();
+            out = previous;
+        }
+    }
+
+    private void writeStart(Dimension size) {
+        out.print("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"");
+        out.print(size.width);
+        out.print("\" height=\"");
+        out.print(size.height);
+        out.println("\">");
+        if (styled) {
+            writeStyle();
+            out.println("<g xml:space=\"preserve\">");
+        } else {
+            writeGroup();
+        }
+    }
+
+    private void writeEnd() {
+        out.println("</g>");
+        out.println("</svg>");
+        out.flush();
+    }
+
+    /**
+     * Writes the start of the group that holds the diagram, with the style
+     * its elements inherit.
+     */
+    private void writeGroup() {
+        FontInfo font = font();
+        out.print("<g fill=\"none\" stroke=\"black\" stroke-width=\"1\""
+                + " stroke-linecap=\"square\" stroke-miterlimit=\"10\""
+                + " font-family=\"");
+        out.print(escape(fontFamily(font)));
+        out.print("\" font-size=\"");
+        out.print(format(font.getFontSize()));
+        out.print('"');
+        if (font.isBold()) {
+            out.print(" font-weight=\"bold\"");
+        }
+        if (font.isItalic()) {
+            out.print(" font-style=\"italic\"");
+        }
+        out.println('>');
+    }
+
+    /**
+     * Writes the style sheet of a styled chart. Texts of every
+     * {@link NodeType} look the same; the classes are there for other style
+     * sheets to tell them apart. The line of an arrow gets its head from the
+     * class of its direction.
+     */
+    private void writeStyle() {
+        FontInfo font = font();
+        out.println("<style type=\"text/css\"><![CDATA[");
+        out.print("g{fill:none;stroke:black;stroke-width:1;"
+                + "stroke-linecap:square;stroke-miterlimit:10;font-family:");
+        out.print(fontFamily(font));
+        out.print(";font-size:");
+        out.print(format(font.getFontSize()));
+        out.print("px");
+        if (font.isBold()) {
+            out.print(";font-weight:bold");
+        }
+        if (font.isItalic()) {
+            out.print(";font-style:italic");
+        }
+        out.println('}');
+        out.println("text{fill:black;stroke:none}");
+        arrowHeads = new int[ARROW_DIRECTIONS.length][][];
+        arrowDefined = new boolean[ARROW_DIRECTIONS.length];
+        for (int i = 0; i < ARROW_DIRECTIONS.length; i++) {
+            arrowHeads[i] = arrowHead(ARROW_DIRECTIONS[i], 0, 0);
+            out.print('.');
+            out.print(arrowId(i));
+            out.print("{marker-end:url(#");
+            out.print(arrowId(i));
+            out.println(")}");
+        }
+        out.println("]]></style>");
+    }
+
+    /**
+     * Writes the definition of an arrow head of a styled chart, the first
+     * time an arrow points that way. The head is a marker with its tip at the
+     * origin, so that it is drawn with its tip at the end of the line it
+     * marks.
+     */
+    private void defineArrow(int i) {
+        if (arrowDefined[i]) {
+            return;
+        }
+        arrowDefined[i] = true;
+        out.print("<defs><marker id=\"");
+        out.print(arrowId(i));
+        out.print("\" markerUnits=\"userSpaceOnUse\" overflow=\"visible\">"
+                + "<polygon points=\"");
+        writePoints(arrowHeads[i][0], arrowHeads[i][1]);
+        out.println("\" fill=\"black\" stroke=\"none\"/></marker></defs>");
+    }
+
+    private static String arrowId(int i) {
+        return "arrow-"
+                + ARROW_DIRECTIONS[i].name().toLowerCase(Locale.ENGLISH);
+    }
+
+    private FontInfo font() {
+        if (getOptions() instanceof FontInfo) {
+            return (FontInfo) getOptions();
+        }
+        return (FontInfo) createOptions();
+    }
+
+    /**
+     * Maps the logical Java font names to generic CSS font families.
+     */
+    private static String fontFamily(FontInfo font) {
+        String name = font.getFontName();
+        if (name.equals(Font.SERIF)) {
+            return "serif";
+        } else if (name.equals(Font.SANS_SERIF) || name.equals(Font.DIALOG)) {
+            return "sans-serif";
+        } else if (name.equals(Font.MONOSPACED)
+                || name.equals(Font.DIALOG_INPUT)) {
+            return "monospace";
+        }
+        return "'" + font.getFontFamily() + "'";
+    }
+
+    @Override
+    protected void internalDrawString(NodeType nodeType, String text, int x,
+            int y) {
+        if (styled) {
+            out.print("<text class=\"");
+            out.print(nodeType.name().toLowerCase(Locale.ENGLISH));
+            out.print("\" x=\"");
+            out.print(x);
+            out.print("\" y=\"");
+            out.print(y);
+            out.print("\">");
+        } else {
+            out.print("<text x=\"");
+            out.print(x);
+            out.print("\" y=\"");
+            out.print(y);
+            out.print("\" fill=\"black\" stroke=\"none\""
+                    + " xml:space=\"preserve\">");
+        }
+        out.print(escape(text));
+        out.println("</text>");
+    }
+
+    @Override
+    protected void internalDrawArrow(int x1, int y1, int x2, int y2,
+            int[] xpoints, int[] ypoints) {
+        if (styled && x2 == xpoints[0] && y2 == ypoints[0]) {
+            for (int i = 0; i < arrowHeads.length; i++) {
+                if (isTranslated(arrowHeads[i], xpoints, ypoints)) {
+                    Path path = new Path();
+                    path.line(x1, y1, x2, y2);
+                    defineArrow(i);
+                    out.print("<path class=\"");
+                    out.print(arrowId(i));
+                    out.print("\" d=\"");
+                    out.print(pathData(path));
+                    out.println("\"/>");
+                    return;
+                }
+            }
+        }
+        internalDrawLine(x1, y1, x2, y2);
+        out.print("<polygon points=\"");
+        writePoints(xpoints, ypoints);
+        out.println("\" fill=\"black\" stroke=\"none\"/>");
+    }
+
+    /**
+     * Returns whether a polygon is the given head, moved so that its tip is
+     * at the first point of the polygon.
+     */
+    private static boolean isTranslated(int[][] head, int[] xpoints,
+            int[] ypoints) {
+        if (xpoints.length != head[0].length) {
+            return false;
+        }
+        for (int i = 0; i < xpoints.length; i++) {
+            if (xpoints[i] - xpoints[0] != head[0][i]
+                    || ypoints[i] - ypoints[0] != head[1][i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void writePoints(int[] xpoints, int[] ypoints) {
+        for (int i = 0; i < xpoints.length; i++) {
+            if (i > 0) {
+                out.print(' ');
+            }
+            out.print(xpoints[i]);
+            out.print(',');
+            out.print(ypoints[i]);
+        }
+    }
+
+    @Override
+    protected void internalDrawLine(int x1, int y1, int x2, int y2) {
+        if (styled) {
+            Path path = new Path();
+            path.line(x1, y1, x2, y2);
+            internalDrawPath(path);
+            return;
+        }
+        out.print("<line x1=\"");
+        out.print(x1);
+        out.print("\" y1=\"");
+        out.print(y1);
+        out.print("\" x2=\"");
+        out.print(x2);
+        out.print("\" y2=\"");
+        out.print(y2);
+        out.println("\"/>");
+    }
+
+    /**
+     * Draws the outline of an arc, with the same meaning of the arguments as
+     * {@link java.awt.Graphics#drawArc}.
+     */
+    @Override
+    protected void internalDrawArc(int x, int y, int width, int height,
+            int startAngle, int arcAngle) {
+        double rx = width / 2d;
+        double ry = height / 2d;
+        double cx = x + rx;
+        double cy = y + ry;
+        if (Math.abs(arcAngle) >= 360) {
+            out.print("<ellipse cx=\"");
+            out.print(format(cx));
+            out.print("\" cy=\"");
+            out.print(format(cy));
+            out.print("\" rx=\"");
+            out.print(format(rx));
+            out.print("\" ry=\"");
+            out.print(format(ry));
+            out.println("\"/>");
+            return;
+        }
+        double start = Math.toRadians(startAngle);
+        double end = Math.toRadians(startAngle + arcAngle);
+        out.print("<path d=\"M");
+        out.print(format(cx + rx * Math.cos(start)));
+        out.print(' ');
+        out.print(format(cy - ry * Math.sin(start)));
+        out.print(" A");
+        out.print(format(rx));
+        out.print(' ');
+        out.print(format(ry));
+        // angles run counter-clockwise, which is SVG's negative direction
+        out.print(Math.abs(arcAngle) > 180 ? " 0 1 " : " 0 0 ");
+        out.print(arcAngle > 0 ? "0 " : "1 ");
+        out.print(format(cx + rx * Math.cos(end)));
+        out.print(' ');
+        out.print(format(cy - ry * Math.sin(end)));
+        out.println("\"/>");
+    }
+
+    /**
+     * Writes a path as one <code>path</code> element, however many lines and
+     * arcs it has.
+     */
+    @Override
+    protected void internalDrawPath(Path path) {
+        out.print("<path d=\"");
+        out.print(pathData(path));
+        out.println("\"/>");
+    }
+
+    /**
+     * Returns the value of the <code>d</code> attribute of a path.
+     */
+    private static String pathData(Path path) {
+        final StringBuilder d = new StringBuilder();
+        path.accept(new Path.SegmentVisitor() {
+            public void line(int x1, int y1, int x2, int y2,
+                    boolean continues) {
+                if (!continues) {
+                    d.append('M').append(x1).append(' ').append(y1);
+                }
+                if (y1 == y2 && x1 != x2) {
+                    d.append('H').append(x2);
+                } else if (x1 == x2 && y1 != y2) {
+                    d.append('V').append(y2);
+                } else {
+                    d.append('L').append(x2).append(' ').append(y2);
+                }
+            }
+
+            public void arc(int x, int y, int width, int height,
+                    int startAngle, int arcAngle, boolean continues) {
+                if (Math.abs(arcAngle) >= 360) {
+                    // an arc can not end where it starts; draw two halves
+                    final int half = arcAngle > 0 ? 180 : -180;
+                    arc(x, y, width, height, startAngle, half, continues);
+                    arc(x, y, width, height, startAngle + half, half, true);
+                    return;
+                }
+                final double rx = width / 2d;
+                final double ry = height / 2d;
+                final double cx = x + rx;
+                final double cy = y + ry;
+                final double start = Math.toRadians(startAngle);
+                final double end = Math.toRadians(startAngle + arcAngle);
+                if (!continues) {
+                    d.append('M').append(format(cx + rx * Math.cos(start)))
+                            .append(' ').append(
+                                    format(cy - ry * Math.sin(start)));
+                }
+                d.append('A').append(format(rx)).append(' ').append(
+                        format(ry));
+                // angles run counter-clockwise, which is SVG's negative
+                // direction
+                d.append(Math.abs(arcAngle) > 180 ? " 0 1 " : " 0 0 ");
+                d.append(arcAngle > 0 ? "0 " : "1 ");
+                d.append(format(cx + rx * Math.cos(end))).append(' ').append(
+                        format(cy - ry * Math.sin(end)));
+            }
+        });
+        return d.toString();
+    }
+
+    @Override
+    protected void internalDrawRectangle(int x, int y, int width, int height) {
+        out.print("<rect x=\"");
+        out.print(x);
+        out.print("\" y=\"");
+        out.print(y);
+        out.print("\" width=\"");
+        out.print(width);
+        out.print("\" height=\"");
+        out.print(height);
+        out.println("\"/>");
+    }
+
+    @Override
+    protected void internalDrawRoundRectangle(int x, int y, int width,
+            int height, int arcWidth, int arcHeight) {
+        out.print("<rect x=\"");
+        out.print(x);
+        out.print("\" y=\"");
+        out.print(y);
+        out.print("\" width=\"");
+        out.print(width);
+        out.print("\" height=\"");
+        out.print(height);
+        out.print("\" rx=\"");
+        out.print(format(arcWidth / 2d));
+        out.print("\" ry=\"");
+        out.print(format(arcHeight / 2d));
+        out.println("\"/>");
+    }
+
+    public int fontHeightCorrectness() {
+        return symbolGapHeight() * 3;
+    }
+
+    public String imageFormat() {
+        return "svg";
+    }
+
+    @Override
+    public String imageStyle() {
+        return styled ? super.imageStyle() + " styled" : super.imageStyle();
+    }
+
+    /**
+     * Formats a coordinate with at most three decimals.
+     */
+    private static String format(double d) {
+        double rounded = Math.rint(d * 1000) / 1000;
+        if (rounded == Math.rint(rounded)) {
+            return Long.toString((long) rounded);
+        }
+        return Double.toString(rounded);
+    }
+
+    private static String escape(String text) {
+        StringBuilder buf = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            String entity;
+            switch (c) {
+            case '&':
+                entity = "&amp;";
+                break;
+            case '<':
+                entity = "&lt;";
+                break;
+            case '>':
+                entity = "&gt;";
+                break;
+            case '"':
+                entity = "&quot;";
+                break;
+            default:
+                if (buf != null) {
+                    buf.append(c);
+                }
+                continue;
+            }
+            if (buf == null) {
+                buf = new StringBuilder(text.length() + 16);
+                buf.append(text, 0, i);
+            }
+            buf.append(entity);
+        }
+        return buf == null ? text : buf.toString();
+    }
+}
+
+// End SvgChart.java
@@ -30,8 +30,11 @@
 package net.hydromatic.clapham.graph;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.io.PrintStream;
 
+import net.hydromatic.clapham.chart.ChartOptions;
+
 /**
  * TODO:
  *
@@ -42,38 +45,376 @@ import java.io.PrintStream;
 public class Grammar {
     public final Map<String, Symbol> symbolMap = new LinkedHashMap<String, Symbol>();
 
-    final List<Node> nodes = new ArrayList<Node>();
+    final NodeStore nodes = new NodeStore(this);
 
     public static boolean TRACE = false;
 
-    // enable optimizations?
-    private boolean optimizeGraph = true;
+    // rewrites that optimize() applies
+    private Set<Rewrite> rewrites = EnumSet.allOf(Rewrite.class);
 
     public final List<Symbol> terminals = new ArrayList<Symbol>();
     public final List<Symbol> nonterminals = new ArrayList<Symbol>();
 
-    private static int ptr(Node p, boolean up) {
-        if (p == null) {
+    // canonical symbols, by type and name; nodes hold only these
+    private final Map<NodeType, ConcurrentMap<String, Symbol>> symbolTable =
+        new EnumMap<NodeType, ConcurrentMap<String, Symbol>>(NodeType.class);
+
+    // canonical symbols, by id; written while holding the lock on this
+    // grammar
+    private volatile Symbol[] symbolsById = new Symbol[16];
+    private int symbolCount;
+
+    // nodes that represent a symbol, by symbol name, in creation order; null
+    // until find() or terminalToNt() first needs it
+    private Map<String, List<Integer>> symbolNodes;
+
+    // terminals asked for by the current thread while it runs one of several
+    // tasks in parallel; null if they are registered as asked for
+    private final ThreadLocal<Chunk> chunk = new ThreadLocal<Chunk>();
+
+    public Grammar() {
+        for (NodeType typ : NodeType.values()) {
+            symbolTable.put(typ, new ConcurrentHashMap<String, Symbol>());
+        }
+    }
+
+    private static int ptr(int p, boolean up) {
+        if (p == NodeStore.NONE) {
             return 0;
         } else if (up) {
-            return -p.n;
+            return -p;
         } else {
-            return p.n;
+            return p;
         }
     }
     
     public void setOptimizeGraph(boolean value) {
-        this.optimizeGraph = value;
+        setRewrites(
+            value
+                ? EnumSet.allOf(Rewrite.class)
+                : EnumSet.of(Rewrite.LINEBREAKS));
     }
 
     public boolean setOptimizeGraph() {
-        return optimizeGraph;
+        return !EnumSet.of(Rewrite.LINEBREAKS).containsAll(rewrites);
+    }
+
+    /**
+     * Sets which rewrites {@link #optimize()} applies.
+     *
+     * @param rewrites Rewrites to apply
+     */
+    public void setRewrites(Set<Rewrite> rewrites) {
+        this.rewrites = EnumSet.noneOf(Rewrite.class);
+        this.rewrites.addAll(rewrites);
+    }
+
+    /**
+     * Returns the rewrites that {@link #optimize()} applies.
+     *
+     * @return rewrites to apply, in the order they are tried at each node
+     */
+    public Set<Rewrite> getRewrites() {
+        return Collections.unmodifiableSet(rewrites);
+    }
+
+    /**
+     * Computes the sizes and positions of the nodes of every rule, using the
+     * given options. The nodes are not modified, so a grammar can be laid out
+     * with several sets of options, even at the same time.
+     *
+     * @param options Chart options
+     * @return layout of the nodes
+     */
+    public Layout layOut(ChartOptions options) {
+        Layout layout = new Layout(options, nodes);
+        for (Symbol s : nonterminals) {
+            layout.setGraphSize(s.graph, Node.calcSize(layout, s.graph.l));
+            Node.setWrapSize(layout, s.graph.l);
+            Node.calcPos(layout, s.graph.l, options.initialY(), false);
+            if (TRACE) {
+                System.out.println("\n\n" + layout.graphSize(s.graph));
+            }
+        }
+        layout.finish();
+        if (TRACE) {
+            printNodes(System.out);
+        }
+        return layout;
+    }
+
+    /**
+     * Returns the nodes of the graphs of this grammar.
+     */
+    public NodeStore getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Creates a node that represents a symbol.
+     *
+     * @param symbol Symbol; the node represents the canonical symbol with
+     *     the same type and name
+     * @return number of the node
+     */
+    public int newNode(Symbol symbol) {
+        final Symbol canonical = intern(symbol);
+        final int node = nodes.addSymbol(canonical.typ, id(canonical));
+        if (node >= 0 && symbolNodes != null) {
+            indexSymbolNode(node);
+        }
+        return node;
+    }
+
+    /**
+     * Returns the symbol with a given type and name, creating it the first
+     * time it is asked for. Every reference to a symbol shares one instance,
+     * so symbols can be compared by identity.
+     *
+     * @param typ Type of symbol
+     * @param name Name of symbol
+     * @return canonical symbol
+     */
+    public Symbol symbol(NodeType typ, String name) {
+        ConcurrentMap<String, Symbol> symbols = symbols(typ);
+        Symbol symbol = symbols.get(name);
+        if (symbol == null) {
+            symbol = new Symbol(typ, name);
+            Symbol existing = symbols.putIfAbsent(name, symbol);
+            if (existing != null) {
+                symbol = existing;
+            }
+        }
+        requested(symbol, false);
+        return symbol;
+    }
+
+    /**
+     * Returns the terminal with a given name, adding it to {@link #terminals}
+     * the first time it is asked for.
+     *
+     * @param name Name of terminal
+     * @return canonical terminal symbol
+     */
+    public Symbol terminal(String name) {
+        ConcurrentMap<String, Symbol> symbols = symbols(NodeType.TERM);
+        Symbol symbol = symbols.get(name);
+        if (symbol == null) {
+            symbol = new Symbol(NodeType.TERM, name);
+            Symbol existing = symbols.putIfAbsent(name, symbol);
+            if (existing != null) {
+                symbol = existing;
+            } else if (chunk.get() == null) {
+                terminals.add(symbol);
+            }
+        }
+        requested(symbol, true);
+        return symbol;
+    }
+
+    /**
+     * Returns the canonical symbol with the same type and name as a given
+     * symbol; the symbol itself if it is the first of its kind.
+     */
+    Symbol intern(Symbol symbol) {
+        Symbol canonical = symbols(symbol.typ).putIfAbsent(symbol.name, symbol);
+        if (canonical == null) {
+            canonical = symbol;
+        }
+        requested(canonical, false);
+        return canonical;
+    }
+
+    /**
+     * Records, if the current thread is running one of several tasks, that
+     * the task has asked for a terminal, so that {@link #terminals} can be
+     * listed in the same order as if the tasks had run one after another.
+     *
+     * @param symbol Canonical symbol
+     * @param listed Whether the symbol would be added to {@link #terminals}
+     *     if it did not exist yet
+     */
+    private void requested(Symbol symbol, boolean listed) {
+        if (symbol.typ == NodeType.TERM) {
+            final Chunk pending = chunk.get();
+            if (pending != null && !pending.terminals.containsKey(symbol)) {
+                pending.terminals.put(symbol, listed);
+            }
+        }
+    }
+
+    private ConcurrentMap<String, Symbol> symbols(NodeType typ) {
+        return symbolTable.get(typ);
+    }
+
+    /**
+     * Returns the id of a canonical symbol, giving it one the first time it
+     * is asked for.
+     */
+    private int id(Symbol symbol) {
+        final int id = symbol.id;
+        return id >= 0 ? id : assignId(symbol);
+    }
+
+    private synchronized int assignId(Symbol symbol) {
+        if (symbol.id < 0) {
+            Symbol[] symbols = symbolsById;
+            if (symbolCount == symbols.length) {
+                symbols = Arrays.copyOf(symbols, symbolCount * 2);
+            }
+            symbols[symbolCount] = symbol;
+            symbol.id = symbolCount++;
+            symbolsById = symbols;
+        }
+        return symbol.id;
+    }
+
+    /**
+     * Returns the canonical symbol with a given id.
+     */
+    Symbol symbolById(int id) {
+        final Symbol[] symbols = symbolsById;
+        if (id < symbols.length && symbols[id] != null) {
+            return symbols[id];
+        }
+        // assigned by another thread since this one last looked
+        synchronized (this) {
+            return symbolsById[id];
+        }
+    }
+
+    private void indexSymbolNode(int node) {
+        final String name = nodes.symbol(node).name;
+        List<Integer> list = symbolNodes.get(name);
+        if (list == null) {
+            list = new ArrayList<Integer>(2);
+            symbolNodes.put(name, list);
+        }
+        list.add(node);
+    }
+
+    /**
+     * Returns the nodes that represent a symbol with a given name, building
+     * the index of them the first time it is needed.
+     */
+    private List<Integer> symbolNodes(String name) {
+        if (symbolNodes == null) {
+            symbolNodes = new HashMap<String, List<Integer>>();
+            for (int node = 0; node < nodes.size(); node++) {
+                if (nodes.symbol(node) != null) {
+                    indexSymbolNode(node);
+                }
+            }
+        }
+        return symbolNodes.get(name);
+    }
+
+    /**
+     * Runs tasks that create nodes, such as building or optimizing the graph
+     * of one rule each, on a pool of threads.
+     *
+     * <p>Each task collects the nodes it creates, and the terminals it asks
+     * for, in its own chunk, and returns the graph it built or rewrote. When
+     * all tasks are done, the chunks are registered in task order, so nodes
+     * get the same numbers, and terminals are listed in the same order, as
+     * if the tasks had run one after another on this thread. The ends of
+     * the graph, and the links to the chunk's nodes from nodes that existed
+     * before, are renumbered too.
+     * Apart from creating nodes and symbols, and linking the nodes of its
+     * own rule, tasks must not touch shared state.
+     *
+     * @param tasks Tasks
+     * @param parallelism Number of threads; if 1, the tasks run on this
+     *     thread
+     */
+    void runTasks(List<? extends Callable<Graph>> tasks, int parallelism) {
+        if (parallelism <= 1 || tasks.size() <= 1) {
+            for (Callable<Graph> task : tasks) {
+                try {
+                    task.call();
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            nodes.trim();
+            return;
+        }
+        // terminals that exist before the tasks start
+        final Set<String> known =
+            new HashSet<String>(symbols(NodeType.TERM).keySet());
+        ExecutorService executor =
+            Executors.newFixedThreadPool(Math.min(parallelism, tasks.size()));
+        try {
+            List<Future<Chunk>> futures = new ArrayList<Future<Chunk>>();
+            for (final Callable<Graph> task : tasks) {
+                futures.add(
+                    executor.submit(
+                        new Callable<Chunk>() {
+                            public Chunk call() throws Exception {
+                                final Chunk pending = new Chunk();
+                                chunk.set(pending);
+                                pending.nodes = nodes.startTask();
+                                try {
+                                    pending.graph = task.call();
+                                } finally {
+                                    nodes.endTask();
+                                    chunk.remove();
+                                }
+                                return pending;
+                            }
+                        }));
+            }
+            // the store cannot grow while tasks are reading it, so no chunk
+            // is registered until every task is done
+            final List<Chunk> chunks = new ArrayList<Chunk>();
+            for (Future<Chunk> future : futures) {
+                chunks.add(future.get());
+            }
+            for (Chunk pending : chunks) {
+                final int first = nodes.size();
+                nodes.register(pending.nodes, pending.graph);
+                if (symbolNodes != null) {
+                    for (int node = first; node < nodes.size(); node++) {
+                        if (nodes.symbol(node) != null) {
+                            indexSymbolNode(node);
+                        }
+                    }
+                }
+                // a terminal is listed if it is first asked for by terminal()
+                for (Map.Entry<Symbol, Boolean> entry
+                    : pending.terminals.entrySet())
+                {
+                    final Symbol terminal = entry.getKey();
+                    if (known.add(terminal.name) && entry.getValue()) {
+                        terminals.add(terminal);
+                    }
+                }
+            }
+            nodes.trim();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while running tasks", e);
+        } finally {
+            executor.shutdownNow();
+        }
     }
 
-    private boolean compare(Node n1, Node n2) {
-        if (n1.typ == n2.typ) {
-            if (n1.typ == NodeType.NONTERM || n1.typ == NodeType.TERM) {
-                if (!n1.sym.name.equals(n2.sym.name)) {
+    private boolean compare(int n1, int n2) {
+        if (nodes.typ(n1) == nodes.typ(n2)) {
+            final NodeType typ = nodes.typ(n1);
+            if (typ == NodeType.NONTERM || typ == NodeType.TERM) {
+                // symbols are interned
+                if (nodes.symbol(n1) != nodes.symbol(n2)) {
                     return false;
                 }
             }
@@ -82,13 +423,15 @@ public class Grammar {
         return false;
     }
 
-    private boolean deepCompare(Node n1, Node n2, boolean untilIter) {
+    private boolean deepCompare(int n1, int n2, boolean untilIter) {
         boolean samelevel = true;
-        Node identifier = n2; // helps to identify the relevant iter node
-        while (n1 != null && samelevel) {
+        int identifier = n2; // helps to identify the relevant iter node
+        while (n1 != NodeStore.NONE && samelevel) {
             // just compare nodes until the iter node
             if (untilIter) {
-                if (n1.typ == NodeType.ITER && n1.sub == identifier) {
+                if (nodes.typ(n1) == NodeType.ITER
+                    && nodes.sub(n1) == identifier)
+                {
                     if (n1 == n2) { // last iter node's next points to the iter
                         if (TRACE) {
                             System.out.println(
@@ -105,7 +448,7 @@ public class Grammar {
                     }
                 }
             }
-            if (n2 == null) {
+            if (n2 == NodeStore.NONE) {
                 if (TRACE) {
                     System.out.println(
                         "false: second enclosing substructure ended before "
@@ -121,19 +464,20 @@ public class Grammar {
             }
             // --> t,nt,eps is ok, go to next
 
-            if (n1.typ == NodeType.OPT
-                || n1.typ == NodeType.ITER
-                || n1.typ == NodeType.RERUN)
+            if (nodes.typ(n1) == NodeType.OPT
+                || nodes.typ(n1) == NodeType.ITER
+                || nodes.typ(n1) == NodeType.RERUN)
             {
-                if (!deepCompare(n1.sub, n2.sub, false)) {
+                if (!deepCompare(nodes.sub(n1), nodes.sub(n2), false)) {
                     if (TRACE) {
                         System.out.println(
                             "false: false in subelem of iter,opt or rerun");
                     }
                     return false;
                 }
-                if (n1.typ == NodeType.RERUN
-                    && !deepCompare(n1.itergraph, n2.itergraph, false))
+                if (nodes.typ(n1) == NodeType.RERUN
+                    && !deepCompare(
+                        nodes.itergraph(n1), nodes.itergraph(n2), false))
                 {
                     if (TRACE) {
                         System.out.println(
@@ -141,11 +485,11 @@ public class Grammar {
                     }
                     return false;
                 }
-            } else if (n1.typ == NodeType.ALT) {
-                Node a1 = n1;
-                Node a2 = n2;
-                while (a1 != null) {
-                    if (a2 == null) {
+            } else if (nodes.typ(n1) == NodeType.ALT) {
+                int a1 = n1;
+                int a2 = n2;
+                while (a1 != NodeStore.NONE) {
+                    if (a2 == NodeStore.NONE) {
                         if (TRACE) {
                             System.out.println(
                                 "false: false in subalt, second node null");
@@ -153,17 +497,17 @@ public class Grammar {
                         return false;
                     }
 
-                    if (!deepCompare(a1.sub, a2.sub, false)) {
+                    if (!deepCompare(nodes.sub(a1), nodes.sub(a2), false)) {
                         if (TRACE) {
                             System.out.println(
                                 "false: false in subelem of subalt");
                         }
                         return false;
                     }
-                    a1 = a1.down;
-                    a2 = a2.down;
+                    a1 = nodes.down(a1);
+                    a2 = nodes.down(a2);
                 }
-                if (a2 != null) {
+                if (a2 != NodeStore.NONE) {
                     if (TRACE) {
                         System.out.println(
                             "false: second alt has more alternatives");
@@ -171,8 +515,8 @@ public class Grammar {
                     return false;
                 }
             }
-            if (n1.up) {
-                if (!n2.up) {
+            if (nodes.isUp(n1)) {
+                if (!nodes.isUp(n2)) {
                     if (TRACE) {
                         System.out.println(
                             "false: second has not finished enclosing "
@@ -182,10 +526,10 @@ public class Grammar {
                 }
                 samelevel = false;
             }
-            n1 = n1.next;
-            n2 = n2.next;
+            n1 = nodes.next(n1);
+            n2 = nodes.next(n2);
         }
-        if (n1 == null && n2 != null) {
+        if (n1 == NodeStore.NONE && n2 != NodeStore.NONE) {
             if (TRACE) {
                 System.out.println(
                     "false: first enclosing substructure ended before second");
@@ -195,500 +539,712 @@ public class Grammar {
         return true;
     }
 
-    /** calls all methods which optimize the graphs */
+    /**
+     * Optimizes the graph of every nonterminal by applying the enabled
+     * {@link Rewrite rewrites}.
+     *
+     * <p>Each graph is traversed once, bottom-up: the substructures of a node
+     * are rewritten before the node itself, and the rewrites are applied to
+     * the node until none of them changes it.
+     */
     public void optimize() {
-        for (Symbol s : nonterminals) {
-            removeWrongLinebreaks(s.graph.l, null, s);
-            if (optimizeGraph) {
-                // remove redundant iter/opts
-                removeRedundancy(s.graph.l, null, s);
-                // remove eps nodes and redundant eps nodes in alternatives
-                removeEps(s.graph.l, null, s);
-
-                optimizeIter(s.graph.l, null, s);
-            }
-        }
+        optimize(1);
     }
 
     /**
-     * Removes all unnecessary and wrong linebreaks (wrap-nodes) from the graph.
+     * Optimizes the graph of every nonterminal, as {@link #optimize()} does,
+     * optimizing several graphs at a time.
+     *
+     * @param parallelism Number of threads
      */
-    private void removeWrongLinebreaks(Node n, Node parent, Symbol s) {
-        boolean samelevel = true;
-        Node i = n;
-        while (i != null && samelevel) {
-            if (i.typ == NodeType.WRAP) {
-                // if in outer structure, just remove multiple wraps
-                if (parent == null) {
-                    while (i.next != null && i.next.typ == NodeType.WRAP) {
-                        i.next = i.next.next;
+    public void optimize(int parallelism) {
+        final List<Callable<Graph>> tasks = new ArrayList<Callable<Graph>>();
+        for (final Symbol s : nonterminals) {
+            tasks.add(
+                new Callable<Graph>() {
+                    public Graph call() {
+                        rewrite(
+                            s.graph.l, NodeStore.NONE, s,
+                            new HashMap<Integer, Integer>());
+                        return s.graph;
                     }
+                });
+        }
+        runTasks(tasks, parallelism);
+    }
 
-                    // if in inner structure remove it
-                } else {
-                    // if \n is first element of substructure
-                    if (n == i) {
-                        // parent==null doesn't occur
-
-                        // if \n is the only subelement
-                        if (i.up || i.next == null) {
-                            Node eps = new Node(this, NodeType.EPS, null);
-                            parent.sub = eps;
-                            eps.up = i.up;
-                            eps.next = i.next;
-                            n = eps;
-                        } else {
-                            parent.sub = i.next;
-                            n = parent.sub;
-                        }
-                    } else { // if within substructure
-                        Node j = n;
-                        while (j.next != i) {
-                            j = j.next;
+    /**
+     * Applies the enabled rewrites to the nodes of one level of a graph,
+     * after applying them to the substructures of each node.
+     *
+     * @param n First node of level
+     * @param parent Node whose substructure the level is, or null for the top
+     *     level of the graph
+     * @param s Symbol whose graph is being rewritten
+     * @param hashes Structural hashes of the nodes of the graph, computed as
+     *     the traversal finishes with each node; see {@link #nodeHash}
+     */
+    private void rewrite(
+        int n,
+        int parent,
+        Symbol s,
+        Map<Integer, Integer> hashes)
+    {
+        if (n == NodeStore.NONE) {
+            return;
+        }
+        final LevelCursor cursor = new LevelCursor(nodes, n, parent, s);
+        // the nodes of this level before the cursor; only needed to find
+        // reruns
+        final boolean reruns = rewrites.contains(Rewrite.RERUN);
+        final List<Integer> level = new ArrayList<Integer>();
+        do {
+            final int i = cursor.node();
+            if (nodes.typ(i) == NodeType.OPT
+                || nodes.typ(i) == NodeType.ITER
+                || nodes.typ(i) == NodeType.RERUN)
+            {
+                rewrite(nodes.sub(i), i, s, hashes);
+            } else if (nodes.typ(i) == NodeType.ALT) {
+                int a = i;
+                while (a != NodeStore.NONE) {
+                    rewrite(nodes.sub(a), a, s, hashes);
+                    a = nodes.down(a);
+                }
+            }
+            boolean changed;
+            do {
+                changed = false;
+                for (Rewrite rewrite : rewrites) {
+                    final int node = cursor.node();
+                    if (apply(rewrite, cursor, parent, s, level, hashes)) {
+                        changed = true;
+                        // the hash of a changed node is out of date
+                        hashes.remove(node);
+                        if (cursor.isRemoved()) {
+                            break;
                         }
-                        j.next = i.next;
-                        j.up = i.up;
                     }
                 }
-            } else if (i.typ == NodeType.OPT
-                || i.typ == NodeType.ITER
-                || i.typ == NodeType.RERUN)
-            {
-                removeWrongLinebreaks(i.sub, i, s);
-            } else if (i.typ == NodeType.ALT) {
-                Node a = i;
-                while (a != null) {
-                    removeWrongLinebreaks(a.sub, a, s);
-                    a = a.down;
+            } while (changed && !cursor.isRemoved());
+            if (!cursor.isRemoved()) {
+                // its substructures are final, so this computes the node's
+                // hash from theirs, and keeps it for the enclosing levels
+                nodeHash(cursor.node(), hashes);
+                if (reruns) {
+                    level.add(cursor.node());
                 }
             }
+        } while (cursor.next());
+    }
 
-            if (i.up) {
-                samelevel = false;
+    /**
+     * Applies a rewrite to the node at a cursor.
+     *
+     * @param rewrite Rewrite
+     * @param cursor Cursor positioned on the node
+     * @param parent Node whose substructure the level is, or null
+     * @param s Symbol whose graph is being rewritten
+     * @param level Nodes of the level before the cursor
+     * @param hashes Structural hashes of nodes
+     * @return whether the rewrite changed the graph
+     */
+    private boolean apply(
+        Rewrite rewrite,
+        LevelCursor cursor,
+        int parent,
+        Symbol s,
+        List<Integer> level,
+        Map<Integer, Integer> hashes)
+    {
+        switch (rewrite) {
+        case LINEBREAKS:
+            return removeWrongLinebreak(cursor, parent);
+        case REDUNDANCY:
+            return removeRedundancy(cursor);
+        case EPSILON:
+            return removeEps(cursor, parent, s, hashes);
+        case RERUN:
+            return optimizeIter(cursor, level, hashes);
+        default:
+            throw new AssertionError(rewrite);
+        }
+    }
+
+    /**
+     * Removes a wrap node from a substructure, or the wrap nodes that follow
+     * a wrap node in the outer structure.
+     */
+    private boolean removeWrongLinebreak(LevelCursor cursor, int parent) {
+        final int i = cursor.node();
+        if (nodes.typ(i) != NodeType.WRAP) {
+            return false;
+        }
+        // if in outer structure, just remove multiple wraps
+        if (parent == NodeStore.NONE) {
+            boolean changed = false;
+            for (int next = nodes.next(i);
+                 next != NodeStore.NONE && nodes.typ(next) == NodeType.WRAP;
+                 next = nodes.next(i))
+            {
+                nodes.setNext(i, nodes.next(next));
+                changed = true;
             }
-            i = i.next;
+            return changed;
+        }
+        // if in inner structure remove it; if \n is the only subelement,
+        // replace it with eps
+        if (cursor.isFirst()
+            && (nodes.isUp(i) || nodes.next(i) == NodeStore.NONE))
+        {
+            int eps = nodes.add(NodeType.EPS, NodeStore.NONE, false);
+            nodes.setUp(eps, nodes.isUp(i));
+            nodes.setNext(eps, nodes.next(i));
+            cursor.replace(eps);
+        } else {
+            cursor.remove();
         }
+        return true;
     }
 
-    private void removeRedundancy(Node n, Node parent, Symbol s) {
-        boolean samelevel = true; // next node in same level?
-        Node begin = n;
-        while (n != null && samelevel) {
-            if (n.typ == NodeType.ALT) {
-                Node a = n;
-                while (a != null) {
-                    removeRedundancy(a.sub, a, s);
-                    a = a.down;
-                }
-            } else if (n.typ == NodeType.ITER) {
-                while ((n.sub.typ == NodeType.ITER
-                        || n.sub.typ == NodeType.OPT)
-                    && n.sub.up)
-                {
-                    // EbnfForm.WriteLine(
-                    //     "Rendundant " + Node.nTyp[n.sub.typ]
-                    //     + " Node removed (iter).");
-                    n.sub = n.sub.sub;
-                    Node i = n.sub;
-                    while (!i.up) {
-                        i = i.next;
-                    }
-                    i.next = n;
+    /**
+     * Removes iter and opt nodes that are the only content of an iter or opt
+     * node.
+     */
+    private boolean removeRedundancy(LevelCursor cursor) {
+        final int n = cursor.node();
+        boolean changed = false;
+        if (nodes.typ(n) == NodeType.ITER) {
+            for (int sub = nodes.sub(n);
+                 (nodes.typ(sub) == NodeType.ITER
+                  || nodes.typ(sub) == NodeType.OPT)
+                 && nodes.isUp(sub);
+                 sub = nodes.sub(n))
+            {
+                // EbnfForm.WriteLine(
+                //     "Rendundant " + Node.nTyp[sub.typ]
+                //     + " Node removed (iter).");
+                nodes.setSub(n, nodes.sub(sub));
+                // the last node of an opt's content may not be linked yet
+                int i = nodes.sub(n);
+                while (!nodes.isUp(i) && nodes.next(i) != NodeStore.NONE) {
+                    i = nodes.next(i);
                 }
-                removeRedundancy(n.sub, n, s);
-            } else if (n.typ == NodeType.OPT) {
-                boolean containsIter = false;
-                while ((n.sub.typ == NodeType.OPT
-                        && (n.sub.up
-                            || n.sub.next == null))
-                       || (n.sub.typ == NodeType.ITER
-                           && (n.sub.up
-                               || n.sub.next == null)))
-                {
-                    // if (n.sub.typ == Node.opt || containsIter) {
-                    //     EbnfForm.WriteLine(
-                    //         "Rendundant " + Node.nTyp[n.sub.typ]
-                    //         + " Node removed (opt).");
-                    // }
-                    if (n.sub.typ == NodeType.ITER) {
-                        containsIter = true;
-                    }
-                    n.sub = n.sub.sub;
+                nodes.setNext(i, n);
+                nodes.setUp(i, true);
+                changed = true;
+            }
+        } else if (nodes.typ(n) == NodeType.OPT) {
+            boolean containsIter = false;
+            for (int sub = nodes.sub(n);
+                 (nodes.typ(sub) == NodeType.OPT
+                  || nodes.typ(sub) == NodeType.ITER)
+                 && (nodes.isUp(sub) || nodes.next(sub) == NodeStore.NONE);
+                 sub = nodes.sub(n))
+            {
+                // if (sub.typ == Node.opt || containsIter) {
+                //     EbnfForm.WriteLine(
+                //         "Rendundant " + Node.nTyp[sub.typ]
+                //         + " Node removed (opt).");
+                // }
+                if (nodes.typ(sub) == NodeType.ITER) {
+                    containsIter = true;
                 }
-                if (containsIter) {
-                    Node iter = new Node(this, NodeType.ITER, n.sub);
-                    iter.next = n.next;
-                    if (n == begin) {
-                        if (parent == null) {
-                            s.graph.l = iter;
-                        } else {
-                            parent.sub = iter;
-                        }
-                    } else {
-                        Node j = begin;
-                        while (j.next != n) {
-                            j = j.next;
-                        }
-                        j.next = iter;
-                    }
-                    n = iter;
+                nodes.setSub(n, nodes.sub(sub));
+                changed = true;
+            }
+            if (containsIter) {
+                int iter = nodes.add(NodeType.ITER, nodes.sub(n), false);
+                nodes.setNext(iter, nodes.next(n));
+                // the enclosing level is rewritten after this one, and must
+                // still end where the opt ended
+                nodes.setUp(iter, nodes.isUp(n));
+                cursor.replace(iter);
 
-                    // set correct next pointer of last subelement of new iter
-                    Node i = iter.sub;
-                    while (i.next != null && !i.up) {
-                        i = i.next;
-                    }
-                    i.next = iter;
+                // set correct next pointer of last subelement of new iter
+                int i = nodes.sub(iter);
+                while (nodes.next(i) != NodeStore.NONE && !nodes.isUp(i)) {
+                    i = nodes.next(i);
                 }
-                removeRedundancy(n.sub, n, s);
+                nodes.setNext(i, iter);
             }
-            if (n.up) {
-                samelevel = false;
-            }
-            n = n.next;
         }
+        return changed;
     }
 
     /**
-     * Removes all empty ('epsilon') iter/opt nodes in alternatives, as well as
-     * multiple epsilon nodes at the beginning.
+     * Removes an epsilon node or an empty iter/opt node from a sequence, and
+     * removes multiple epsilon alternatives, duplicate alternatives, and an
+     * epsilon alternative that is not the first alternative.
      */
-    private void removeEps(Node n, Node parent, Symbol s) {
-        boolean samelevel = true; // next node in same level?
-        Node begin = n;
-        while (n != null && samelevel) {
-            if (n.typ == NodeType.EPS) {
-                if (n == begin) {
-                    if (parent == null) {
-                        // if the graph only consists of an eps, let it live
-                        if (n.next != null) {
-                            s.graph.l = n.next;
-                            begin = n.next;
-                        }
-                    } // else: at beginning of substructure not required
-                        // (iter/opt/alt subnodes were already handled)
-                } else {
-                    Node i = begin;
-                    while (i.next != n) {
-                        i = i.next;
-                    }
-                    i.next = n.next;
-                    i.up = n.up;
-                }
-            } else if (n.typ == NodeType.ITER || n.typ == NodeType.OPT) {
-                if (n.sub.typ == NodeType.EPS
-                    && (n.sub.next == null || n.sub.up))
+    private boolean removeEps(
+        LevelCursor cursor,
+        int parent,
+        Symbol s,
+        Map<Integer, Integer> hashes)
+    {
+        final int n = cursor.node();
+        if (nodes.typ(n) == NodeType.EPS) {
+            if (cursor.isFirst()) {
+                // at beginning of substructure not required (iter/opt/alt
+                // subnodes were already handled); if the graph only consists
+                // of an eps, let it live
+                if (parent == NodeStore.NONE
+                    && nodes.next(n) != NodeStore.NONE)
                 {
-                    if (n == begin) {
-                        if (parent == null) { // beginning of graph
-                            // if graph only consists of this iter/opt, then
-                            // replace it with an eps node
-                            if (n.next == null) {
-                                Node eps = new Node(this, NodeType.EPS, null);
-                                s.graph.l = eps;
-                                s.graph.r = eps;
-                            } else { // remove that node
-                                s.graph.l = n.next;
-                                begin = n.next;
-                            }
-                        } // else: at beginning of substructure not required
-                            // (iter/opt/alt subnodes were already handled)
-                    } else { // within substructure
-                        Node i = begin;
-                        while (i.next != n) {
-                            i = i.next;
-                        }
-                        if (n.up) {
-                            i.up = true;
-                        }
-                        i.next = n.next;
-                    }
-                } else {
-                    removeEps(n.sub, n, s);
-                }
-            } else if (n.typ == NodeType.ALT) {
-                Node a = n;
-                // count number of eps
-                int numOfEps = 0;
-                while (a != null) {
-                    // checkSubAlts(a);
-                    if (a.sub.typ == NodeType.EPS
-                        && (a.sub.next == null || a.sub.up))
-                    {
-                        numOfEps++;
-                    }
-                    a = a.down;
+                    cursor.remove();
+                    return true;
                 }
-                a = n;
-                while (numOfEps > 1) {
-                    if (n != a && a.sub.typ == NodeType.EPS
-                        && (a.sub.next == null || a.sub.up))
-                    {
-                        Node i = n;
-                        while (i.down != a) {
-                            i = i.down;
+                return false;
+            } else {
+                cursor.remove();
+                return true;
+            }
+        } else if (nodes.typ(n) == NodeType.ITER
+            || nodes.typ(n) == NodeType.OPT)
+        {
+            if (isLoneEps(nodes.sub(n))) {
+                if (cursor.isFirst()) {
+                    if (parent == NodeStore.NONE) { // beginning of graph
+                        // if graph only consists of this iter/opt, then
+                        // replace it with an eps node
+                        if (nodes.next(n) == NodeStore.NONE) {
+                            int eps =
+                                nodes.add(NodeType.EPS, NodeStore.NONE, false);
+                            cursor.replace(eps);
+                            s.graph.r = eps;
+                        } else { // remove that node
+                            cursor.remove();
                         }
-                        i.down = a.down;
-                        numOfEps--;
-                    }
-                    a = a.down;
+                        return true;
+                    } // else: at beginning of substructure not required
+                        // (iter/opt/alt subnodes were already handled)
+                    return false;
+                } else { // within substructure
+                    cursor.remove();
+                    return true;
                 }
-                removeSameAlts(n);
-                putEpsAtBeginningOfAlt(begin, n, parent, s);
-                // optimize subcomponents
-                a = n;
-                while (a != null) {
-                    // if not the left eps node
-                    if (!(a.sub.typ == NodeType.EPS
-                          && (a.sub.next == null || a.sub.up)))
-                    {
-                        removeEps(a.sub, a, s);
-                    }
-                    a = a.down;
+            }
+            return false;
+        } else if (nodes.typ(n) == NodeType.ALT) {
+            int a = n;
+            // count number of eps
+            int numOfEps = 0;
+            while (a != NodeStore.NONE) {
+                // checkSubAlts(a);
+                if (isLoneEps(nodes.sub(a))) {
+                    numOfEps++;
                 }
+                a = nodes.down(a);
             }
-            if (n.up) {
-                samelevel = false;
+            boolean changed = numOfEps > 1;
+            int prevAlt = n;
+            a = nodes.down(n);
+            while (numOfEps > 1) {
+                if (isLoneEps(nodes.sub(a))) {
+                    nodes.setDown(prevAlt, nodes.down(a));
+                    numOfEps--;
+                } else {
+                    prevAlt = a;
+                }
+                a = nodes.down(a);
             }
-            n = n.next;
+            changed |= removeSameAlts(n, hashes);
+            changed |= putEpsAtBeginningOfAlt(cursor);
+            return changed;
         }
+        return false;
+    }
+
+    /**
+     * Returns whether a node is an eps node that ends its level, that is, the
+     * only content of a substructure.
+     */
+    private boolean isLoneEps(int n) {
+        return nodes.typ(n) == NodeType.EPS
+            && (nodes.next(n) == NodeStore.NONE || nodes.isUp(n));
     }
 
     // they would bug a condition in removeEps
-    public void checkSubAlts(Node alt) {
+    public void checkSubAlts(int alt) {
         // remove all empty iter/opts
         // make sure, that at least one eps Node will exist
-        Node eps = new Node(this, NodeType.EPS, null);
-        eps.next = alt.sub;
-        alt.sub = eps;
-        Node i = alt.sub;
+        int eps = nodes.add(NodeType.EPS, NodeStore.NONE, false);
+        nodes.setNext(eps, nodes.sub(alt));
+        nodes.setSub(alt, eps);
+        int prev = NodeStore.NONE;
+        int i = nodes.sub(alt);
         boolean samelevel = true;
-        while (i != null && samelevel) {
+        while (i != NodeStore.NONE && samelevel) {
             // if empty iter/opt
-            if ((i.typ == NodeType.ITER || i.typ == NodeType.OPT)
-                && i.sub.typ == NodeType.EPS
-                && (i.sub.next == null || i.sub.up))
+            if ((nodes.typ(i) == NodeType.ITER || nodes.typ(i) == NodeType.OPT)
+                && isLoneEps(nodes.sub(i)))
             {
-                // case i==alt.sub not possible
-                Node a = alt.sub;
-                while (a.next != i) {
-                    a = a.next;
-                }
-                a.next = i.next;
+                // case i==nodes.sub(alt) not possible
+                nodes.setNext(prev, nodes.next(i));
+            } else {
+                prev = i;
             }
-            if (i.up) {
+            if (nodes.isUp(i)) {
                 samelevel = false;
             }
-            i = i.next;
+            i = nodes.next(i);
         }
 
-        i = alt.sub;
+        i = nodes.sub(alt);
         // remove multiple eps nodes at the beginning
-        if (i.typ == NodeType.EPS) {
-            while (i.next != null && !i.next.up && i.next.typ == NodeType.EPS) {
-                i.next = i.next.next;
+        if (nodes.typ(i) == NodeType.EPS) {
+            for (int next = nodes.next(i);
+                 next != NodeStore.NONE && !nodes.isUp(next)
+                 && nodes.typ(next) == NodeType.EPS;
+                 next = nodes.next(i))
+            {
+                nodes.setNext(i, nodes.next(next));
             }
         }
     }
 
-    private void removeSameAlts(Node alt) {
-        Node a = alt;
-        while (a != null) {
-            Node i = a.down;
-            while (i != null) {
-                if (deepCompare(a.sub, i.sub, false)) {
-                    Node n = a;
-                    while (n.down != i) {
-                        n = n.down;
+    /**
+     * Removes the alternatives that are the same as an earlier alternative.
+     *
+     * <p>Alternatives are bucketed by their {@link #structuralHash structural
+     * hash}, so {@link #deepCompare} only runs on alternatives whose hashes
+     * collide, rather than on every pair.
+     *
+     * <p>The levels inside the alternatives have already been rewritten, so
+     * an alternative that becomes the same as an earlier one only once its
+     * own duplicates are removed, as <code>( b | b | c )</code> after
+     * <code>( b | c )</code>, is removed too. The separate passes that the
+     * rewrites replaced compared alternatives before rewriting inside them,
+     * and kept both.
+     *
+     * @param alt First alternative
+     * @param hashes Structural hashes of nodes
+     * @return whether any alternative was removed
+     */
+    private boolean removeSameAlts(int alt, Map<Integer, Integer> hashes) {
+        boolean changed = false;
+        final Map<Integer, List<Integer>> kept =
+            new HashMap<Integer, List<Integer>>();
+        int prev = NodeStore.NONE;
+        int i = alt;
+        while (i != NodeStore.NONE) {
+            final Integer hash = structuralHash(nodes.sub(i), hashes);
+            List<Integer> bucket = kept.get(hash);
+            boolean same = false;
+            if (bucket != null) {
+                for (int a : bucket) {
+                    if (deepCompare(nodes.sub(a), nodes.sub(i), false)) {
+                        same = true;
+                        break;
                     }
-                    n.down = i.down;
                 }
-                i = i.down;
             }
-            a = a.down;
+            if (same) {
+                // the first alternative is always kept, so prev is not null
+                nodes.setDown(prev, nodes.down(i));
+                changed = true;
+            } else {
+                if (bucket == null) {
+                    bucket = new ArrayList<Integer>(1);
+                    kept.put(hash, bucket);
+                }
+                bucket.add(i);
+                prev = i;
+            }
+            i = nodes.down(i);
+        }
+        return changed;
+    }
+
+    /**
+     * Computes a hash of the structure of a sequence of nodes, down to the end
+     * of its level, that is consistent with {@link #deepCompare}: sequences
+     * that compare equal have the same hash. Substructures are hashed first.
+     *
+     * @param n First node of sequence, or null
+     * @param hashes Hashes of nodes computed so far
+     * @return hash of the sequence
+     */
+    int structuralHash(int n, Map<Integer, Integer> hashes) {
+        int h = 1;
+        while (n != NodeStore.NONE) {
+            h = 31 * h + nodeHash(n, hashes);
+            if (nodes.isUp(n)) {
+                break;
+            }
+            n = nodes.next(n);
+        }
+        return h;
+    }
+
+    /**
+     * Computes a hash of a node and its substructures, but not of the nodes
+     * that follow it, consistent with the way {@link #deepCompare} compares
+     * one node of a sequence.
+     *
+     * <p>The hash of each node is computed once, and kept in a map, so the
+     * hash of a node costs as much as its own alternatives and substructure
+     * levels, not as much as everything below it. The optimizer removes the
+     * hash of a node when a rewrite changes the node.
+     *
+     * @param n Node
+     * @param hashes Hashes of nodes computed so far; the hash of the node is
+     *     added if it is not there
+     * @return hash of the node
+     */
+    int nodeHash(int n, Map<Integer, Integer> hashes) {
+        final Integer cached = hashes.get(n);
+        if (cached != null) {
+            return cached;
+        }
+        int h = nodes.typ(n).ordinal();
+        switch (nodes.typ(n)) {
+        case TERM:
+        case NONTERM:
+            h = 31 * h + nodes.symbol(n).name.hashCode();
+            break;
+        case OPT:
+        case ITER:
+            h = 31 * h + structuralHash(nodes.sub(n), hashes);
+            break;
+        case RERUN:
+            h = 31 * h + structuralHash(nodes.sub(n), hashes);
+            h = 31 * h + structuralHash(nodes.itergraph(n), hashes);
+            break;
+        case ALT:
+            for (int a = n; a != NodeStore.NONE; a = nodes.down(a)) {
+                h = 31 * h + structuralHash(nodes.sub(a), hashes);
+            }
+            break;
         }
+        hashes.put(n, h);
+        return h;
     }
 
-    private void putEpsAtBeginningOfAlt(Node n, Node alt, Node parent, Symbol s) {
-        Node a = alt;
+    /**
+     * Makes sure that if an alternative node has an epsilon alternative, it
+     * is the first alternative.
+     *
+     * @param cursor Cursor positioned on the alternative node
+     * @return whether the alternatives were changed
+     */
+    private boolean putEpsAtBeginningOfAlt(LevelCursor cursor) {
+        final int alt = cursor.node();
+        int a = alt;
         boolean containsEps = false;
 
         // determine if eps is contained
-        while (a != null) {
+        while (a != NodeStore.NONE) {
             // if eps node
-            if (a.sub.typ == NodeType.EPS
-                && (a.sub.next == null || a.sub.up))
-            {
+            if (isLoneEps(nodes.sub(a))) {
                 containsEps = true;
             }
-            a = a.down;
+            a = nodes.down(a);
         }
         if (containsEps) {
             // remove eps node
+            int prevAlt = NodeStore.NONE;
             a = alt;
-            while (a != null) {
+            while (a != NodeStore.NONE) {
                 // if eps node
-                if (a.sub.typ == NodeType.EPS
-                    && (a.sub.next == null || a.sub.up))
-                {
+                if (isLoneEps(nodes.sub(a))) {
                     // remove eps only if within alternatives
                     if (a != alt) {
-                        Node i = alt;
-                        while (i.down != a) {
-                            i = i.down;
-                        }
-                        i.down = a.down;
+                        nodes.setDown(prevAlt, nodes.down(a));
                     }
                     // there can be only one eps in the alts because same
                     // nodes have already been removed
                     break;
                 }
-                a = a.down;
+                prevAlt = a;
+                a = nodes.down(a);
             }
             // insert eps, if first alt isn't eps
 
-            if (!(alt.sub.typ == NodeType.EPS
-                  && (alt.sub.next == null || alt.sub.up)))
-            {
-                Node eps = new Node(this, NodeType.EPS, null, n != alt);
-                eps.next = alt.next;
-                eps.up = true;
-                AltNode a1 = new AltNode(this, eps);
-                a1.down = alt;
-                if (alt == n) {
-                    if (parent == null) {
-                        s.graph.l = a1;
-                    } else {
-                        parent.sub = a1;
-                    }
-                } else {
-                    Node i = n;
-                    while (i.next != alt) {
-                        i = i.next;
-                    }
-                    i.next = a1;
-                }
-                a1.next = alt.next;
-                a1.up = alt.up;
-                alt.next = null;
+            if (!isLoneEps(nodes.sub(alt))) {
+                int eps =
+                    nodes.add(NodeType.EPS, NodeStore.NONE, !cursor.isFirst());
+                nodes.setNext(eps, nodes.next(alt));
+                nodes.setUp(eps, true);
+                int a1 = nodes.add(NodeType.ALT, eps, false);
+                nodes.setDown(a1, alt);
+                cursor.replace(a1);
+                nodes.setNext(a1, nodes.next(alt));
+                nodes.setUp(a1, nodes.isUp(alt));
+                nodes.setNext(alt, NodeStore.NONE);
+                return true;
             }
         }
+        return false;
     }
 
-    // optimizes enclosing structures and recursively its substructures
-    private void optimizeIter(Node n, Node parent, Symbol s) {
-        boolean samelevel = true; // next node in same level?
-        Node i = n;
+    /**
+     * Replaces an iter node, and the nodes before it that match the end of
+     * its body, by a rerun node.
+     *
+     * @param cursor Cursor positioned on the node
+     * @param level Nodes of the level before the cursor
+     * @param hashes Structural hashes of nodes
+     * @return whether the node was replaced
+     */
+    private boolean optimizeIter(
+        LevelCursor cursor,
+        List<Integer> level,
+        Map<Integer, Integer> hashes)
+    {
+        final int i = cursor.node();
+        if (nodes.typ(i) != NodeType.ITER) {
+            return false;
+        }
+        // find the first node j, and node k in the iter, such that
+        // the nodes from j until the iter node match those from k
+        final List<Integer> body = new ArrayList<Integer>();
+        final int[] match = findRerun(level, hashes, i, body);
+        if (match == null) {
+            return false;
+        }
+        final int p = match[0];
+        final int q = match[1];
+        final int k = body.get(q);
+        // EbnfForm.WriteLine("Iter node optimized.");
+        // replace the iter node and the nodes
+        // before by the rerun node
+        int re = nodes.add(NodeType.RERUN, k, false);
+        cursor.replace(p == 0 ? NodeStore.NONE : level.get(p - 1), re);
+        level.subList(p, level.size()).clear();
 
-        while (i != null && samelevel) {
-            if (i.typ == NodeType.OPT) {
-                optimizeIter(i.sub, i, s);
-            } else if (i.typ == NodeType.ALT) {
-                Node a = i;
-                while (a != null) {
-                    optimizeIter(a.sub, a, s);
-                    a = a.down;
-                }
-            } else if (i.typ == NodeType.ITER) {
-                // first optimize the iter substructure
-                optimizeIter(i.sub, i, s);
-
-                // while loop to deepCompare from every node until the iter node
-                Node j = n;
-                boolean matchFound = false;
-                while (j != i && !matchFound) {
-                    Node k = i.sub;
-                    boolean samelevel2 = true;
-                    while (k != null && samelevel2 && !matchFound) {
-                        if (deepCompare(j, k, true)) {
-                            // EbnfForm.WriteLine("Iter node optimized.");
-                            matchFound = true;
-                            // replace the iter node and the nodes
-                            // before by the rerun node
-                            Node re = new Node(this, NodeType.RERUN, k);
-                            if (j == n) {
-                                if (parent == null) {
-                                    s.graph.l = re;
-                                    n = re;
-                                } else {
-                                    parent.sub = re;
-                                    n = re;
-                                }
-                            } else {
-                                Node l = n;
-                                while (l.next != j) {
-                                    l = l.next;
-                                }
-                                l.next = re;
-                            }
+        // if a {b a} isolate b
+        if (q > 0) {
+            nodes.setItergraph(re, nodes.sub(i));
+            nodes.setNext(body.get(q - 1), NodeStore.NONE);
+        }
 
-                            // if a {b a} isolate b
-                            if (k != i.sub) {
-                                re.itergraph = i.sub;
-                                Node temp = re.itergraph;
-                                while (temp.next != k) {
-                                    temp = temp.next;
-                                }
-                                temp.next = null;
-                            }
+        nodes.setNext(re, nodes.next(i));
+        nodes.setUp(re, nodes.isUp(i));
+        return true;
+    }
 
-                            re.next = i.next;
-                            re.up = i.up;
-                            i = re;
-                        }
-                        if (k.up) {
-                            samelevel2 = false;
-                        }
-                        k = k.next;
-                    }
+    /**
+     * Finds where an iter node can be turned into a rerun node: the first
+     * node j before the iter, and for it the first node k in the iter, such
+     * that <code>deepCompare(j, k, true)</code> holds. Returns the same pair
+     * as trying every j against every k would.
+     *
+     * <p>Such a match nearly always means that the nodes from j up to the
+     * iter are equal to the nodes from k to the end of the iter: a common
+     * suffix of the two sequences, which is found by comparing node hashes
+     * from the end. The exception needs a node before the iter that is equal
+     * to the iter itself; then every pair is tried.
+     *
+     * @param level Nodes before the iter node, in order
+     * @param hashes Structural hashes of nodes
+     * @param iter Iter node
+     * @param body List to which the nodes of the iter's body are added
+     * @return Positions of j in the level and of k in the body, or null if
+     *     there is no match
+     */
+    private int[] findRerun(
+        List<Integer> level,
+        Map<Integer, Integer> hashes,
+        int iter,
+        List<Integer> body)
+    {
+        final List<Integer> bodyHashes = new ArrayList<Integer>();
+        int h = 1;
+        for (int k = nodes.sub(iter); k != NodeStore.NONE; k = nodes.next(k)) {
+            body.add(k);
+            final int hash = nodeHash(k, hashes);
+            bodyHashes.add(hash);
+            h = 31 * h + hash;
+            if (nodes.isUp(k)) {
+                break;
+            }
+        }
+        final int iterHash = 31 * NodeType.ITER.ordinal() + h;
+        final int[] levelHashes = new int[level.size()];
+        for (int p = 0; p < level.size(); p++) {
+            levelHashes[p] = nodeHash(level.get(p), hashes);
+            if (levelHashes[p] == iterHash
+                && nodes.typ(level.get(p)) == NodeType.ITER)
+            {
+                return findRerunExhaustive(level, body);
+            }
+        }
 
-                    j = j.next;
+        // the longest common suffix of the level and the iter body
+        final int d = level.size();
+        final int m = body.size();
+        int length = 0;
+        while (length < d
+            && length < m
+            && levelHashes[d - 1 - length]
+               == bodyHashes.get(m - 1 - length).intValue())
+        {
+            ++length;
+        }
+        if (length == 0) {
+            return null;
+        }
+        if (deepCompare(level.get(d - length), body.get(m - length), true)) {
+            return new int[] {d - length, m - length};
+        }
+        // hashes collided; compare every pair
+        return findRerunExhaustive(level, body);
+    }
+
+    /**
+     * Finds where an iter node can be turned into a rerun node by comparing
+     * every node before the iter with every node in it.
+     */
+    private int[] findRerunExhaustive(List<Integer> level, List<Integer> body) {
+        for (int p = 0; p < level.size(); p++) {
+            for (int q = 0; q < body.size(); q++) {
+                if (deepCompare(level.get(p), body.get(q), true)) {
+                    return new int[] {p, q};
                 }
             }
-            if (i.up) {
-                samelevel = false;
-            }
-            i = i.next;
         }
+        return null;
     }
 
     public void makeEpsilon(Graph g) {
-        g.l = new Node(this, NodeType.EPS, null);
+        g.l = nodes.add(NodeType.EPS, NodeStore.NONE, false);
         g.r = g.l;
     }
 
     public void makeFirstAlt(Graph g) {
-        g.l = new AltNode(this, g.l);
+        g.l = nodes.add(NodeType.ALT, g.l, false);
         // g.l.next = g.r;
         g.r = g.l;
     }
 
     public void makeAlternative(Graph g1, Graph g2) {
-        g2.l = new AltNode(this, g2.l);
-        Node p = g1.l;
-        while (p.down != null) {
-            p = p.down;
+        g2.l = nodes.add(NodeType.ALT, g2.l, false);
+        int p = g1.l;
+        while (nodes.down(p) != NodeStore.NONE) {
+            p = nodes.down(p);
         }
-        p.down = g2.l;
+        nodes.setDown(p, g2.l);
         p = g1.r;
-        while (p.next != null) {
-            p = p.next;
+        while (nodes.next(p) != NodeStore.NONE) {
+            p = nodes.next(p);
         }
-        // p.next = g2.r;
+        // nodes.setNext(p, g2.r);
     }
 
     public void makeSequence(Graph g1, Graph g2) {
-        if (g1.l == null && g1.r == null) {
+        if (g1.l == NodeStore.NONE && g1.r == NodeStore.NONE) {
             // case: g1 is empty
             g1.l = g2.l;
             g1.r = g2.r;
         } else {
-            Node p = g1.r.next;
-            g1.r.next = g2.l; // link head node
-            while (p != null) { // link substructure
-                Node q = p.next;
-                p.next = g2.l;
-                p.up = true;
+            int p = nodes.next(g1.r);
+            nodes.setNext(g1.r, g2.l); // link head node
+            while (p != NodeStore.NONE) { // link substructure
+                int q = nodes.next(p);
+                nodes.setNext(p, g2.l);
+                nodes.setUp(p, true);
                 p = q;
             }
             g1.r = g2.r;
@@ -696,13 +1252,13 @@ public class Grammar {
     }
 
     public void makeIteration(Graph g) {
-        g.l = new Node(this, NodeType.ITER, g.l);
-        Node p = g.r;
+        g.l = nodes.add(NodeType.ITER, g.l, false);
+        int p = g.r;
         g.r = g.l;
-        while (p != null) {
-            Node q = p.next;
-            p.next = g.l;
-            p.up = true;
+        while (p != NodeStore.NONE) {
+            int q = nodes.next(p);
+            nodes.setNext(p, g.l);
+            nodes.setUp(p, true);
             p = q;
         }
     }
@@ -713,7 +1269,7 @@ public class Grammar {
     }
 
     public void makeOption(Graph g) {
-        g.l = new Node(this, NodeType.OPT, g.l);
+        g.l = nodes.add(NodeType.OPT, g.l, false);
         // g.l.next = g.r;
         g.r = g.l;
     }
@@ -723,15 +1279,12 @@ public class Grammar {
      *
      * @param name
      *            Name of symbol
-     * @return terminal or non-terminal
+     * @return first node that represents the terminal or non-terminal, or
+     *     {@link NodeStore#NONE}
      */
-    public Node find(String name) {
-        for (Node n : nodes) {
-            if (n.sym != null && n.sym.name.equals(name)) {
-                return n;
-            }
-        }
-        return null;
+    public int find(String name) {
+        List<Integer> list = symbolNodes(name);
+        return list == null ? NodeStore.NONE : list.get(0);
     }
 
     /**
@@ -741,17 +1294,17 @@ public class Grammar {
      *            Name of non-terminal.
      */
     public void terminalToNt(String name) {
-        for (Node n : nodes) {
-            if (n.sym != null && n.sym.name.equals(name)) {
-                n.typ = NodeType.NONTERM;
+        List<Integer> list = symbolNodes(name);
+        if (list != null) {
+            Symbol nonterminal = symbol(NodeType.NONTERM, name);
+            for (int n : list) {
+                // keep the nodes of one name and type on one symbol
+                nodes.setSymbol(n, NodeType.NONTERM, id(nonterminal));
             }
         }
-        for (Symbol s : terminals) {
-            if (s.name.equals(name)) {
-                nonterminals.add(s);
-                terminals.remove(s);
-                break;
-            }
+        Symbol s = symbols(NodeType.TERM).get(name);
+        if (s != null && terminals.remove(s)) {
+            nonterminals.add(s);
         }
     }
 
@@ -762,10 +1315,10 @@ public class Grammar {
         out.println("S   n type name          next  down   sub   ");
         out.println("--------------------------------------------");
 
-        for (Node p : nodes) {
+        for (int p = 0; p < nodes.size(); p++) {
             boolean nt = false;
             for (Symbol s : nonterminals) {
-                if (s.graph.l.n == p.n) {
+                if (s.graph.l == p) {
                     out.print("*");
                     nt = true;
                 }
@@ -774,25 +1327,25 @@ public class Grammar {
                 out.print(" ");
             }
 
-            out.format("%1$-4s %2$-4s ", p.n, p.typ.name());
+            out.format("%1$-4s %2$-4s ", p, nodes.typ(p).name());
 
-            if (p.sym != null) {
-                out.format("%1$-12s ", p.sym.name);
+            if (nodes.symbol(p) != null) {
+                out.format("%1$-12s ", nodes.symbol(p).name);
             } else {
                 out.print("             ");
             }
 
-            out.format("%1$5s ", Grammar.ptr(p.next, p.up));
+            out.format("%1$5s ", Grammar.ptr(nodes.next(p), nodes.isUp(p)));
 
-            switch (p.typ) {
+            switch (nodes.typ(p)) {
             case ALT:
             case ITER:
             case OPT:
             case RERUN:
                 out.format(
                     "%1$5d %2$5d",
-                    Grammar.ptr(p.down, false),
-                    Grammar.ptr(p.sub, false));
+                    Grammar.ptr(nodes.down(p), false),
+                    Grammar.ptr(nodes.sub(p), false));
                 break;
             case EPS:
                 out.print("           ");
@@ -805,7 +1358,7 @@ public class Grammar {
         for (Symbol symbol : symbolMap.values()) {
             final StringBuffer buf = new StringBuffer();
             out.println(symbol.name + " ::=");
-            symbol.graph.l.unparse(buf);
+            Node.unparse(nodes, symbol.graph.l, buf);
             out.println("  " + buf);
         }
         out.println();
@@ -816,6 +1369,18 @@ public class Grammar {
         makeSequence(g1, g2);
     }    
 
+    /**
+     * Nodes created, and terminals asked for, by one of several tasks running
+     * in parallel, in order, and the graph that the task returned.
+     */
+    private static class Chunk {
+        NodeStore nodes;
+        // graph that the task built or rewrote
+        Graph graph;
+        // terminal, and whether terminal() was the first to ask for it
+        final Map<Symbol, Boolean> terminals =
+            new LinkedHashMap<Symbol, Boolean>();
+    }
 }
 
 // End Grammar.java
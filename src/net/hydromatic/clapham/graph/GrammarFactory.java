@@ -32,7 +32,11 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
 import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
 
 import net.hydromatic.clapham.parser.Language;
 import net.hydromatic.clapham.parser.LanguageParserException;
@@ -67,6 +71,44 @@ public class GrammarFactory {
 
 	public static final Grammar build(Language language, Reader input,
 			boolean optimize) throws LanguageParserException {
+		return build(language, input, optimize ? EnumSet
+				.allOf(Rewrite.class) : EnumSet.of(Rewrite.LINEBREAKS));
+	}
+
+	/**
+	 * Builds a grammar and optimizes it with the given rewrites.
+	 * 
+	 * @param language
+	 *            Language of the grammar
+	 * @param input
+	 *            Grammar source
+	 * @param rewrites
+	 *            Rewrites that optimize the graph of each rule
+	 * @return Grammar
+	 */
+	public static final Grammar build(Language language, Reader input,
+			Set<Rewrite> rewrites) throws LanguageParserException {
+		return build(language, input, rewrites, 1);
+	}
+
+	/**
+	 * Builds a grammar and optimizes it with the given rewrites, building and
+	 * optimizing the graphs of several rules at a time. The nodes are
+	 * numbered as if the rules were processed one after another.
+	 * 
+	 * @param language
+	 *            Language of the grammar
+	 * @param input
+	 *            Grammar source
+	 * @param rewrites
+	 *            Rewrites that optimize the graph of each rule
+	 * @param parallelism
+	 *            Number of threads
+	 * @return Grammar
+	 */
+	public static final Grammar build(Language language, Reader input,
+			Set<Rewrite> rewrites, int parallelism)
+			throws LanguageParserException {
 		if (language == null) {
 			throw new IllegalArgumentException("language can't be null");
 		}
@@ -77,17 +119,35 @@ public class GrammarFactory {
 			List<ProductionNode> productionList = language
 					.parse(toString(input));
 
-			Grammar grammar = new Grammar();
+			final Grammar grammar = new Grammar();
+			final List<Symbol> symbols = new ArrayList<Symbol>();
 			for (ProductionNode productionNode : productionList) {
-				Symbol symbol = new Symbol(NodeType.NONTERM, productionNode.id.s)
-											.withProduction(productionNode);
-				grammar.nonterminals.add(symbol);
-				grammar.symbolMap.put(symbol.name, symbol);
-				Graph g = productionNode.toGraph(grammar);
-				symbol.graph = g;
+				Symbol symbol = grammar.symbol(NodeType.NONTERM,
+						productionNode.id.s).withProduction(productionNode);
+				if (grammar.symbolMap.put(symbol.name, symbol) == null) {
+					grammar.nonterminals.add(symbol);
+				}
+				symbols.add(symbol);
+			}
+			// graphs are assigned in order, in case a rule is defined twice
+			final Graph[] graphs = new Graph[productionList.size()];
+			final List<Callable<Graph>> tasks = new ArrayList<Callable<Graph>>();
+			for (int i = 0; i < graphs.length; i++) {
+				final int index = i;
+				final ProductionNode productionNode = productionList.get(i);
+				tasks.add(new Callable<Graph>() {
+					public Graph call() {
+						graphs[index] = productionNode.toGraph(grammar);
+						return graphs[index];
+					}
+				});
+			}
+			grammar.runTasks(tasks, parallelism);
+			for (int i = 0; i < graphs.length; i++) {
+				symbols.get(i).graph = graphs[i];
 			}
-			grammar.setOptimizeGraph(optimize);
-			grammar.optimize();
+			grammar.setRewrites(rewrites);
+			grammar.optimize(parallelism);
 			return grammar;
 		} catch (IOException ex) {
 			throw new LanguageParserException(ex, "Error reading file");
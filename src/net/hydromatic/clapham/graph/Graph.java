@@ -37,37 +37,26 @@ package net.hydromatic.clapham.graph;
  */
 public class Graph {
 
-    /** left end of graph = head */
-    public Node l;
+    /** left end of graph = head, or {@link NodeStore#NONE} */
+    public int l;
 
     /** right end of graph = list of nodes to be linked to successor graph */
-    public Node r;
-
-    public Size graphSize;
+    public int r;
 
     public Graph() {
-        l = null;
-        r = null;
+        l = NodeStore.NONE;
+        r = NodeStore.NONE;
     }
 
-    public Graph(Node left, Node right) {
+    public Graph(int left, int right) {
         l = left;
         r = right;
     }
 
-    public Graph(Node p) {
+    public Graph(int p) {
         l = p;
         r = p;
     }
-
-	public void finish() {
-		Node p = r;
-        while (p != null) {
-            Node q = p.next;
-            p.next = null;
-            p = q;
-        }
-    }
 }
 
 // End Graph.java
@@ -0,0 +1,253 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.graph;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.hydromatic.clapham.chart.ChartOptions;
+
+/**
+ * Sizes and positions of the nodes of a grammar, as computed by
+ * {@link Node#calcSize}, {@link Node#setWrapSize} and {@link Node#calcPos}
+ * for a particular set of {@link ChartOptions}.
+ *
+ * <p>A layout is created by {@link Grammar#layOut(ChartOptions)}. It is kept
+ * apart from the nodes, so the graph of nodes does not change once the
+ * grammar has been optimized, and several layouts of one grammar, with
+ * different options, can be used at the same time.
+ *
+ * <p>The values of all nodes are held in one array of ints, indexed by node
+ * number, rather than in {@link Size} and {@link java.awt.Point} objects
+ * owned by each node. That takes a fraction of the heap, and keeps the values
+ * of a node together in memory.
+ *
+ * <p>For each node there is:<ul>
+ * <li>the size required to draw the node;</li>
+ * <li>the alt size: the size of a construct of alternatives, or of the first
+ *     component of a rerun node that has an itergraph;</li>
+ * <li>the iter width: the width of the second component of a rerun node
+ *     that has an itergraph;</li>
+ * <li>the vertical position of the top of the component;</li>
+ * <li>the vertical position of the line through the component;</li>
+ * <li>the vertical position of the bottom of the component;</li>
+ * <li>whether the node is in the first level of its rule.</li>
+ * </ul>
+ *
+ * <p>While the layout is computed, it also holds the height of the level
+ * that starts at each node, once it is known; {@link #finish} releases them.
+ *
+ * <p>Horizontal positions are not held: the draw methods compute them as
+ * they go, so drawing does not write to the layout, and several charts can
+ * draw with one layout at the same time.
+ *
+ * <p>The layout also holds the size of the graph of each rule, and the size
+ * of the image of each rule once a chart has measured it.
+ *
+ * @version $Id$
+ */
+public class Layout {
+    private static final int WIDTH = 0;
+    private static final int HEIGHT = 1;
+    private static final int ALT_WIDTH = 2;
+    private static final int ALT_HEIGHT = 3;
+    private static final int ITER_WIDTH = 4;
+    private static final int BEGIN_Y = 5;
+    private static final int LINE_Y = 6;
+    private static final int END_Y = 7;
+    private static final int STRIDE = 8;
+
+    private final ChartOptions options;
+    private final NodeStore nodes;
+    private final int[] values;
+    private int[] levelHeights;
+    private final BitSet firstLevel = new BitSet();
+    private final Map<Graph, Size> graphSizes = new HashMap<Graph, Size>();
+    private final ConcurrentMap<Graph, Size> bounds =
+        new ConcurrentHashMap<Graph, Size>();
+
+    /**
+     * Creates an empty layout.
+     *
+     * @param options Options that the layout is computed with
+     * @param nodes Nodes of the grammar
+     */
+    Layout(ChartOptions options, NodeStore nodes) {
+        this.options = options;
+        this.nodes = nodes;
+        this.values = new int[nodes.size() * STRIDE];
+        this.levelHeights = new int[nodes.size()];
+    }
+
+    /**
+     * Returns the options that this layout was computed with.
+     */
+    public ChartOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * Returns the nodes that this layout holds the sizes and positions of.
+     */
+    public NodeStore getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the size of the graph of a rule.
+     */
+    public Size graphSize(Graph graph) {
+        return graphSizes.get(graph);
+    }
+
+    /**
+     * Returns the size of the image of a rule, or null if no chart has
+     * measured it yet.
+     */
+    public Size bounds(Graph graph) {
+        return bounds.get(graph);
+    }
+
+    /**
+     * Records the size of the image of a rule, as measured by a chart, so that
+     * charts that draw with this layout do not measure it again. Rules may be
+     * measured by several threads at the same time.
+     */
+    public void setBounds(Graph graph, Size size) {
+        bounds.put(graph, size);
+    }
+
+    /**
+     * Returns whether a node is in the first level of its rule, that is, not
+     * inside an alternative, iteration or option.
+     */
+    public boolean isFirstLevel(int n) {
+        return firstLevel.get(n);
+    }
+
+    /**
+     * Returns the size required to draw a node.
+     */
+    public Size size(int n) {
+        return new Size(width(n), height(n));
+    }
+
+    public int width(int n) {
+        return values[n * STRIDE + WIDTH];
+    }
+
+    public int height(int n) {
+        return values[n * STRIDE + HEIGHT];
+    }
+
+    public int altWidth(int n) {
+        return values[n * STRIDE + ALT_WIDTH];
+    }
+
+    public int altHeight(int n) {
+        return values[n * STRIDE + ALT_HEIGHT];
+    }
+
+    public int iterWidth(int n) {
+        return values[n * STRIDE + ITER_WIDTH];
+    }
+
+    public int beginY(int n) {
+        return values[n * STRIDE + BEGIN_Y];
+    }
+
+    public int lineY(int n) {
+        return values[n * STRIDE + LINE_Y];
+    }
+
+    public int endY(int n) {
+        return values[n * STRIDE + END_Y];
+    }
+
+    /**
+     * Returns the height of the level that starts at a node, or -1 if it has
+     * not been computed yet.
+     */
+    int levelHeight(int n) {
+        return levelHeights[n] - 1;
+    }
+
+    void setLevelHeight(int n, int height) {
+        // stored plus one, so that the initial zero means "not computed"
+        levelHeights[n] = height + 1;
+    }
+
+    /**
+     * Releases the values that are only needed while the layout is computed.
+     */
+    void finish() {
+        levelHeights = null;
+    }
+
+    void setGraphSize(Graph graph, Size size) {
+        graphSizes.put(graph, size);
+    }
+
+    void setFirstLevel(int n) {
+        firstLevel.set(n);
+    }
+
+    void setSize(int n, int width, int height) {
+        values[n * STRIDE + WIDTH] = width;
+        values[n * STRIDE + HEIGHT] = height;
+    }
+
+    void setHeight(int n, int height) {
+        values[n * STRIDE + HEIGHT] = height;
+    }
+
+    void setAltSize(int n, int width, int height) {
+        values[n * STRIDE + ALT_WIDTH] = width;
+        values[n * STRIDE + ALT_HEIGHT] = height;
+    }
+
+    void setIterWidth(int n, int width) {
+        values[n * STRIDE + ITER_WIDTH] = width;
+    }
+
+    void setBeginY(int n, int y) {
+        values[n * STRIDE + BEGIN_Y] = y;
+    }
+
+    void setLineY(int n, int y) {
+        values[n * STRIDE + LINE_Y] = y;
+    }
+
+    void setEndY(int n, int y) {
+        values[n * STRIDE + END_Y] = y;
+    }
+}
+
+// End Layout.java
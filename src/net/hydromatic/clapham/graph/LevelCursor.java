@@ -0,0 +1,178 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// Copyright (c) 2005 Stefan Schoergenhumer, Markus Dopler
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.graph;
+
+/**
+ * Position in one level of a graph: a node, and the node before it in the
+ * level.
+ *
+ * <p>Because the cursor remembers the predecessor, the optimizations in
+ * {@link Grammar} can unlink or replace the current node in constant time,
+ * rather than walking from the start of the level to find the node that
+ * points to it.
+ *
+ * <p>A level is a chain of nodes linked by {@link NodeStore#next}; its last
+ * node {@link NodeStore#isUp is up} (its <code>next</code> points back to the
+ * enclosing node) or has no <code>next</code>. The first node of a level is
+ * referenced by the enclosing node's {@link NodeStore#sub sub}, or, at the
+ * top level, by the {@link Graph#l left end} of the symbol's graph.
+ *
+ * @version $Id$
+ */
+final class LevelCursor {
+    private final NodeStore nodes;
+    private final int parent;
+    private final Symbol symbol;
+    private int prev = NodeStore.NONE;
+    private int node;
+    private boolean removed;
+
+    /**
+     * Creates a cursor positioned on the first node of a level.
+     *
+     * @param nodes Nodes of the grammar
+     * @param first First node of level, or {@link NodeStore#NONE} if the
+     *     level is empty
+     * @param parent Node whose substructure the level is, or
+     *     {@link NodeStore#NONE} if the level is the top level of the
+     *     symbol's graph
+     * @param symbol Symbol whose graph contains the level
+     */
+    LevelCursor(NodeStore nodes, int first, int parent, Symbol symbol) {
+        this.nodes = nodes;
+        this.parent = parent;
+        this.symbol = symbol;
+        this.node = first;
+    }
+
+    /**
+     * Returns the current node, or {@link NodeStore#NONE} if the cursor has
+     * moved past the end of the level.
+     */
+    int node() {
+        return node;
+    }
+
+    /**
+     * Returns whether the current node is the first node of the level.
+     */
+    boolean isFirst() {
+        return prev == NodeStore.NONE;
+    }
+
+    /**
+     * Returns whether the current node has been {@link #remove removed}.
+     */
+    boolean isRemoved() {
+        return removed;
+    }
+
+    /**
+     * Moves to the next node of the level.
+     *
+     * <p>If the current node has been {@link #remove removed}, moves to the
+     * node that followed it, and the predecessor stays the same.
+     *
+     * @return whether there is a next node in the level
+     */
+    boolean next() {
+        if (nodes.isUp(node)) {
+            node = NodeStore.NONE;
+            return false;
+        }
+        if (!removed) {
+            prev = node;
+        }
+        removed = false;
+        node = nodes.next(node);
+        return node != NodeStore.NONE;
+    }
+
+    /**
+     * Unlinks the current node from the level. The node following it, if
+     * any, takes over its place and its {@link NodeStore#isUp up} flag.
+     *
+     * <p>The cursor stays on the removed node until {@link #next} is called.
+     */
+    void remove() {
+        if (prev == NodeStore.NONE) {
+            link(nodes.next(node));
+        } else {
+            nodes.setNext(prev, nodes.next(node));
+            nodes.setUp(prev, nodes.isUp(node));
+        }
+        removed = true;
+    }
+
+    /**
+     * Puts a node into the level in place of the current node, and moves the
+     * cursor to it. The caller sets the new node's <code>next</code> and
+     * <code>up</code> fields.
+     *
+     * @param with Replacement node
+     */
+    void replace(int with) {
+        link(with);
+        node = with;
+    }
+
+    /**
+     * Puts a node into the level in place of a run of nodes that ends with
+     * the current node, and moves the cursor to it.
+     *
+     * @param before Node before the first node replaced, or
+     *     {@link NodeStore#NONE} if the run starts at the beginning of the
+     *     level
+     * @param with Replacement node
+     */
+    void replace(int before, int with) {
+        prev = before;
+        replace(with);
+    }
+
+    /**
+     * Makes the node before the current node (or the enclosing node, or the
+     * graph, if the current node is first) point to a given node, without
+     * moving the cursor.
+     *
+     * @param with Node to link in place of the current node
+     */
+    void link(int with) {
+        if (prev != NodeStore.NONE) {
+            nodes.setNext(prev, with);
+        } else if (parent != NodeStore.NONE) {
+            nodes.setSub(parent, with);
+        } else {
+            symbol.graph.l = with;
+        }
+    }
+}
+
+// End LevelCursor.java
@@ -38,207 +38,179 @@ import net.hydromatic.clapham.chart.ChartOptions;
 import net.hydromatic.clapham.chart.ChartOptions.ChartLayout;
 
 /**
- * TODO:
+ * Computes the layout of the nodes of a grammar, draws them, and prints
+ * them.
+ *
+ * <p>The nodes themselves are held in a {@link NodeStore} and identified by
+ * number; the methods of this class walk them through the store, and
+ * {@link NodeStore#NONE} stands for no node.
  *
  * @author jhyde
  * @version $Id$
  * @since Jul 30, 2008
  */
 public class Node {
-    
-    public final int n; // node number
-    public NodeType typ; // t, nt, eps, alt, iter, opt, rerun
-    public Node next; // to successor node
-    public Node down; // alt: to next alternative
-    public Node sub; // alt, iter, opt: to first node of substructure
-    public boolean up; // true: "next" leads to successor in enclosing structure
-    public Symbol sym; // nt, t: symbol represented by this node
-    public Node itergraph; // rerun: points to the b in "a {b a}", null if
-    // "a {a}"
-    private boolean firstLevel; // true if the Node is in the first Level
-    private TextBox textBox;
-    private boolean optimized;
-
-    public Node(Grammar grammar, Symbol sym) {
-        this.typ = sym.typ;
-        this.sym = sym;
-        n = grammar.nodes.size();
-        grammar.nodes.add(this);
-    }
-
-    public Node(Grammar grammar, NodeType typ, Node sub) {
-        this.typ = typ;
-        n = grammar.nodes.size();
-        grammar.nodes.add(this);
-        this.sub = sub;
-    }
-
-    public Node(Grammar grammar, NodeType typ, Node sub, boolean optimized) {
-        this(grammar, typ, sub);
-        this.optimized = optimized;
-    }
-
-    public boolean isOptimized() {
-        return optimized;
+    private Node() {
     }
 
     // ----------------- for printing ----------------------
 
-    // ----------------- for drawing ----------------------
-
-    /***************** other variables needed for the drawing ********/
-    public Size size = new Size(0, 0); // the required size to draw the node
-    private Size altSize = new Size(0, 0); // the required size to draw a
-    // construct of alts or the size of
-    // the firstcomponent in the special
-    // rerun-node (itergraph!=null)
-    private Size iterSize = new Size(0, 0); // the size of the second component
-    // in the special rerun Node
-    // (itergraph!=null)
-    public final Point posBegin = new Point(0, 0); // the point in the left
-    // above
-    // corner of the component
-    public final Point posLine = new Point(0, 0); // the point of the line of
-    // the component
-    public final Point posEnd = new Point(0, 0); // the point in the left down
-
-    // corner
-
-    // of the component
-
-    public void unparse(StringBuffer buf) {
-        switch (typ) {
+    public static void unparse(NodeStore nodes, int node, StringBuffer buf) {
+        switch (nodes.typ(node)) {
         case EXCEPTION:
         case PREDICATE:
         case TERM:
         case NONTERM:
-            buf.append('<').append(sym.name).append('>');
+            buf.append('<').append(nodes.symbol(node).name).append('>');
             break;
         case ALT:
-            final List<Node> alts = new ArrayList<Node>();
-            for (Node n = this; n != null; n = n.down) {
-                alts.add(n.sub);
+            final List<Integer> alts = new ArrayList<Integer>();
+            for (int n = node; n != NodeStore.NONE; n = nodes.down(n)) {
+                alts.add(nodes.sub(n));
             }
             int count = 0;
             buf.append("(");
-            for (Node alt : alts) {
+            for (int alt : alts) {
                 if (count++ > 0) {
                     buf.append(" | ");
                 }
-                unparseList(buf, nextChildren(alt), "", " ", "");
+                unparseList(nodes, buf, nextChildren(nodes, alt), "", " ", "");
             }
             buf.append(")");
             break;
         case ITER:
-            unparseList(buf, nextChildren(sub), "iter(", " ", ")");
+            unparseList(
+                nodes, buf, nextChildren(nodes, nodes.sub(node)),
+                "iter(", " ", ")");
             break;
         case OPT:
-            unparseList(buf, nextChildren(sub), "opt(", " ", ")");
+            unparseList(
+                nodes, buf, nextChildren(nodes, nodes.sub(node)),
+                "opt(", " ", ")");
             break;
         case RERUN:
-        	if(itergraph != null) {
-        		unparseList(buf, nextChildren(itergraph), "rerun-iter(", " ", ")");
+        	if(nodes.itergraph(node) != NodeStore.NONE) {
+        		unparseList(
+        		    nodes, buf, nextChildren(nodes, nodes.itergraph(node)),
+        		    "rerun-iter(", " ", ")");
         	}
-            unparseList(buf, nextChildren(sub), "rerun(", " ", ")");
+            unparseList(
+                nodes, buf, nextChildren(nodes, nodes.sub(node)),
+                "rerun(", " ", ")");
             break;
         default:
-            buf.append("unknown <").append(typ).append(">");
+            buf.append("unknown <").append(nodes.typ(node)).append(">");
         }
     }
 
-    private static List<Node> nextChildren(Node next) {
-        final List<Node> list = new ArrayList<Node>();
-        for (Node n = next; n != null; n = n.up ? null : n.next) {
+    private static List<Integer> nextChildren(NodeStore nodes, int next) {
+        final List<Integer> list = new ArrayList<Integer>();
+        for (int n = next;
+             n != NodeStore.NONE;
+             n = nodes.isUp(n) ? NodeStore.NONE : nodes.next(n))
+        {
             list.add(n);
         }
         return list;
     }
 
-    private void unparseList(
+    private static void unparseList(
+        NodeStore nodes,
         StringBuffer buf,
-        List<Node> list,
+        List<Integer> list,
         String before,
         String mid,
         String after)
     {
         int count = 0;
         buf.append(before);
-        for (Node n : list) {
+        for (int n : list) {
             if (count++ > 0) {
                 buf.append(mid);
             }
-            n.unparse(buf);
+            unparse(nodes, n, buf);
         }
         buf.append(after);
     }
 
+    // ----------------- for drawing ----------------------
+
+    // sizes and positions needed for the drawing are held in a Layout, one
+    // for each set of options the grammar is drawn with
+
     // calculates the size if there are wraps in the rule
-    public void setWrapSize(ChartOptions options) {
-        Node n = this;
+    public static void setWrapSize(Layout layout, int node) {
+        final NodeStore nodes = layout.getNodes();
+        final ChartOptions options = layout.getOptions();
+        int n = node;
         int maxH = 0;
-        while (n != null) {
-            n.firstLevel = true;
-            switch (n.typ) {
+        while (n != NodeStore.NONE) {
+            layout.setFirstLevel(n);
+            switch (nodes.typ(n)) {
             case WRAP:
-                n.size.setHeight(maxH);
+                layout.setHeight(n, maxH);
                 maxH = 0;
                 break;
             case ITER:
-                if (maxH < n.size.getHeight()
+                if (maxH < layout.height(n)
                         + (options.fontHeight() + options.componentGapHeight())
                         / 2)
                 {
-                    maxH = n.size.getHeight()
+                    maxH = layout.height(n)
                             + (options.fontHeight() + options
                                     .componentGapHeight()) / 2;
                 }
                 break;
             default:
-                if (maxH < n.size.getHeight() || maxH < n.altSize.getHeight()) {
-                    if (n.altSize.getHeight() != 0) {
-                        maxH = n.altSize.getHeight();
+                if (maxH < layout.height(n) || maxH < layout.altHeight(n)) {
+                    if (layout.altHeight(n) != 0) {
+                        maxH = layout.altHeight(n);
                     } else {
-                        maxH = n.size.getHeight();
+                        maxH = layout.height(n);
                     }
                 }
                 break;
             }
-            n = n.next;
+            n = nodes.next(n);
         }
     }
 
     /**
      * Calculates the size of each symbol.
      */
-    public Size calcSize(ChartOptions options) {
-        Node n = this; // current node in the level
+    public static Size calcSize(Layout layout, int node) {
+        final NodeStore nodes = layout.getNodes();
+        final ChartOptions options = layout.getOptions();
+        int n = node; // current node in the level
         Size s = new Size(); // alt,iter,opt: size of current construct
         int iterCompensation = 0;
         boolean samelevel = true; // next node in same level?
-        int realHeight = n.calcHeight(options);
+        int realHeight = calcHeight(layout, n);
         Size maxTotalSize = new Size(0, 0);
-        while (n != null && samelevel) {
-            switch (n.typ) {
+        while (n != NodeStore.NONE && samelevel) {
+            switch (nodes.typ(n)) {
             case PREDICATE:
             case EXCEPTION:
             case TERM:
-            case NONTERM:
-                n.size.setHeight(
-                    options.fontHeight() + options.symbolGapHeight() * 2
-                    + options.componentGapHeight());
-                n.size.setWidth(options.stringWidth(n.sym.name) + options.symbolGapWidth() * 2);
-                if (n.typ.matches(NodeType.TERM, 
+            case NONTERM: {
+                int width = options.stringWidth(nodes.symbol(n).name)
+                    + options.symbolGapWidth() * 2;
+                if (nodes.typ(n).matches(NodeType.TERM, 
                         NodeType.EXCEPTION, 
                         NodeType.PREDICATE)) {
-                    n.size.maxWidth(options.arcSize());
+                    width = Math.max(width, options.arcSize());
                 }
+                layout.setSize(n, width, symbolHeight(options));
 
-                if (!n.up && n.next != null && n.next.typ == NodeType.WRAP
-                        && n.next.size.getHeight() == 0)
+                final int next = nodes.next(n);
+                if (!nodes.isUp(n) && next != NodeStore.NONE
+                        && nodes.typ(next) == NodeType.WRAP
+                        && layout.height(next) == 0)
                 {
-                    if (!n.next.up
-                            && n.next.next != null
-                            && (n.next.next.typ.matches(NodeType.TERM, 
+                    final int afterWrap = nodes.next(next);
+                    if (!nodes.isUp(next)
+                            && afterWrap != NodeStore.NONE
+                            && (nodes.typ(afterWrap).matches(NodeType.TERM, 
                                                         NodeType.NONTERM, 
                                                         NodeType.EXCEPTION,
                                                         NodeType.PREDICATE)))
@@ -246,9 +218,9 @@ public class Node {
                         s.incWidth(options.componentGapWidth() / 2);
                     }
                 }
-                if (!n.up
-                        && n.next != null
-                        && (n.next.typ.matches(NodeType.TERM,
+                if (!nodes.isUp(n)
+                        && next != NodeStore.NONE
+                        && (nodes.typ(next).matches(NodeType.TERM,
                                                NodeType.NONTERM,
                                                NodeType.EXCEPTION,
                                                NodeType.PREDICATE)))
@@ -256,24 +228,32 @@ public class Node {
                     s.incWidth(options.componentGapWidth() / 2);
                 }
                 break;
+            }
             case EPS:
-                n.size.setHeight(
+                layout.setSize(
+                    n,
+                    options.componentGapWidth(),
                     options.fontHeight()
                     + options.componentGapHeight());
-                n.size.setWidth(options.componentGapWidth());
                 break;
-            case OPT:
-                n.size = n.sub.calcSize(options);
-                n.size.incWidth(options.componentGapWidth() * 2);
-                n.size.incHeight(
-                    options.componentGapHeight() / 2
+            case OPT: {
+                Size size = calcSize(layout, nodes.sub(n));
+                layout.setSize(
+                    n,
+                    size.getWidth() + options.componentGapWidth() * 2,
+                    size.getHeight()
+                    + options.componentGapHeight() / 2
                     + options.componentGapHeight());
                 break;
-            case ITER:
-                n.size = n.sub.calcSize(options);
-                n.size.incWidth(options.componentGapWidth() * 2);
-                n.size.incHeight(options.componentGapHeight() / 2);
+            }
+            case ITER: {
+                Size size = calcSize(layout, nodes.sub(n));
+                layout.setSize(
+                    n,
+                    size.getWidth() + options.componentGapWidth() * 2,
+                    size.getHeight() + options.componentGapHeight() / 2);
                 break;
+            }
             case WRAP:
                 maxTotalSize.incHeight(
                     s.getHeight()
@@ -282,33 +262,42 @@ public class Node {
                 s.setHeight(0);
                 s.setWidth(0);
                 break;
-            case RERUN:
-                n.size = n.sub.calcSize(options);
-                if (n.itergraph != null) {
-                    n.altSize = n.size;
-                    n.iterSize = n.itergraph.calcSize(options);
-                    n.size.maxWidth(n.iterSize.getWidth());
-                    n.size.incHeight(
+            case RERUN: {
+                Size size = calcSize(layout, nodes.sub(n));
+                if (nodes.itergraph(n) != NodeStore.NONE) {
+                    Size iterSize = calcSize(layout, nodes.itergraph(n));
+                    layout.setIterWidth(n, iterSize.getWidth());
+                    size.maxWidth(iterSize.getWidth());
+                    size.incHeight(
                         options.fontHeight() * 3 / 2
                         + options.componentGapHeight());
                 } 
-                n.size.incHeight(options.componentGapHeight() / 2);
+                size.incHeight(options.componentGapHeight() / 2);
                 
-                n.size.incWidth(options.componentGapWidth() * 2);
+                size.incWidth(options.componentGapWidth() * 2);
+                layout.setSize(n, size.getWidth(), size.getHeight());
+                if (nodes.itergraph(n) != NodeStore.NONE) {
+                    // the first component is given the size of the whole
+                    layout.setAltSize(n, size.getWidth(), size.getHeight());
+                }
                 break;
+            }
             case ALT: {
-                Node a = n;
+                int a = n;
                 int maxH = -options.componentGapHeight();
                 int maxW = 0;
-                while (a != null) {
-                    a.size = a.sub.calcSize(options);
-                    maxH += a.size.getHeight();
-                    if (a.size.getWidth() > maxW) {
-                        maxW = a.size.getWidth();
+                while (a != NodeStore.NONE) {
+                    Size size = calcSize(layout, nodes.sub(a));
+                    layout.setSize(a, size.getWidth(), size.getHeight());
+                    maxH += size.getHeight();
+                    if (size.getWidth() > maxW) {
+                        maxW = size.getWidth();
                     }
-                    a = a.down;
+                    a = nodes.down(a);
                 }
-                if (n.sub.typ == NodeType.ITER && realHeight != 0) {
+                if (nodes.typ(nodes.sub(n)) == NodeType.ITER
+                    && realHeight != 0)
+                {
                     maxH +=
                         (options.fontHeight() + options.componentGapHeight())
                         / 2;
@@ -316,29 +305,28 @@ public class Node {
                 maxW += 2 * options.componentGapWidth();
                 maxH += options.componentGapHeight();
 
-                n.altSize.setHeight(maxH);
-                n.altSize.setWidth(maxW);
+                layout.setAltSize(n, maxW, maxH);
             }
                 break;
             }
-            if (n.typ == NodeType.ITER && realHeight != 0) {
+            if (nodes.typ(n) == NodeType.ITER && realHeight != 0) {
                 iterCompensation = (options.fontHeight() + options
                         .componentGapHeight()) / 2;
             }
-            if (n.typ == NodeType.ALT) {
-                s.maxHeight(n.altSize.getHeight());
-                s.incWidth(n.altSize.getWidth());
+            if (nodes.typ(n) == NodeType.ALT) {
+                s.maxHeight(layout.altHeight(n));
+                s.incWidth(layout.altWidth(n));
             } else {
-                s.maxHeight(n.size.getHeight());
-                s.incWidth(n.size.getWidth());
+                s.maxHeight(layout.height(n));
+                s.incWidth(layout.width(n));
             }
-            if (n.typ == NodeType.ITER) {
-                s.maxHeight(n.size.getHeight() + iterCompensation);
+            if (nodes.typ(n) == NodeType.ITER) {
+                s.maxHeight(layout.height(n) + iterCompensation);
             }
-            if (n.up) {
+            if (nodes.isUp(n)) {
                 samelevel = false;
             }
-            n = n.next;
+            n = nodes.next(n);
         }
         if (maxTotalSize.getWidth() != 0) {
             maxTotalSize.incHeight(
@@ -351,29 +339,60 @@ public class Node {
         }
     }
 
+    /**
+     * Returns the height of a terminal or non-terminal symbol box.
+     */
+    private static int symbolHeight(ChartOptions options) {
+        return options.fontHeight() + options.symbolGapHeight() * 2
+            + options.componentGapHeight();
+    }
+
     /**
      * Calculates the total height of all symbols wich are in the same
      * horizontal level.
+     *
+     * <p>Symbol heights are derived from the options rather than read from
+     * the {@link Layout}, so the result does not depend on a previous layout
+     * pass and a single call to {@link #calcSize} is enough.
+     *
+     * <p>The height of each level is remembered in the layout.
+     * {@link #calcSize} and {@link #calcPos} ask for the height of every
+     * level, and the height of a level needs the heights of the levels
+     * nested in it, so without it the heights of deeply nested levels would
+     * be computed once for each enclosing level, twice over.
      */
-    private int calcHeight(ChartOptions options) {
-        Node n = this; // current node in the level
+    private static int calcHeight(Layout layout, int node) {
+        int realHeight = layout.levelHeight(node);
+        if (realHeight < 0) {
+            realHeight = calcLevelHeight(layout, node);
+            layout.setLevelHeight(node, realHeight);
+        }
+        return realHeight;
+    }
+
+    private static int calcLevelHeight(Layout layout, int node) {
+        final NodeStore nodes = layout.getNodes();
+        final ChartOptions options = layout.getOptions();
+        int n = node; // current node in the level
         int realHeight = 0;
         boolean samelevel = true; // next node in same level?
-        while (n != null && samelevel) {
+        while (n != NodeStore.NONE && samelevel) {
             int tmpHeight = 0;
-            if (n.typ.matches(NodeType.TERM, NodeType.NONTERM, NodeType.EXCEPTION)) {
-                tmpHeight = n.size.getHeight();
-            } else if (n.typ == NodeType.ITER) {
-                tmpHeight = n.sub.calcHeight(options);
-            } else if (n.typ == NodeType.OPT) {
-                tmpHeight = n.sub.calcHeight(options);
-            } else if (n.typ == NodeType.PREDICATE) {
-                tmpHeight = n.size.getHeight();
-            } else if (n.typ == NodeType.RERUN) {
-                tmpHeight = n.sub.calcHeight(options);
-            } else if (n.typ == NodeType.ALT) {
-                tmpHeight = n.sub.calcHeight(options);
-            } else if (n.typ == NodeType.EPS) {
+            if (nodes.typ(n).matches(
+                    NodeType.TERM, NodeType.NONTERM, NodeType.EXCEPTION))
+            {
+                tmpHeight = symbolHeight(options);
+            } else if (nodes.typ(n) == NodeType.ITER) {
+                tmpHeight = calcHeight(layout, nodes.sub(n));
+            } else if (nodes.typ(n) == NodeType.OPT) {
+                tmpHeight = calcHeight(layout, nodes.sub(n));
+            } else if (nodes.typ(n) == NodeType.PREDICATE) {
+                tmpHeight = symbolHeight(options);
+            } else if (nodes.typ(n) == NodeType.RERUN) {
+                tmpHeight = calcHeight(layout, nodes.sub(n));
+            } else if (nodes.typ(n) == NodeType.ALT) {
+                tmpHeight = calcHeight(layout, nodes.sub(n));
+            } else if (nodes.typ(n) == NodeType.EPS) {
                 tmpHeight = options.fontHeight() * 3 / 2;
                 if (realHeight < tmpHeight) {
                     tmpHeight = options.fontHeight()
@@ -383,10 +402,10 @@ public class Node {
                 }
             }
             realHeight = Math.max(realHeight, tmpHeight);
-            if (n.up) {
+            if (nodes.isUp(n)) {
                 samelevel = false;
             }
-            n = n.next;
+            n = nodes.next(n);
         }
         return realHeight;
     }
@@ -394,81 +413,91 @@ public class Node {
     /**
      * Calculates the horizontal position of the symbols.
      */
-    public void calcPos(ChartOptions options, int posBegin, boolean inverse) {
-        Node n = this; // current node in the level
-        int realHeight = calcHeight(options);
+    public static void calcPos(
+        Layout layout, int node, int posBegin, boolean inverse)
+    {
+        final NodeStore nodes = layout.getNodes();
+        final ChartOptions options = layout.getOptions();
+        int n = node; // current node in the level
+        int realHeight = calcHeight(layout, node);
         boolean samelevel = true; // next node in same level?
-        while (n != null && samelevel) {
-            if (n.typ.matches(NodeType.NONTERM, NodeType.TERM, NodeType.EXCEPTION)) {
-                n.posLine.y = posBegin + realHeight / 2;
-                n.posBegin.y = n.posLine.y
-                        - (n.size.getHeight() - options.componentGapHeight()) / 2;
-                n.posEnd.y = n.posLine.y
-                        + (n.size.getHeight() - options.componentGapHeight()) / 2;
-            } else if (n.typ == NodeType.EPS) {
+        while (n != NodeStore.NONE && samelevel) {
+            if (nodes.typ(n).matches(
+                    NodeType.NONTERM, NodeType.TERM, NodeType.EXCEPTION))
+            {
+                final int lineY = posBegin + realHeight / 2;
+                final int halfHeight =
+                    (layout.height(n) - options.componentGapHeight()) / 2;
+                layout.setLineY(n, lineY);
+                layout.setBeginY(n, lineY - halfHeight);
+                layout.setEndY(n, lineY + halfHeight);
+            } else if (nodes.typ(n) == NodeType.EPS) {
                 int offset =
-                    ((inverse && n.up) || (n.n > 0 && n.isOptimized()))
+                    ((inverse && nodes.isUp(n))
+                     || (n > 0 && nodes.isOptimized(n)))
                     ? options.symbolGapHeight()
                     : 0;
-                n.posLine.y = posBegin + n.size.getHeight() / 2 + offset;
-                n.posBegin.y = posBegin;
-                n.posEnd.y = posBegin + n.size.getHeight();
-            } else if (n.typ == NodeType.OPT) {
-                n.posLine.y = posBegin + realHeight / 2;
-                n.posBegin.y = posBegin;
-                n.posEnd.y = posBegin + n.size.getHeight();
-                n.sub.calcPos(options, n.posBegin.y, inverse);
-            } else if (n.typ == NodeType.PREDICATE) {
-                n.posLine.y = posBegin + realHeight / 2;
-                n.posBegin.y = n.posLine.y - n.size.getHeight() / 2 
-                            - options.componentGapHeight() / 2 +1;
-                n.posEnd.y = n.posLine.y;
+                layout.setLineY(n, posBegin + layout.height(n) / 2 + offset);
+                layout.setBeginY(n, posBegin);
+                layout.setEndY(n, posBegin + layout.height(n));
+            } else if (nodes.typ(n) == NodeType.OPT) {
+                layout.setLineY(n, posBegin + realHeight / 2);
+                layout.setBeginY(n, posBegin);
+                layout.setEndY(n, posBegin + layout.height(n));
+                calcPos(layout, nodes.sub(n), layout.beginY(n), inverse);
+            } else if (nodes.typ(n) == NodeType.PREDICATE) {
+                layout.setLineY(n, posBegin + realHeight / 2);
+                layout.setBeginY(n, layout.lineY(n) - layout.height(n) / 2 
+                            - options.componentGapHeight() / 2 +1);
+                layout.setEndY(n, layout.lineY(n));
                 
-            } else if (n.typ == NodeType.RERUN) {
-                n.posLine.y = posBegin + realHeight / 2;
-                n.posBegin.y = posBegin;
-                n.posEnd.y = posBegin + n.size.getHeight();
-                if (n.itergraph != null) {
-                    n.itergraph.calcPos(
-                        options,
-                        posBegin + n.altSize.getHeight() / 2,
+            } else if (nodes.typ(n) == NodeType.RERUN) {
+                layout.setLineY(n, posBegin + realHeight / 2);
+                layout.setBeginY(n, posBegin);
+                layout.setEndY(n, posBegin + layout.height(n));
+                if (nodes.itergraph(n) != NodeStore.NONE) {
+                    calcPos(
+                        layout, nodes.itergraph(n),
+                        posBegin + layout.altHeight(n) / 2,
                         true);
                 }
-                n.sub.calcPos(options, n.posBegin.y, inverse);
-            } else if (n.typ == NodeType.ITER) {
+                calcPos(layout, nodes.sub(n), layout.beginY(n), inverse);
+            } else if (nodes.typ(n) == NodeType.ITER) {
                 if (realHeight == 0) {
-                    n.posLine.y = posBegin + realHeight / 2;
-                    n.posBegin.y = posBegin;
-                    n.posEnd.y = posBegin + n.size.getHeight();
+                    layout.setLineY(n, posBegin + realHeight / 2);
+                    layout.setBeginY(n, posBegin);
+                    layout.setEndY(n, posBegin + layout.height(n));
                 } else {
-                    n.posLine.y = posBegin + realHeight / 2;
-                    n.posBegin.y = posBegin
+                    layout.setLineY(n, posBegin + realHeight / 2);
+                    layout.setBeginY(n, posBegin
                             + (options.fontHeight() + options
-                                    .componentGapHeight()) / 2;
-                    n.posEnd.y = n.posBegin.y + n.size.getHeight();
+                                    .componentGapHeight()) / 2);
+                    layout.setEndY(n, layout.beginY(n) + layout.height(n));
                 }
-                n.sub.calcPos(options, n.posLine.y, inverse);
-            } else if (n.typ == NodeType.WRAP && firstLevel) {
-                n.posLine.y = posBegin + realHeight / 2;
-                n.posEnd.y = posBegin + n.size.getHeight();
-                posBegin = posBegin + n.size.getHeight();
-            } else if (n.typ == NodeType.ALT) {
-                n.posLine.y = posBegin + realHeight / 2;
-                n.posBegin.y = posBegin;
-                n.posEnd.y = posBegin + n.altSize.getHeight();
-
-                n.sub.calcPos(options, posBegin, inverse);
-                if (n.down != null) {
-                    n.down.calcPos(
-                        options,
-                        posBegin + n.size.getHeight(),
+                calcPos(layout, nodes.sub(n), layout.lineY(n), inverse);
+            } else if (nodes.typ(n) == NodeType.WRAP
+                && layout.isFirstLevel(node))
+            {
+                layout.setLineY(n, posBegin + realHeight / 2);
+                layout.setEndY(n, posBegin + layout.height(n));
+                posBegin = posBegin + layout.height(n);
+            } else if (nodes.typ(n) == NodeType.ALT) {
+                layout.setLineY(n, posBegin + realHeight / 2);
+                layout.setBeginY(n, posBegin);
+                layout.setEndY(n, posBegin + layout.altHeight(n));
+
+                calcPos(layout, nodes.sub(n), posBegin, inverse);
+                if (nodes.down(n) != NodeStore.NONE) {
+                    calcPos(
+                        layout, nodes.down(n),
+                        posBegin + layout.height(n),
                         inverse);
                 }
             }
-            if (n.up) {
+            if (nodes.isUp(n)) {
                 samelevel = false;
             }
-            n = n.next;
+            n = nodes.next(n);
         }
     }
 
@@ -479,119 +508,123 @@ public class Node {
      * sub-components for a recursive call, or if applicable, a call to the
      * {@link #drawComponentsInverse} method.
      */
-    public void drawComponents(Chart chart, Point p, Size s) {
-        Node n = this; // current node in the level
+    public static void drawComponents(
+        Chart chart, Layout layout, int node, Point p, Size s)
+    {
+        final NodeStore nodes = layout.getNodes();
+        int n = node; // current node in the level
         boolean samelevel = true; // next node in same level?
 
         ChartOptions options = chart.getOptions();
-        while (n != null && samelevel) {
-            switch (n.typ) {
+        while (n != NodeStore.NONE && samelevel) {
+            switch (nodes.typ(n)) {
             case EXCEPTION:
             case TERM:
             case NONTERM:
             case PREDICATE:
-                drawDefault(chart, p, n);
+                drawDefault(chart, layout, p, n);
                 break;
             case EPS:
-                drawEpsilon(chart, p, n);
+                drawEpsilon(chart, layout, p, n);
                 break;
             case OPT:
-                drawOption(chart, p, n);
+                drawOption(chart, layout, p, n);
                 break;
             case RERUN:
-                drawRerun(chart, p, n);
+                drawRerun(chart, layout, p, n);
                 break;
             case ITER:
-                drawIteration(chart, p, n);
+                drawIteration(chart, layout, p, n);
                 break;
             case WRAP:
-                drawWrap(chart, p, n);
+                drawWrap(chart, layout, p, n);
                 break;
             case ALT:
-                drawAlt(chart, p, n);
+                drawAlt(chart, layout, p, n);
                 break;
             }
 
-            if (n.up) {
+            if (nodes.isUp(n)) {
                 samelevel = false;
             }
-            if (n.next == null && firstLevel) {
+            if (nodes.next(n) == NodeStore.NONE && layout.isFirstLevel(node)) {
                 chart.drawLine(
                     p.x,
-                    n.posLine.y,
+                    layout.lineY(n),
                     p.x
                     + options.componentGapWidth() / 4,
-                    n.posLine.y);
+                    layout.lineY(n));
                 chart.drawArrow(
                     p.x
                     + options.componentGapWidth() / 4
                     + options.arrowSize(),
-                    n.posLine.y,
+                    layout.lineY(n),
                     p.x
                     + options.componentGapWidth() / 4
                     + options.arrowSize(),
-                    n.posLine.y,
+                    layout.lineY(n),
                     Chart.ArrowDirection.RIGHT);
             }
-            n = n.next;
+            n = nodes.next(n);
         }
     }
 
-	private void drawAlt(Chart chart, Point p, Node n) {
-		drawing(n);
+	private static void drawAlt(Chart chart, Layout layout, Point p, int n) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n);
 		ChartOptions options = chart.getOptions();
 		if (options.showBorders()) {
 		    chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y,
-		        n.altSize.getWidth(),
-		        n.altSize.getHeight());
+		        layout.beginY(n),
+		        layout.altWidth(n),
+		        layout.altHeight(n));
 		}
 
 		// the two short lines at the beginning and the end of the alt
 		// component
 		chart.drawLine(
 		    p.x,
-		    n.posLine.y,
+		    layout.lineY(n),
 		    p.x + options.arcSize() * 3 / 2,
-		    n.posLine.y);
+		    layout.lineY(n));
 		chart.drawLine(
 		    p.x
-		    + n.altSize.getWidth(),
-		    n.posLine.y,
+		    + layout.altWidth(n),
+		    layout.lineY(n),
 		    p.x
-		    + n.altSize.getWidth()
+		    + layout.altWidth(n)
 		    - options.arcSize() * 3 / 2,
-		    n.posLine.y);
-		Node a = n;
+		    layout.lineY(n));
+		int a = n;
 		boolean first = true;
-		while (a != null) {
+		while (a != NodeStore.NONE) {
 		    // the horizontal lines at the beginning and the end
 		    chart.drawLine(
 		        p.x
 		        + options.arcSize() * 3 / 2,
-		        a.sub.posLine.y,
+		        layout.lineY(nodes.sub(a)),
 		        p.x
-		        + (n.altSize.getWidth() - a.size.getWidth()) / 2,
-		        a.sub.posLine.y);
+		        + (layout.altWidth(n) - layout.width(a)) / 2,
+		        layout.lineY(nodes.sub(a)));
 		    chart.drawLine(
 		        p.x
 		        - options.arcSize() * 3 / 2
-		        + n.altSize.getWidth()
+		        + layout.altWidth(n)
 		        + 1,
-		        a.sub.posLine.y,
+		        layout.lineY(nodes.sub(a)),
 		        p.x
-		        + (n.altSize.getWidth() - a.size.getWidth()) / 2
-		        + a.size.getWidth(),
-		        a.sub.posLine.y);
+		        + (layout.altWidth(n) - layout.width(a)) / 2
+		        + layout.width(a),
+		        layout.lineY(nodes.sub(a)));
 		    // the first alternative draws different arcs
 		    if (first) {
-		        chart.drawArcCorner(p.x, n.posLine.y, 270);
+		        chart.drawArcCorner(p.x, layout.lineY(n), 270);
 		        chart.drawArcCorner(
 		        p.x
-		        + n.altSize.getWidth()
+		        + layout.altWidth(n)
 		        - options.arcSize(),
-		        n.posLine.y,
+		        layout.lineY(n),
 		        180);
 		        first = false;
 		    } else {
@@ -599,60 +632,62 @@ public class Node {
 		        chart.drawArcCorner(
 		            p.x
 		            + options.arcSize(),
-		            a.sub.posLine.y
+		            layout.lineY(nodes.sub(a))
 		            - options.arcSize(),
 		            90);
 		        chart.drawLine(
 		            p.x
 		            + options.arcSize(),
-		            n.posLine.y
+		            layout.lineY(n)
 		            + options.arcSize() / 2,
 		            p.x
 		            + options.arcSize(),
-		            a.posLine.y
+		            layout.lineY(a)
 		            - options.arcSize() / 2
 		            + options.symbolGapHeight() - 2);
 		        chart.drawArcCorner(
 		            p.x
 		            - options.arcSize() * 2
-		            + n.altSize.getWidth(),
-		            a.sub.posLine.y
+		            + layout.altWidth(n),
+		            layout.lineY(nodes.sub(a))
 		            - options.arcSize(),
 		            0);
 		        chart.drawLine(
 		            p.x
 		            - options.arcSize()
-		            + n.altSize.getWidth(),
-		            n.posLine.y
+		            + layout.altWidth(n),
+		            layout.lineY(n)
 		            + options.arcSize() / 2,
 		            p.x
 		            - options.arcSize()
-		            + n.altSize.getWidth(),
-		            a.posLine.y
+		            + layout.altWidth(n),
+		            layout.lineY(a)
 		            - options.arcSize() / 2
 		            + options.symbolGapHeight()
 		            - 2);
 		    }
-		    a.sub.drawComponents(
+		    drawComponents(
 		        chart,
+		        layout, nodes.sub(a),
 		        new Point(
 		            p.x
-		            + (n.altSize.getWidth() - a.size.getWidth()) / 2,
-		            a.posEnd.y),
-		        a.size);
-		    a = a.down;
+		            + (layout.altWidth(n) - layout.width(a)) / 2,
+		            layout.endY(a)),
+		        layout.size(a));
+		    a = nodes.down(a);
 		}
-		p.x += n.altSize.getWidth();
+		p.x += layout.altWidth(n);
 	}
 
-	private void drawing(Node n) {
-		drawing(n, false);		
+	private static void drawing(NodeStore nodes, int n) {
+		drawing(nodes, n, false);		
 	}
 
-	private void drawing(Node n, boolean inverse) {
+	private static void drawing(NodeStore nodes, int n, boolean inverse) {
 		if(Grammar.TRACE) {
-			String label = n.sym!=null?n.sym.name: n.typ.name();
-			label+= "(" + n.n + ")";
+			final Symbol symbol = nodes.symbol(n);
+			String label = symbol!=null?symbol.name: nodes.typ(n).name();
+			label+= "(" + n + ")";
 			if(inverse) {
 				label+="-i";
 			}
@@ -660,52 +695,53 @@ public class Node {
 		}
 	}
 
-	private void drawWrap(Chart chart, Point p, Node n) {
-		drawing(n);
+	private static void drawWrap(Chart chart, Layout layout, Point p, int n) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n);
 		
 		ChartOptions options = chart.getOptions();
-		if (n.size.getHeight() != 0 && n.next != null) {
+		if (layout.height(n) != 0 && nodes.next(n) != NodeStore.NONE) {
 		    // the short horizontal line after the first component
 		    chart.drawLine(
 		        p.x,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + 1,
-		        n.posLine.y);
+		        layout.lineY(n));
 		    // the short horizontal line at the beginning of the second
 		    // component
 		    chart.drawLine(
 		        options.initialX(),
-		        n.next.posLine.y,
+		        layout.lineY(nodes.next(n)),
 		        options.initialX()
 		        - options.componentGapWidth() / 4,
-		        n.next.posLine.y);
+		        layout.lineY(nodes.next(n)));
 		    // the quarter Arcs
 		    chart.drawArcCorner(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        - options.arcSize() / 2,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        270);
 		    chart.drawArcCorner(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        - options.arcSize() / 2,
-		        n.posEnd.y
+		        layout.endY(n)
 		        - options.arcSize(),
 		        0);
 		    chart.drawArcCorner(
 		        options.initialX()
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2,
-		        n.posEnd.y,
+		        layout.endY(n),
 		        180);
 		    chart.drawArcCorner(
 		        options.initialX()
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2,
-		        n.next.posLine.y
+		        layout.lineY(nodes.next(n))
 		        - options.arcSize(),
 		        90);
 		    // the short vertical lines between the quarter Arcs
@@ -713,24 +749,24 @@ public class Node {
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posLine.y
+		        layout.lineY(n)
 		        + options.arcSize() / 2,
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posEnd.y
+		        layout.endY(n)
 		        - options.arcSize() / 2
 		        + 1);
 		    chart.drawLine(
 		        options.initialX()
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2,
-		        n.posEnd.y
+		        layout.endY(n)
 		        + options.arcSize() / 2,
 		        options.initialX()
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2,
-		        n.next.posLine.y
+		        layout.lineY(nodes.next(n))
 		        - options.arcSize() / 2
 		        + 1);
 		    // the long horizontal line in the middle oft the two
@@ -738,45 +774,46 @@ public class Node {
 		    chart.drawLine(
 		        p.x
 		        + options.componentGapWidth() / 4 + 1,
-		        n.posEnd.y,
+		        layout.endY(n),
 		        options.initialX()
 		        - options.componentGapWidth() / 4,
-		        n.posEnd.y);
+		        layout.endY(n));
 
 		    p.x = options.initialX();
 		}
 	}
 
-	private void drawIteration(Chart chart, Point p, Node n) {
-		drawing(n);
+	private static void drawIteration(Chart chart, Layout layout, Point p, int n) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n);
 		ChartOptions options = chart.getOptions();
 		if (options.showBorders()) {
 		    chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y,
-		        n.size.getWidth(),
-		        n.size.getHeight());
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n));
 		}
-		ChartLayout layout = options.iterationLayout();
+		ChartLayout iterationLayout = options.iterationLayout();
 		if(options.iterationLayout() == ChartLayout.BEST) {
-			if(n.sub.typ.matches(NodeType.ALT)) {
-				layout = ChartLayout.LEFT_TO_RIGHT;
+			if(nodes.typ(nodes.sub(n)).matches(NodeType.ALT)) {
+				iterationLayout = ChartLayout.LEFT_TO_RIGHT;
 			} else {
-				int count = countChildren(n.sub);
-				layout = count > 1? ChartLayout.LEFT_TO_RIGHT: 
+				int count = countChildren(nodes, nodes.sub(n));
+				iterationLayout = count > 1? ChartLayout.LEFT_TO_RIGHT: 
 									ChartLayout.RIGHT_TO_LEFT;
 			}
 		}
 		
-		if(layout == ChartLayout.LEFT_TO_RIGHT) {
+		if(iterationLayout == ChartLayout.LEFT_TO_RIGHT) {
 		 // the quarter Arcs
-		    chart.drawArcCorner(p.x, n.posLine.y, 270);
+		    chart.drawArcCorner(p.x, layout.lineY(n), 270);
 
 		    chart.drawArcCorner(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.sub.posLine.y
+		        layout.lineY(nodes.sub(n))
 		        - options.arcSize(),
 		        90);
 		    
@@ -784,16 +821,16 @@ public class Node {
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() * 3 / 2
-		        + n.size.getWidth(),
-		        n.sub.posLine.y - options.arcSize(),
+		        + layout.width(n),
+		        layout.lineY(nodes.sub(n)) - options.arcSize(),
 		        0);
 		    
 		    chart.drawArcCorner(
 		            p.x
 		            - options.componentGapWidth() / 4
 		            - options.arcSize() / 2
-		            + n.size.getWidth(),
-		            n.posLine.y,
+		            + layout.width(n),
+		            layout.lineY(n),
 		            180);
 
 		    //the two short vertical lines between the quarter Arcs
@@ -801,26 +838,26 @@ public class Node {
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posLine.y
+		        layout.lineY(n)
 		        + options.arcSize() / 2,
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.sub.posLine.y
+		        layout.lineY(nodes.sub(n))
 		        - options.arcSize() / 2
 		        + 1);
 		    chart.drawLine(
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2
-		        + n.size.getWidth(),
-		        n.posLine.y
+		        + layout.width(n),
+		        layout.lineY(n)
 		        + options.arcSize() / 2,
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2
-		        + n.size.getWidth(),
-		        n.sub.posLine.y
+		        + layout.width(n),
+		        layout.lineY(nodes.sub(n))
 		        - options.arcSize() / 2
 		        + 1);
 		    // the two short horizontal lines between the quater Arcs and
@@ -830,57 +867,58 @@ public class Node {
 		        + options.componentGapWidth() / 4
 		        + options.arcSize()
 		        - 1,
-		        n.sub.posLine.y,
+		        layout.lineY(nodes.sub(n)),
 		        p.x
 		        + options.componentGapWidth(),
-		        n.sub.posLine.y);
+		        layout.lineY(nodes.sub(n)));
 		    chart.drawLine(
 		        p.x
 		        - options.componentGapWidth()
-		        + n.size.getWidth(),
-		        n.sub.posLine.y,
+		        + layout.width(n),
+		        layout.lineY(nodes.sub(n)),
 		        p.x
-		        + n.size.getWidth()
+		        + layout.width(n)
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() + 1,
-		        n.sub.posLine.y);
+		        layout.lineY(nodes.sub(n)));
 		    // the long horizontal line in the middle
 		    chart.drawLine(
 		        p.x,
-		        n.posLine.y,
-		        p.x + n.size.getWidth(),
-		        n.posLine.y);
+		        layout.lineY(n),
+		        p.x + layout.width(n),
+		        layout.lineY(n));
 
-		    n.sub.drawComponents(
+		    drawComponents(
 		        chart,
+		        layout, nodes.sub(n),
 		        new Point(
 		                p.x
 		                + options.componentGapWidth() / 2
 		                + options.arcSize(),
 		            0),
-		        n.size);
+		        layout.size(n));
 		    
 		    // the quarter Arcs                    
 		    chart.drawArcCorner(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.sub.posLine.y,
+		        layout.lineY(nodes.sub(n)),
 		        180);
 
 		    chart.drawArcCorner(
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() * 3 / 2
-		        + n.size.getWidth(),
-		        n.sub.posLine.y,
+		        + layout.width(n),
+		        layout.lineY(nodes.sub(n)),
 		        270);
 		        
 		    chart.drawArcCorner(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posLine.y + n.size.getHeight() - options.symbolGapHeight()
+		        layout.lineY(n) + layout.height(n) - options.symbolGapHeight()
 		        - options.arcSize(),
 		        90);
 
@@ -888,8 +926,8 @@ public class Node {
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() * 3 / 2
-		        + n.size.getWidth(),
-		        n.posLine.y + n.size.getHeight() - options.symbolGapHeight()
+		        + layout.width(n),
+		        layout.lineY(n) + layout.height(n) - options.symbolGapHeight()
 		        - options.arcSize(),
 		        0);
 		    // the short vertical lines between the quarter Arcs
@@ -897,25 +935,25 @@ public class Node {
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.sub.posLine.y
+		        layout.lineY(nodes.sub(n))
 		        + options.arcSize() / 2,
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posLine.y + n.size.getHeight() - options.symbolGapHeight() 
+		        layout.lineY(n) + layout.height(n) - options.symbolGapHeight() 
 		        - options.arcSize() / 2);
 		    chart.drawLine(
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2
-		        + n.size.getWidth(),
-		        n.sub.posLine.y
+		        + layout.width(n),
+		        layout.lineY(nodes.sub(n))
 		        + options.arcSize() / 2,
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2
-		        + n.size.getWidth(),
-		        n.posLine.y + n.size.getHeight() - options.symbolGapHeight() 
+		        + layout.width(n),
+		        layout.lineY(n) + layout.height(n) - options.symbolGapHeight() 
 		        - options.arcSize() / 2
 		        );
 		    // the long horizontal line between the quarter Arcs
@@ -923,67 +961,67 @@ public class Node {
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize(),
-		        n.posLine.y + n.size.getHeight() - options.symbolGapHeight(),
+		        layout.lineY(n) + layout.height(n) - options.symbolGapHeight(),
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize()
-		        + n.size.getWidth()
+		        + layout.width(n)
 		        + 1,
-		        n.posLine.y + n.size.getHeight() - options.symbolGapHeight());
+		        layout.lineY(n) + layout.height(n) - options.symbolGapHeight());
 		} else {
 		// the quarter Arcs
 		chart.drawArcCorner(
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.sub.posLine.y
+		    layout.lineY(nodes.sub(n))
 		    - options.arcSize(),
 		    90);
 		chart.drawArcCorner(
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posLine.y,
+		    layout.lineY(n),
 		    180);
 		chart.drawArcCorner(
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() * 3 / 2
-		    + n.size.getWidth(),
-		    n.sub.posLine.y - options.arcSize(),
+		    + layout.width(n),
+		    layout.lineY(nodes.sub(n)) - options.arcSize(),
 		    0);
 		chart.drawArcCorner(
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() * 3 / 2
-		    + n.size.getWidth(),
-		    n.posLine.y,
+		    + layout.width(n),
+		    layout.lineY(n),
 		    270);
 		// the short vertical lines between the quarter Arcs
 		chart.drawLine(
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posLine.y
+		    layout.lineY(n)
 		    + options.arcSize() / 2,
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.sub.posLine.y
+		    layout.lineY(nodes.sub(n))
 		    - options.arcSize() / 2
 		    + 1);
 		chart.drawLine(
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() / 2
-		    + n.size.getWidth(),
-		    n.posLine.y
+		    + layout.width(n),
+		    layout.lineY(n)
 		    + options.arcSize() / 2,
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() / 2
-		    + n.size.getWidth(),
-		    n.sub.posLine.y
+		    + layout.width(n),
+		    layout.lineY(nodes.sub(n))
 		    - options.arcSize() / 2
 		    + 1);
 		// the two short horizontal lines between the quater Arcs and
@@ -993,82 +1031,84 @@ public class Node {
 		    + options.componentGapWidth() / 4
 		    + options.arcSize()
 		    - 1,
-		    n.sub.posLine.y,
+		    layout.lineY(nodes.sub(n)),
 		    p.x
 		    + options.componentGapWidth(),
-		    n.sub.posLine.y);
+		    layout.lineY(nodes.sub(n)));
 		chart.drawLine(
 		    p.x
 		    - options.componentGapWidth()
-		    + n.size.getWidth(),
-		    n.sub.posLine.y,
+		    + layout.width(n),
+		    layout.lineY(nodes.sub(n)),
 		    p.x
-		    + n.size.getWidth()
+		    + layout.width(n)
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() + 1,
-		    n.sub.posLine.y);
+		    layout.lineY(nodes.sub(n)));
 		// the long horizontal line in the middle
 		chart.drawLine(
 		    p.x,
-		    n.posLine.y,
-		    p.x + n.size.getWidth(),
-		    n.posLine.y);
+		    layout.lineY(n),
+		    p.x + layout.width(n),
+		    layout.lineY(n));
 
-		n.sub.drawComponentsInverse(
+		drawComponentsInverse(
 		    chart,
+		    layout, nodes.sub(n),
 		    new Point(
-		        p.x - options.componentGapWidth() + n.size.getWidth(),
+		        p.x - options.componentGapWidth() + layout.width(n),
 		        0),
-		    n.size);
+		    layout.size(n));
 		}
-		p.x += n.size.getWidth();
+		p.x += layout.width(n);
 	}
 
-	private int countChildren(Node node) {
+	private static int countChildren(NodeStore nodes, int node) {
 	    int count = 0;
-	    while (node != null) {
-            if (node.up) {
-                node = null;
+	    while (node != NodeStore.NONE) {
+            if (nodes.isUp(node)) {
+                node = NodeStore.NONE;
             } else {
-                node = node.next;
+                node = nodes.next(node);
                 count++;
             }
         }
 	    return count;
 	}
 	
-	private void drawRerun(Chart chart, Point p, Node n) {
-		drawing(n);
+	private static void drawRerun(Chart chart, Layout layout, Point p, int n) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n);
 		ChartOptions options = chart.getOptions();
 		
-		if (n.itergraph == null) {
+		if (nodes.itergraph(n) == NodeStore.NONE) {
 		    if (options.showBorders()) {
 		        chart.drawRectangle(
 		            p.x,
-		            n.posBegin.y,
-		            n.size.getWidth(),
-		            n.size.getHeight());
+		            layout.beginY(n),
+		            layout.width(n),
+		            layout.height(n));
 		    }
 
 		    // the two short lines at the beginning and the end
 		    chart.drawLine(
 		        p.x,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        p.x + options.componentGapWidth(),
-		        n.posLine.y);
+		        layout.lineY(n));
 		    chart.drawLine(
 		        p.x
-		        + n.size.getWidth(),
-		        n.posLine.y,
+		        + layout.width(n),
+		        layout.lineY(n),
 		        p.x
-		        + n.size.getWidth() - options.componentGapWidth(),
-		        n.posLine.y);
+		        + layout.width(n) - options.componentGapWidth(),
+		        layout.lineY(n));
 		    // the quarter Arcs
 		    chart.drawArcCorner(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posEnd.y
+		        layout.endY(n)
 		        - options.componentGapHeight() / 2
 		        - options.arcSize(),
 		        90);
@@ -1076,14 +1116,14 @@ public class Node {
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        180);
 		    chart.drawArcCorner(
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() * 3 / 2
-		        + n.size.getWidth(),
-		        n.posEnd.y
+		        + layout.width(n),
+		        layout.endY(n)
 		        - options.componentGapHeight() / 2
 		        - options.arcSize(),
 		        0);
@@ -1091,34 +1131,34 @@ public class Node {
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() * 3 / 2
-		        + n.size.getWidth(),
-		        n.posLine.y,
+		        + layout.width(n),
+		        layout.lineY(n),
 		        270);
 		    // the short vertical lines between the quarter Arcs
 		    chart.drawLine(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posLine.y
+		        layout.lineY(n)
 		        + options.arcSize() / 2,
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posEnd.y
+		        layout.endY(n)
 		        - options.componentGapHeight() / 2
 		        - options.arcSize() / 2 + 1);
 		    chart.drawLine(
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2
-		        + n.size.getWidth(),
-		        n.posLine.y
+		        + layout.width(n),
+		        layout.lineY(n)
 		        + options.arcSize() / 2,
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2
-		        + n.size.getWidth(),
-		        n.posEnd.y
+		        + layout.width(n),
+		        layout.endY(n)
 		        - options.componentGapHeight() / 2
 		        - options.arcSize() / 2 + 1);
 		    // the the long horizontal line between the quarter Arcs
@@ -1126,39 +1166,40 @@ public class Node {
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() - 1,
-		        n.posEnd.y
+		        layout.endY(n)
 		        - options.componentGapHeight() / 2,
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize()
-		        + n.size.getWidth()
+		        + layout.width(n)
 		        + 1,
-		        n.posEnd.y - options.componentGapHeight() / 2);
+		        layout.endY(n) - options.componentGapHeight() / 2);
 
-		    n.sub.drawComponents(
+		    drawComponents(
 		        chart,
+		        layout, nodes.sub(n),
 		        new Point(p.x + options.componentGapWidth(), 0),
-		        n.size);
-		    p.x += n.size.getWidth();
+		        layout.size(n));
+		    p.x += layout.width(n);
 		} else {
 		    if (options.showBorders()) {
 		        chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y,
-		        n.size.getWidth(),
-		        n.size.getHeight());
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n));
 		    }
 
-		    int nodeWidth = n.size.getWidth();
+		    int nodeWidth = layout.width(n);
 		    int subNodeWidth = 0;
-		    Node sn = n.sub;
+		    int sn = nodes.sub(n);
 		    int nnodes = 0;
-		    while (sn != null) {
-		        subNodeWidth += sn.size.getWidth();
-		        if (sn.up) {
-		            sn = null;
+		    while (sn != NodeStore.NONE) {
+		        subNodeWidth += layout.width(sn);
+		        if (nodes.isUp(sn)) {
+		            sn = NodeStore.NONE;
 		        } else {
-		            sn = sn.next;
+		            sn = nodes.next(sn);
 		            nnodes++;
 		        }
 		    }
@@ -1178,67 +1219,67 @@ public class Node {
 
 		    // the two short lines at the beginning and the end of the
 		    // first component
-		    chart.drawLine(p.x, n.posLine.y, center, n.posLine.y);
+		    chart.drawLine(p.x, layout.lineY(n), center, layout.lineY(n));
 	
 		    chart.drawLine(
 		        center + subNodeWidth,
-		        n.posLine.y,
-		        p.x + n.size.getWidth(),
-		        n.posLine.y);
+		        layout.lineY(n),
+		        p.x + layout.width(n),
+		        layout.lineY(n));
 		    // the quarter Arcs
 		    chart.drawArcCorner(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.itergraph.posLine.y
+		        layout.lineY(nodes.itergraph(n))
 		        - options.arcSize(),
 		        90);
 		    chart.drawArcCorner(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        180);
 		    chart.drawArcCorner(
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() * 3 / 2
-		        + n.size.getWidth(),
-		        n.itergraph.posLine.y
+		        + layout.width(n),
+		        layout.lineY(nodes.itergraph(n))
 		        - options.arcSize(),
 		        0);
 		    chart.drawArcCorner(
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() * 3 / 2
-		        + n.size.getWidth(),
-		        n.posLine.y,
+		        + layout.width(n),
+		        layout.lineY(n),
 		        270);
 		    // the short vertical lines between the quarter Arcs
 		    chart.drawLine(
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.posLine.y
+		        layout.lineY(n)
 		        + options.arcSize() / 2,
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize() / 2,
-		        n.itergraph.posLine.y
+		        layout.lineY(nodes.itergraph(n))
 		        - options.arcSize() / 2
 		        + 1);
 		    chart.drawLine(
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2
-		        + n.size.getWidth(),
-		        n.posLine.y
+		        + layout.width(n),
+		        layout.lineY(n)
 		        + options.arcSize() / 2,
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize() / 2
-		        + n.size.getWidth(),
-		        n.itergraph.posLine.y
+		        + layout.width(n),
+		        layout.lineY(nodes.itergraph(n))
 		        - options.arcSize() / 2
 		        + 1);
 		    // the two short lines at the beginning and the end of the
@@ -1247,78 +1288,81 @@ public class Node {
 		        p.x
 		        + options.componentGapWidth() / 4
 		        + options.arcSize(),
-		        n.itergraph.posLine.y,
+		        layout.lineY(nodes.itergraph(n)),
 		        p.x
-		        + n.size.getWidth() / 2
-		        - n.iterSize.getWidth() / 2
+		        + layout.width(n) / 2
+		        - layout.iterWidth(n) / 2
 		        - 1,
-		        n.itergraph.posLine.y);
+		        layout.lineY(nodes.itergraph(n)));
 		    chart.drawLine(
 		        p.x
-		        + n.size.getWidth() / 2
-		        + n.iterSize.getWidth() / 2
+		        + layout.width(n) / 2
+		        + layout.iterWidth(n) / 2
 		        + 1,
-		        n.itergraph.posLine.y,
+		        layout.lineY(nodes.itergraph(n)),
 		        p.x
 		        - options.componentGapWidth() / 4
 		        - options.arcSize()
-		        + n.size.getWidth()
+		        + layout.width(n)
 		        + 1,
-		        n.itergraph.posLine.y);
+		        layout.lineY(nodes.itergraph(n)));
 
-		    n.itergraph.drawComponentsInverse(
+		    drawComponentsInverse(
 		        chart,
+		        layout, nodes.itergraph(n),
 		        new Point(
 		            p.x
-		            + n.size.getWidth() / 2
-		            + n.iterSize.getWidth() / 2,
-		            n.posEnd.y),
-		        n.size);
+		            + layout.width(n) / 2
+		            + layout.iterWidth(n) / 2,
+		            layout.endY(n)),
+		        layout.size(n));
 
-		    n.sub.drawComponents(
+		    drawComponents(
 		        chart,
-		        new Point(center, n.posEnd.y),
-		        n.size);
+		        layout, nodes.sub(n),
+		        new Point(center, layout.endY(n)),
+		        layout.size(n));
 
-		    p.x += n.size.getWidth();
+		    p.x += layout.width(n);
 		}
 	}
 
-	private void drawOption(Chart chart, Point p, Node n) {
-		drawing(n);
+	private static void drawOption(Chart chart, Layout layout, Point p, int n) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n);
 		ChartOptions options = chart.getOptions();
 		if (options.showBorders()) {
 		    chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y,
-		        n.size.getWidth(),
-		        n.size.getHeight());
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n));
 		}
 
 		// the two short lines at the beginning and the end
 		chart.drawLine(
 		    p.x,
-		    n.posLine.y,
+		    layout.lineY(n),
 		    p.x + options.componentGapWidth(),
-		    n.posLine.y);
+		    layout.lineY(n));
 		chart.drawLine(
-		    p.x + n.size.getWidth(),
-		    n.posLine.y,
-		    p.x + n.size.getWidth() - options.componentGapWidth(),
-		    n.posLine.y);
+		    p.x + layout.width(n),
+		    layout.lineY(n),
+		    p.x + layout.width(n) - options.componentGapWidth(),
+		    layout.lineY(n));
 
 		// the quarter Arcs
 		chart.drawArcCorner(
 		    p.x
 		    + options.componentGapWidth() / 4
 		    - options.arcSize() / 2,
-		    n.posLine.y,
+		    layout.lineY(n),
 		    270);
 		chart.drawArcCorner(
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posEnd.y
+		    layout.endY(n)
 		    - options.arcSize()
 		    - options.componentGapHeight() / 2,
 		    90);
@@ -1326,15 +1370,15 @@ public class Node {
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() / 2
-		    + n.size.getWidth(),
-		    n.posLine.y,
+		    + layout.width(n),
+		    layout.lineY(n),
 		    180);
 		chart.drawArcCorner(
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() * 3 / 2
-		    + n.size.getWidth(),
-		    n.posEnd.y
+		    + layout.width(n),
+		    layout.endY(n)
 		    - options.arcSize()
 		    - options.componentGapHeight() / 2,
 		    0);
@@ -1343,25 +1387,25 @@ public class Node {
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posLine.y
+		    layout.lineY(n)
 		    + options.arcSize() / 2,
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posEnd.y
+		    layout.endY(n)
 		    - options.arcSize() / 2
 		    - options.componentGapHeight() / 2 + 1);
 		chart.drawLine(
 		    p.x
 		    - options.componentGapWidth() / 4
-		    - options.arcSize() / 2 + n.size.getWidth(),
-		    n.posLine.y
+		    - options.arcSize() / 2 + layout.width(n),
+		    layout.lineY(n)
 		    + options.arcSize() / 2,
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() / 2
-		    + n.size.getWidth(),
-		    n.posEnd.y
+		    + layout.width(n),
+		    layout.endY(n)
 		    - options.arcSize() / 2
 		    - options.componentGapHeight() / 2 + 1);
 		// the the long horizontal line between the quarter Arcs
@@ -1369,154 +1413,165 @@ public class Node {
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize(),
-		    n.posEnd.y
+		    layout.endY(n)
 		    - options.componentGapHeight() / 2,
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize()
-		    + n.size.getWidth()
+		    + layout.width(n)
 		    + 1,
-		    n.posEnd.y - options.componentGapHeight() / 2);
+		    layout.endY(n) - options.componentGapHeight() / 2);
 
-		n.sub.drawComponents(
+		drawComponents(
 		    chart,
+		    layout, nodes.sub(n),
 		    new Point(p.x + options.componentGapWidth(), 0),
-		    n.size);
-		p.x += n.size.getWidth();
+		    layout.size(n));
+		p.x += layout.width(n);
 	}
 
-	private void drawEpsilon(Chart chart, Point p, Node n) {
-		drawing(n);
+	private static void drawEpsilon(Chart chart, Layout layout, Point p, int n) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n);
 		ChartOptions options = chart.getOptions();
 		if (options.showBorders()) {
 		    chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y,
-		        n.size.getWidth(),
-		        n.size.getHeight());
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n));
 		}
 
 		chart.drawLine(
 		    p.x,
-		    n.posLine.y,
-		    p.x + n.size.getWidth(),
-		    n.posLine.y);
+		    layout.lineY(n),
+		    p.x + layout.width(n),
+		    layout.lineY(n));
 	}
 
-	private Point drawDefault(Chart chart, Point p, Node n) {
-		drawing(n);
+	private static Point drawDefault(Chart chart, Layout layout, Point p, int n) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n);
 		ChartOptions options = chart.getOptions();
 		if (options.showBorders()) {
 		    chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y
+		        layout.beginY(n)
 		        - options.componentGapHeight() / 2,
-		        n.size.getWidth(),
-		        n.size.getHeight());
+		        layout.width(n),
+		        layout.height(n));
 		}
-		n.textBox = new TextBox(chart, n.sym.name, n.typ);
-		if (n.typ.matches(NodeType.TERM, NodeType.EXCEPTION)) {
+		TextBox textBox = new TextBox(options, nodes.symbol(n).name, nodes.typ(n));
+		if (nodes.typ(n).matches(NodeType.TERM, NodeType.EXCEPTION)) {
 		    // the quarter Arcs
-		    final int arcSize = (n.size.getHeight() - options
+		    final int arcSize = (layout.height(n) - options
 		            .componentGapHeight()) / 2;
 
-		    n.textBox.drawAtCenter(
-		        p.x, n.posBegin.y,
-		        n.size.getWidth() - arcSize,
-		        n.size.getHeight() - options.componentGapHeight());		  		   
+		    textBox.drawAtCenter(
+		        chart,
+		        p.x, layout.beginY(n),
+		        layout.width(n) - arcSize,
+		        layout.height(n) - options.componentGapHeight());		  		   
 
 		    final int quarterHeight =
-		        (n.size.getHeight() - options.componentGapHeight()) / 4;
+		        (layout.height(n) - options.componentGapHeight()) / 4;
 		    
 		    chart.drawRoundRectangle(
 		            p.x, 
-		            n.posBegin.y, 
-		            n.size.getWidth(), 
-		            n.posEnd.y - n.posBegin.y + 
+		            layout.beginY(n), 
+		            layout.width(n), 
+		            layout.endY(n) - layout.beginY(n) + 
 		            quarterHeight - arcSize / 2 + 1, 
 		            arcSize, 
 		            arcSize);		    
-		} else if(n.typ == NodeType.PREDICATE) {
+		} else if(nodes.typ(n) == NodeType.PREDICATE) {
 		 // the quarter Arcs
-		    final int arcSize = (n.size.getHeight() - options
+		    final int arcSize = (layout.height(n) - options
 		            .componentGapHeight()) / 2;
 
-		    n.textBox.drawAtCenter(
-		        p.x, n.posBegin.y,
-		        n.size.getWidth() - arcSize,
-		        n.size.getHeight() - options.componentGapHeight());
+		    textBox.drawAtCenter(
+		        chart,
+		        p.x, layout.beginY(n),
+		        layout.width(n) - arcSize,
+		        layout.height(n) - options.componentGapHeight());
 
 		    // the long horizontal lines
 		    chart.drawLine(
 		        p.x,
-		        n.posEnd.y,
-		        p.x + n.size.getWidth(),
-		        n.posEnd.y);
+		        layout.endY(n),
+		        p.x + layout.width(n),
+		        layout.endY(n));
 		} else {
-		    n.posBegin.x = p.x;
-		    n.posEnd.x = p.x + n.size.getWidth();
+		    chart.drawHotspot(
+		        nodes.symbol(n).name,
+		        p.x,
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n));
 		    chart.drawRectangle(
-		        n.posBegin.x,
-		        n.posBegin.y,
-		        n.size.getWidth(),
-		        n.size.getHeight() - options.componentGapHeight());
-
-		    n.textBox.drawAtCenter(
-		        n.posBegin.x,
-		        n.posBegin.y,
-		        n.size.getWidth(),
-		        n.size.getHeight() - options.componentGapHeight());
+		        p.x,
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n) - options.componentGapHeight());
+
+		    textBox.drawAtCenter(
+		        chart,
+		        p.x,
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n) - options.componentGapHeight());
 		}
 		if (Grammar.TRACE) {
-		    System.out.println("text=" + n.sym.name);
-		    System.out.println("n.posBegin.y=" + n.posBegin.y);
+		    System.out.println("text=" + nodes.symbol(n).name);
+		    System.out.println("layout.beginY(n)=" + layout.beginY(n));
 		    System.out.println(
 		        "chart.getFontHeight()=" + options.fontHeight());
-		    System.out.println("n.size=" + n.size.getHeight());
+		    System.out.println("n.size=" + layout.height(n));
 		    System.out.println(
 		        "2="
-		        + (n.size.getHeight() - options.componentGapHeight()));
+		        + (layout.height(n) - options.componentGapHeight()));
 		    System.out.println(
 		        "3="
-		        + (n.size.getHeight()
+		        + (layout.height(n)
 		           - options.componentGapHeight()
 		           - options.fontHeight()) / 2);
 		}
-		if(n.typ != NodeType.PREDICATE) {
+		if(nodes.typ(n) != NodeType.PREDICATE) {
 			chart.drawArrow(
 			    p.x,
-			    n.posLine.y,
+			    layout.lineY(n),
 			    p.x,
-			    n.posLine.y,
+			    layout.lineY(n),
 			    Chart.ArrowDirection.RIGHT);
 		}
-		p.x += n.size.getWidth();
+		p.x += layout.width(n);
+		final int next = nodes.next(n);
 		// draw lines between t and nt nodes
-		if (!n.up
-		    && n.next != null
-		        && (n.next.typ.matches(NodeType.TERM,
+		if (!nodes.isUp(n)
+		    && next != NodeStore.NONE
+		        && (nodes.typ(next).matches(NodeType.TERM,
 		                               NodeType.NONTERM,
 		                               NodeType.EXCEPTION,
 		                               NodeType.PREDICATE)))
 		{
 		    chart.drawArrow(
 		        p.x,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        p.x + options.componentGapWidth() / 2,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        Chart.ArrowDirection.RIGHT);
 		    p.x += options.componentGapWidth() / 2;
 		}
-		if (!n.up
-		    && n.next != null
-		    && n.next.typ == NodeType.WRAP
-		    && n.next.size.getHeight() == 0)
+		if (!nodes.isUp(n)
+		    && next != NodeStore.NONE
+		    && nodes.typ(next) == NodeType.WRAP
+		    && layout.height(next) == 0)
 		{
 		    chart.drawArrow(
 		        p.x,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        p.x + options.componentGapWidth() / 2,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        Chart.ArrowDirection.RIGHT);
 		    p.x += options.componentGapWidth() / 2;
 		}
@@ -1527,92 +1582,99 @@ public class Node {
      * Draw the components from right to left. Needed if for example in an
      * iter-node.
      */
-    private void drawComponentsInverse(Chart chart, Point p, Size s) {
-        Node n = this; // current node in the level
+    private static void drawComponentsInverse(
+        Chart chart, Layout layout, int node, Point p, Size s)
+    {
+        final NodeStore nodes = layout.getNodes();
+        int n = node; // current node in the level
         boolean samelevel = true; // next node in same level?
         Point p1 = new Point(0, 0);
-        while (n != null && samelevel) {
-            p.x -= n.size.getWidth();
-            if (n.typ.matches(NodeType.TERM, NodeType.NONTERM, NodeType.EXCEPTION, NodeType.PREDICATE)) {
-                drawDefaultInverse(chart, p, n);
-            } else if (n.typ == NodeType.EPS) {
-                drawEpsilon(chart, p, n);
-            } else if(n.typ == NodeType.PREDICATE) {
-            } else if (n.typ == NodeType.OPT) {
-                drawOptionInverse(chart, p, n, p1);
-            } else if (n.typ == NodeType.RERUN) {
-                drawRerunInverse(chart, p, n, p1);
-            } else if (n.typ == NodeType.ITER) {
-                drawIterationReverse(chart, p, n, p1);
-            } else if (n.typ == NodeType.ALT) {
-                drawAltInverse(chart, p, n, p1);
+        while (n != NodeStore.NONE && samelevel) {
+            p.x -= layout.width(n);
+            if (nodes.typ(n).matches(NodeType.TERM, NodeType.NONTERM,
+                    NodeType.EXCEPTION, NodeType.PREDICATE))
+            {
+                drawDefaultInverse(chart, layout, p, n);
+            } else if (nodes.typ(n) == NodeType.EPS) {
+                drawEpsilon(chart, layout, p, n);
+            } else if(nodes.typ(n) == NodeType.PREDICATE) {
+            } else if (nodes.typ(n) == NodeType.OPT) {
+                drawOptionInverse(chart, layout, p, n, p1);
+            } else if (nodes.typ(n) == NodeType.RERUN) {
+                drawRerunInverse(chart, layout, p, n, p1);
+            } else if (nodes.typ(n) == NodeType.ITER) {
+                drawIterationReverse(chart, layout, p, n, p1);
+            } else if (nodes.typ(n) == NodeType.ALT) {
+                drawAltInverse(chart, layout, p, n, p1);
             }
-            if (n.up) {
+            if (nodes.isUp(n)) {
                 samelevel = false;
             }
-            n = n.next;
+            n = nodes.next(n);
         }
     }
 
-	private void drawAltInverse(Chart chart, Point p, Node n, Point p1) {
-		drawing(n, true);
+	private static void drawAltInverse(Chart chart, Layout layout, Point p, int n,
+			Point p1) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n, true);
 		ChartOptions options = chart.getOptions();
-		p.x -= n.altSize.getWidth() - n.size.getWidth();
+		p.x -= layout.altWidth(n) - layout.width(n);
 		if (options.showBorders()) {
 		    chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y,
-		        n.altSize.getWidth(),
-		        n.altSize.getHeight());
+		        layout.beginY(n),
+		        layout.altWidth(n),
+		        layout.altHeight(n));
 		}
 
 		// the two short lines at the beginning and the end of the
 		// alt component
 		chart.drawLine(
 		    p.x,
-		    n.posLine.y,
+		    layout.lineY(n),
 		    p.x
 		    + options.arcSize() * 3 / 2,
-		    n.posLine.y);
+		    layout.lineY(n));
 		chart.drawLine(
 		    p.x
-		    + n.altSize.getWidth(),
-		    n.posLine.y,
+		    + layout.altWidth(n),
+		    layout.lineY(n),
 		    p.x
-		    + n.altSize.getWidth()
+		    + layout.altWidth(n)
 		    - options.arcSize() * 3 / 2,
-		    n.posLine.y);
+		    layout.lineY(n));
 		p1.x = p.x + 2 * options.componentGapWidth();
 		p1.y = p1.y + options.componentGapHeight();
-		Node a = n;
+		int a = n;
 		boolean first = true;
-		while (a != null) {
+		while (a != NodeStore.NONE) {
 		    // the horizontal lines at the beginning and the end
 		    chart.drawLine(
 		        p.x
 		        + options.arcSize() * 3 / 2,
-		        a.sub.posLine.y,
+		        layout.lineY(nodes.sub(a)),
 		        p.x
-		        + (n.altSize.getWidth() - a.size.getWidth()) / 2,
-		        a.sub.posLine.y);
+		        + (layout.altWidth(n) - layout.width(a)) / 2,
+		        layout.lineY(nodes.sub(a)));
 		    chart.drawLine(
 		        p.x
 		        - options.arcSize() * 3 / 2
-		        + n.altSize.getWidth()
+		        + layout.altWidth(n)
 		        + 1,
-		        a.sub.posLine.y,
+		        layout.lineY(nodes.sub(a)),
 		        p.x
-		        + (n.altSize.getWidth() - a.size.getWidth()) / 2
-		        + a.size.getWidth(),
-		        a.sub.posLine.y);
+		        + (layout.altWidth(n) - layout.width(a)) / 2
+		        + layout.width(a),
+		        layout.lineY(nodes.sub(a)));
 		    // if the first Alternative draw differnt Arcs
 		    if (first) {
-		        chart.drawArcCorner(p.x, n.posLine.y, 270);
+		        chart.drawArcCorner(p.x, layout.lineY(n), 270);
 		        chart.drawArcCorner(
 		            p.x
-		            + n.altSize.getWidth()
+		            + layout.altWidth(n)
 		            - options.arcSize(),
-		            n.posLine.y,
+		            layout.lineY(n),
 		            180);
 		        first = false;
 		    } else {
@@ -1620,58 +1682,60 @@ public class Node {
 		        chart.drawArcCorner(
 		            p.x
 		            + options.arcSize(),
-		            a.sub.posLine.y
+		            layout.lineY(nodes.sub(a))
 		            - options.arcSize(),
 		            90);
 		        chart.drawLine(
 		            p.x
 		            + options.arcSize(),
-		            n.posLine.y
+		            layout.lineY(n)
 		            + options.arcSize() / 2,
 		            p.x
 		            + options.arcSize(),
-		            a.posLine.y
+		            layout.lineY(a)
 		            - options.arcSize() / 2
 		            + 1);
 		        chart.drawArcCorner(
 		            p.x
 		            - options.arcSize() * 2
-		            + n.altSize.getWidth(),
-		            a.sub.posLine.y
+		            + layout.altWidth(n),
+		            layout.lineY(nodes.sub(a))
 		            - options.arcSize(),
 		            0);
 		        chart.drawLine(
 		            p.x
 		            - options.arcSize()
-		            + n.altSize.getWidth(),
-		            n.posLine.y
+		            + layout.altWidth(n),
+		            layout.lineY(n)
 		            + options.arcSize() / 2,
 		            p.x
 		            - options.arcSize()
-		            + n.altSize.getWidth(),
-		            a.posLine.y
+		            + layout.altWidth(n),
+		            layout.lineY(a)
 		            - options.arcSize() / 2
 		            + 1);
 		    }
 		    Point pf =
 		        new Point(
 		            p.x
-		            + (n.altSize.getWidth() + a.size.getWidth()) / 2,
+		            + (layout.altWidth(n) + layout.width(a)) / 2,
 		            p1.y);
-		    a.sub.drawComponentsInverse(chart, pf, a.size);
-		    a = a.down;
+		    drawComponentsInverse(chart, layout, nodes.sub(a), pf, layout.size(a));
+		    a = nodes.down(a);
 		}
 	}
 
-	private void drawIterationReverse(Chart chart, Point p, Node n, Point p1) {
-		drawing(n, true);
+	private static void drawIterationReverse(Chart chart, Layout layout, Point p,
+			int n, Point p1) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n, true);
 		ChartOptions options = chart.getOptions();
 		if (options.showBorders()) {
 		    chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y,
-		        n.size.getWidth(),
-		        n.size.getHeight());
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n));
 		}
 
 		// the quarter Arcs
@@ -1679,55 +1743,55 @@ public class Node {
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.sub.posLine.y
+		    layout.lineY(nodes.sub(n))
 		    - options.arcSize(),
 		    90);
 		chart.drawArcCorner(
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posLine.y,
+		    layout.lineY(n),
 		    180);
 		chart.drawArcCorner(
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() * 3 / 2
-		    + n.size.getWidth(),
-		    n.sub.posLine.y
+		    + layout.width(n),
+		    layout.lineY(nodes.sub(n))
 		    - options.arcSize(),
 		    0);
 		chart.drawArcCorner(
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() * 3 / 2
-		    + n.size.getWidth(),
-		    n.posLine.y,
+		    + layout.width(n),
+		    layout.lineY(n),
 		    270);
 		// the short vertical lines between the quarter Arcs
 		chart.drawLine(
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posLine.y
+		    layout.lineY(n)
 		    + options.arcSize() / 2,
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.sub.posLine.y
+		    layout.lineY(nodes.sub(n))
 		    - options.arcSize() / 2
 		    + 1);
 		chart.drawLine(
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() / 2
-		    + n.size.getWidth(),
-		    n.posLine.y
+		    + layout.width(n),
+		    layout.lineY(n)
 		    + options.arcSize() / 2,
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() / 2
-		    + n.size.getWidth(),
-		    n.sub.posLine.y
+		    + layout.width(n),
+		    layout.lineY(nodes.sub(n))
 		    - options.arcSize() / 2
 		    + 1);
 		// the two short horizontal lines between the quater Arcs and
@@ -1737,62 +1801,64 @@ public class Node {
 		    + options.componentGapWidth() / 4
 		    + options.arcSize()
 		    - 1,
-		    n.sub.posLine.y,
+		    layout.lineY(nodes.sub(n)),
 		    p.x
 		    + options.componentGapWidth(),
-		    n.sub.posLine.y);
+		    layout.lineY(nodes.sub(n)));
 		chart.drawLine(
 		    p.x
 		    - options.componentGapWidth()
-		    + n.size.getWidth(),
-		    n.sub.posLine.y,
+		    + layout.width(n),
+		    layout.lineY(nodes.sub(n)),
 		    p.x
-		    + n.size.getWidth()
+		    + layout.width(n)
 		    - options.componentGapWidth() / 4
 		    - options.arcSize()
 		    + 1,
-		    n.sub.posLine.y);
+		    layout.lineY(nodes.sub(n)));
 		// the long horizontal line in the middle
 		chart.drawLine(
 		    p.x,
-		    n.posLine.y,
-		    p.x + n.size.getWidth(),
-		    n.posLine.y);
+		    layout.lineY(n),
+		    p.x + layout.width(n),
+		    layout.lineY(n));
 
 		p1.x = p.x + options.componentGapWidth();
-		n.sub.drawComponents(chart, p1, n.size);
+		drawComponents(chart, layout, nodes.sub(n), p1, layout.size(n));
 	}
 
-	private void drawRerunInverse(Chart chart, Point p, Node n, Point p1) {
-		drawing(n, true);
+	private static void drawRerunInverse(Chart chart, Layout layout, Point p,
+			int n, Point p1) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n, true);
 		
 		ChartOptions options = chart.getOptions();
-		if(n.itergraph == null) {
+		if(nodes.itergraph(n) == NodeStore.NONE) {
 			if (options.showBorders()) {
 			    chart.drawRectangle(
 			        p.x,
-			        n.posBegin.y,
-			        n.size.getWidth(),
-			        n.size.getHeight());
+			        layout.beginY(n),
+			        layout.width(n),
+			        layout.height(n));
 			}
 	
 			// the two short lines at the beginning and the end
 			chart.drawLine(
 			    p.x,
-			    n.posLine.y,
+			    layout.lineY(n),
 			    p.x + options.componentGapWidth(),
-			    n.posLine.y);
+			    layout.lineY(n));
 			chart.drawLine(
-			    p.x + n.size.getWidth(),
-			    n.posLine.y,
-			    p.x + n.size.getWidth() - options.componentGapWidth(),
-			    n.posLine.y);
+			    p.x + layout.width(n),
+			    layout.lineY(n),
+			    p.x + layout.width(n) - options.componentGapWidth(),
+			    layout.lineY(n));
 			// the quarter Arcs
 			chart.drawArcCorner(
 			    p.x
 			    + options.componentGapWidth() / 4
 			    + options.arcSize() / 2,
-			    n.posEnd.y
+			    layout.endY(n)
 			    - options.componentGapHeight() / 2
 			    - options.arcSize(),
 			    90);
@@ -1800,14 +1866,14 @@ public class Node {
 			    p.x
 			    + options.componentGapWidth() / 4
 			    + options.arcSize() / 2,
-			    n.posLine.y,
+			    layout.lineY(n),
 			    180);
 			chart.drawArcCorner(
 			    p.x
 			    - options.componentGapWidth() / 4
 			    - options.arcSize() * 3 / 2
-			    + n.size.getWidth(),
-			    n.posEnd.y
+			    + layout.width(n),
+			    layout.endY(n)
 			    - options.componentGapHeight() / 2
 			    - options.arcSize(),
 			    0);
@@ -1815,20 +1881,20 @@ public class Node {
 			    p.x
 			    - options.componentGapWidth() / 4
 			    - options.arcSize() * 3 / 2
-			    + n.size.getWidth(),
-			    n.posLine.y,
+			    + layout.width(n),
+			    layout.lineY(n),
 			    270);
 			// the short vertical lines between the quarter Arcs
 			chart.drawLine(
 			    p.x
 			    + options.componentGapWidth() / 4
 			    + options.arcSize() / 2,
-			    n.posLine.y
+			    layout.lineY(n)
 			    + options.arcSize() / 2,
 			    p.x
 			    + options.componentGapWidth() / 4
 			    + options.arcSize() / 2,
-			    n.posEnd.y
+			    layout.endY(n)
 			    - options.componentGapHeight() / 2
 			    - options.arcSize() / 2
 			    + 1);
@@ -1836,14 +1902,14 @@ public class Node {
 			    p.x
 			    - options.componentGapWidth() / 4
 			    - options.arcSize() / 2
-			    + n.size.getWidth(),
-			    n.posLine.y
+			    + layout.width(n),
+			    layout.lineY(n)
 			    + options.arcSize() / 2,
 			    p.x
 			    - options.componentGapWidth() / 4
 			    - options.arcSize() / 2
-			    + n.size.getWidth(),
-			    n.posEnd.y
+			    + layout.width(n),
+			    layout.endY(n)
 			    - options.componentGapHeight() / 2
 			    - options.arcSize() / 2
 			    + 1);
@@ -1853,99 +1919,99 @@ public class Node {
 			    + options.componentGapWidth() / 4
 			    + options.arcSize()
 			    - 1,
-			    n.posEnd.y
+			    layout.endY(n)
 			    - options.componentGapHeight() / 2,
 			    p.x
 			    - options.componentGapWidth() / 4
 			    - options.arcSize()
-			    + n.size.getWidth()
+			    + layout.width(n)
 			    + 1,
-			    n.posEnd.y
+			    layout.endY(n)
 			    - options.componentGapHeight() / 2);
 	
-			p1.x = p.x + n.size.getWidth() - options.componentGapWidth();
-			n.sub.drawComponentsInverse(chart, p1, n.size);
+			p1.x = p.x + layout.width(n) - options.componentGapWidth();
+			drawComponentsInverse(chart, layout, nodes.sub(n), p1, layout.size(n));
 		} else {
 			if (options.showBorders()) {
                 chart.drawRectangle(
                     p.x,
-                    n.posBegin.y,
-                    n.size.getWidth(),
-                    n.size.getHeight());
+                    layout.beginY(n),
+                    layout.width(n),
+                    layout.height(n));
             }
 
             // the two short lines at the beginning and the end of
             // the first component
             chart.drawLine(
                 p.x,
-                n.posLine.y,
+                layout.lineY(n),
                 p.x
-                + n.size.getWidth() / 2
-                - n.altSize.getWidth() / 2
-                - 1, n.posLine.y);
+                + layout.width(n) / 2
+                - layout.altWidth(n) / 2
+                - 1, layout.lineY(n));
             chart.drawLine(
                 p.x
-                + n.size.getWidth() / 2
-                + n.altSize.getWidth() / 2
+                + layout.width(n) / 2
+                + layout.altWidth(n) / 2
                 + 1,
-                n.posLine.y,
+                layout.lineY(n),
                 p.x
-                + n.size.getWidth(),
-                n.posLine.y);
+                + layout.width(n),
+                layout.lineY(n));
             // the quarter Arcs
             chart.drawArcCorner(
                 p.x
                 + options.componentGapWidth() / 4
                 + options.arcSize() / 2,
-                n.itergraph.posLine.y
+                layout.lineY(nodes.itergraph(n))
                 - options.arcSize(),
                 90);
             chart.drawArcCorner(
                 p.x
                 + options.componentGapWidth() / 4
                 + options.arcSize() / 2,
-                n.posLine.y,
+                layout.lineY(n),
                 180);
             chart.drawArcCorner(
                 p.x
                 - options.componentGapWidth() / 4
                 - options.arcSize() * 3 / 2
-                + n.size.getWidth(),
-                n.itergraph.posLine.y
+                + layout.width(n),
+                layout.lineY(nodes.itergraph(n))
                 - options.arcSize(),
                 0);
             chart.drawArcCorner(
                 p.x
                 - options.componentGapWidth() / 4
                 - options.arcSize() * 3 / 2
-                + n.size.getWidth(),
-                n.posLine.y,
+                + layout.width(n),
+                layout.lineY(n),
                 270);
             // the short vertical lines between the quarter Arcs
             chart.drawLine(
                 p.x
                 + options.componentGapWidth() / 4
                 + options.arcSize() / 2,
-                n.posLine.y
+                layout.lineY(n)
                 + options.arcSize() / 2,
                 p.x
                 + options.componentGapWidth() / 4
                 + options.arcSize() / 2,
-                n.itergraph.posLine.y
+                layout.lineY(nodes.itergraph(n))
                 - options.arcSize() / 2
                 + 1);
             chart.drawLine(
                 p.x
                 - options.componentGapWidth() / 4
                 - options.arcSize() / 2
-                + n.size.getWidth(),
-                n.posLine.y
+                + layout.width(n),
+                layout.lineY(n)
                 + options.arcSize() / 2,
                 p.x
                 - options.componentGapWidth() / 4
                 - options.arcSize() / 2
-                + n.size.getWidth(),
-                n.itergraph.posLine.y
+                + layout.width(n),
+                layout.lineY(nodes.itergraph(n))
                 - options.arcSize() / 2
                 + 1);
             // the two short lines at the beginning and the end of the
@@ -1954,78 +2020,82 @@ public class Node {
                 p.x
                 + options.componentGapWidth() / 4
                 + options.arcSize(),
-                n.itergraph.posLine.y,
+                layout.lineY(nodes.itergraph(n)),
                 p.x
-                + n.size.getWidth() / 2
-                - n.iterSize.getWidth() / 2
+                + layout.width(n) / 2
+                - layout.iterWidth(n) / 2
                 - 1,
-                n.itergraph.posLine.y);
+                layout.lineY(nodes.itergraph(n)));
             chart.drawLine(
                 p.x
-                + n.size.getWidth() / 2
-                + n.iterSize.getWidth() / 2
+                + layout.width(n) / 2
+                + layout.iterWidth(n) / 2
                 + 1,
-                n.itergraph.posLine.y,
+                layout.lineY(nodes.itergraph(n)),
                 p.x
                 - options.componentGapWidth() / 4
                 - options.arcSize()
-                + n.size.getWidth()
+                + layout.width(n)
                 + 1,
-                n.itergraph.posLine.y);
+                layout.lineY(nodes.itergraph(n)));
 
-            n.sub.drawComponentsInverse(
+            drawComponentsInverse(
                 chart,
+                layout, nodes.sub(n),
                 new Point(
                     p.x
-                    + n.size.getWidth() / 2
-                    + n.altSize.getWidth() / 2,
-                    n.posEnd.y),
-                n.size);
-            n.itergraph.drawComponents(
+                    + layout.width(n) / 2
+                    + layout.altWidth(n) / 2,
+                    layout.endY(n)),
+                layout.size(n));
+            drawComponents(
                 chart,
+                layout, nodes.itergraph(n),
                 new Point(
                     p.x
-                    + n.size.getWidth() / 2
-                    - n.iterSize.getWidth() / 2,
-                    n.posEnd.y),
-                n.size);
+                    + layout.width(n) / 2
+                    - layout.iterWidth(n) / 2,
+                    layout.endY(n)),
+                layout.size(n));
 		}
 	}
 
-	private void drawOptionInverse(Chart chart, Point p, Node n, Point p1) {
-		drawing(n, true);
+	private static void drawOptionInverse(Chart chart, Layout layout, Point p,
+			int n, Point p1) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n, true);
 		ChartOptions options = chart.getOptions();
 		if (options.showBorders()) {
 		    chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y,
-		        n.size.getWidth(),
-		        n.size.getHeight());
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n));
 		}
 
 		// the two short lines at the beginning and the end
 		chart.drawLine(
 		    p.x,
-		    n.posLine.y,
+		    layout.lineY(n),
 		    p.x + options.componentGapWidth(),
-		    n.posLine.y);
+		    layout.lineY(n));
 		chart.drawLine(
-		    p.x + n.size.getWidth(),
-		    n.posLine.y,
-		    p.x + n.size.getWidth() - options.componentGapWidth(),
-		    n.posLine.y);
+		    p.x + layout.width(n),
+		    layout.lineY(n),
+		    p.x + layout.width(n) - options.componentGapWidth(),
+		    layout.lineY(n));
 		// the quarter Arcs
 		chart.drawArcCorner(
 		    p.x
 		    + options.componentGapWidth() / 4
 		    - options.arcSize() / 2,
-		    n.posLine.y,
+		    layout.lineY(n),
 		    270);
 		chart.drawArcCorner(
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posEnd.y
+		    layout.endY(n)
 		    - options.arcSize()
 		    - options.componentGapHeight() / 2,
 		    90);
@@ -2033,15 +2103,15 @@ public class Node {
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() / 2
-		    + n.size.getWidth(),
-		    n.posLine.y,
+		    + layout.width(n),
+		    layout.lineY(n),
 		    180);
 		chart.drawArcCorner(
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() * 3 / 2
-		    + n.size.getWidth(),
-		    n.posEnd.y
+		    + layout.width(n),
+		    layout.endY(n)
 		    - options.arcSize()
 		    - options.componentGapHeight() / 2,
 		    0);
@@ -2050,12 +2120,12 @@ public class Node {
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posLine.y
+		    layout.lineY(n)
 		    + options.arcSize() / 2,
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize() / 2,
-		    n.posEnd.y
+		    layout.endY(n)
 		    - options.arcSize() / 2
 		    - options.componentGapHeight() / 2
 		    + 1);
@@ -2063,14 +2133,14 @@ public class Node {
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() / 2
-		    + n.size.getWidth(),
-		    n.posLine.y
+		    + layout.width(n),
+		    layout.lineY(n)
 		    + options.arcSize() / 2,
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize() / 2
-		    + n.size.getWidth(),
-		    n.posEnd.y
+		    + layout.width(n),
+		    layout.endY(n)
 		    - options.arcSize() / 2
 		    - options.componentGapHeight() / 2
 		    + 1);
@@ -2079,124 +2149,137 @@ public class Node {
 		    p.x
 		    + options.componentGapWidth() / 4
 		    + options.arcSize(),
-		    n.posEnd.y
+		    layout.endY(n)
 		    - options.componentGapHeight() / 2,
 		    p.x
 		    - options.componentGapWidth() / 4
 		    - options.arcSize()
-		    + n.size.getWidth()
+		    + layout.width(n)
 		    + 1,
-		    n.posEnd.y
+		    layout.endY(n)
 		    - options.componentGapHeight() / 2);
 
-		p1.x = p.x + n.size.getWidth() - options.componentGapWidth();
-		n.sub.drawComponentsInverse(chart, p1, n.size);
+		p1.x = p.x + layout.width(n) - options.componentGapWidth();
+		drawComponentsInverse(chart, layout, nodes.sub(n), p1, layout.size(n));
 	}
 
-	private void drawDefaultInverse(Chart chart, Point p, Node n) {
-		drawing(n, true);
+	private static void drawDefaultInverse(Chart chart, Layout layout, Point p,
+			int n) {
+		final NodeStore nodes = layout.getNodes();
+		drawing(nodes, n, true);
 		ChartOptions options = chart.getOptions();
 		if (options.showBorders()) {
 		    chart.drawRectangle(
 		        p.x,
-		        n.posBegin.y
+		        layout.beginY(n)
 		        - options.componentGapHeight() / 2,
-		        n.size.getWidth(),
-		        n.size.getHeight());
+		        layout.width(n),
+		        layout.height(n));
 		}
-		if (n.typ.matches(NodeType.TERM, NodeType.EXCEPTION)) {
+		if (nodes.typ(n).matches(NodeType.TERM, NodeType.EXCEPTION)) {
 		    // the quarter Arcs
 		    final int arcSize =
-		        (n.size.getHeight() - options.componentGapHeight()) / 2;
+		        (layout.height(n) - options.componentGapHeight()) / 2;
 		    
 		    final int quarterHeight =
-		        (n.size.getHeight() - options.componentGapHeight()) / 4;
+		        (layout.height(n) - options.componentGapHeight()) / 4;
 
 		    chart.drawRoundRectangle(
 		            p.x, 
-		            n.posBegin.y, 
-		            n.size.getWidth(), 
-		            n.posEnd.y - n.posBegin.y + 
+		            layout.beginY(n), 
+		            layout.width(n), 
+		            layout.endY(n) - layout.beginY(n) + 
 		            quarterHeight - arcSize / 2 + 1, 
 		            arcSize, 
 		            arcSize);
 		    
-		} else if(n.typ == NodeType.PREDICATE) {
+		} else if(nodes.typ(n) == NodeType.PREDICATE) {
 		    chart.drawLine(
 		            p.x,
-		            n.posEnd.y,
+		            layout.endY(n),
 		            p.x
-		            + n.size.getWidth(),
-		            n.posEnd.y);
+		            + layout.width(n),
+		            layout.endY(n));
 		} else {
-		    n.posBegin.x = p.x;
-		    n.posEnd.x = p.x + n.size.getWidth();
+		    chart.drawHotspot(
+		        nodes.symbol(n).name,
+		        p.x,
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n));
 		    chart.drawRectangle(
-		        n.posBegin.x,
-		        n.posBegin.y,
-		        n.size.getWidth(),
-		        n.size.getHeight() - options.componentGapHeight());
+		        p.x,
+		        layout.beginY(n),
+		        layout.width(n),
+		        layout.height(n) - options.componentGapHeight());
 		}
 
-		TextBox textBox = new TextBox(chart, n.sym.name, n.typ);
+		TextBox textBox = new TextBox(options, nodes.symbol(n).name, nodes.typ(n));
 		textBox.drawAtCenter(
+		    chart,
 		    p.x,
-		    n.posBegin.y,
-		    n.size.getWidth(),
-		    n.size.getHeight() - options.componentGapHeight());
+		    layout.beginY(n),
+		    layout.width(n),
+		    layout.height(n) - options.componentGapHeight());
 
-		if(n.typ != NodeType.PREDICATE) {
+		if(nodes.typ(n) != NodeType.PREDICATE) {
 		    chart.drawArrow(
-		        p.x + n.size.getWidth(),
-		        n.posLine.y,
-		        p.x + n.size.getWidth(),
-		        n.posLine.y,
+		        p.x + layout.width(n),
+		        layout.lineY(n),
+		        p.x + layout.width(n),
+		        layout.lineY(n),
 		        Chart.ArrowDirection.LEFT);
 		}
 
-		if (!n.up
-		    && n.next != null
-		    && (n.next.typ.matches(NodeType.TERM,
+		final int next = nodes.next(n);
+		if (!nodes.isUp(n)
+		    && next != NodeStore.NONE
+		    && (nodes.typ(next).matches(NodeType.TERM,
 		                            NodeType.NONTERM,
 		                            NodeType.EXCEPTION)))
 		{
 		    chart.drawArrow(
 		        p.x,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        p.x
 		        - options.componentGapWidth() / 2,
-		        n.posLine.y,
+		        layout.lineY(n),
 		        Chart.ArrowDirection.LEFT);
 		    p.x -= options.componentGapWidth() / 2;
 		}
-		if (!n.up
-		    && n.next != null
-		    && n.next.typ == NodeType.WRAP
-		    && n.next.size.getHeight() == 0)
+		if (!nodes.isUp(n)
+		    && next != NodeStore.NONE
+		    && nodes.typ(next) == NodeType.WRAP
+		    && layout.height(next) == 0)
 		{
-		    if (!n.next.up
-		        && n.next.next != null
-		            && (n.next.next.typ.matches(NodeType.TERM, 
+		    final int afterWrap = nodes.next(next);
+		    if (!nodes.isUp(next)
+		        && afterWrap != NodeStore.NONE
+		            && (nodes.typ(afterWrap).matches(NodeType.TERM, 
 		                                    NodeType.NONTERM,
 		                                    NodeType.EXCEPTION)))
 		    {
 		        chart.drawArrow(
 		            p.x,
-		            n.posLine.y,
+		            layout.lineY(n),
 		            p.x - options.componentGapWidth() / 2,
-		            n.posLine.y,
+		            layout.lineY(n),
 		            Chart.ArrowDirection.LEFT);
 		        p.x -= options.componentGapWidth() / 2;
 		    }
 		}
 	}
 
-    public void accept(Chart.NodeVisitor nodeVisitor) {
-        nodeVisitor.visit(this);
+    public static void accept(
+        NodeStore nodes, int node, Chart.NodeVisitor nodeVisitor)
+    {
+        nodeVisitor.visit(nodes, node);
     }
 
-    public void visitChildren(Chart.NodeVisitor visitor) {
-        switch (typ) {
+    public static void visitChildren(
+        NodeStore nodes, int node, Chart.NodeVisitor visitor)
+    {
+        switch (nodes.typ(node)) {
         case WRAP:
         case PREDICATE:
         case EXCEPTION:
@@ -2205,38 +2288,31 @@ public class Node {
         case EPS:
             break;
         case ALT:
-            for (Node n = this; n != null; n = n.down) {
-                n.sub.accept(visitor);
+            for (int n = node; n != NodeStore.NONE; n = nodes.down(n)) {
+                accept(nodes, nodes.sub(n), visitor);
             }
             break;
         case ITER:
-                for(Node n: nextChildren(sub)) {
-                	n.accept(visitor);
+                for(int n: nextChildren(nodes, nodes.sub(node))) {
+                	accept(nodes, n, visitor);
                 }
             break;
         case OPT:
-            sub.accept(visitor);
+            accept(nodes, nodes.sub(node), visitor);
             break;
         case RERUN:
-			if (itergraph != null) {
-				itergraph.accept(visitor);
+			if (nodes.itergraph(node) != NodeStore.NONE) {
+				accept(nodes, nodes.itergraph(node), visitor);
 			}
-            sub.accept(visitor);
+            accept(nodes, nodes.sub(node), visitor);
         break;
         default:
-            throw new RuntimeException("unknown <" + typ + ">");
+            throw new RuntimeException("unknown <" + nodes.typ(node) + ">");
         }
-		if (next != null && !up) {
-			next.accept(visitor);
+		if (nodes.next(node) != NodeStore.NONE && !nodes.isUp(node)) {
+			accept(nodes, nodes.next(node), visitor);
 		}
     }
-
-    @Override
-    public String toString() {
-    	StringBuffer buffer = new StringBuffer();
-        unparse(buffer);
-        return buffer.toString();
-    }
 }
 
 // End Node.java
@@ -0,0 +1,392 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.graph;
+
+import java.util.Arrays;
+
+/**
+ * The nodes of the graphs of a grammar, held in primitive arrays.
+ *
+ * <p>A node is identified by its number, an index into the arrays, and
+ * {@link #NONE} stands for no node. For each node there is:<ul>
+ * <li>a byte that holds its {@link NodeType type}, whether it represents a
+ *     symbol, whether its <code>next</code> leads to the successor in the
+ *     enclosing structure ("up"), and whether the optimizer created it;</li>
+ * <li><code>next</code>: the successor node;</li>
+ * <li><code>sub</code>: for alt, iter, opt and rerun nodes, the first node of
+ *     the substructure; for a node that represents a symbol, the id of the
+ *     symbol instead, since such a node has no substructure;</li>
+ * <li><code>down</code>: for alt nodes, the next alternative; for rerun
+ *     nodes, the itergraph instead, the b in "a {b a}", since a rerun node
+ *     has no alternatives.</li>
+ * </ul>
+ *
+ * <p>That is 13 bytes per node, where an object with a field for each of
+ * these took 48, and walking a level reads neighbouring ints rather than
+ * following references around the heap. The accessors return
+ * {@link #NONE} or null for the slot a node does not use, as the fields of
+ * the object did.
+ *
+ * <p>While a thread runs one of several tasks in parallel (see
+ * {@link Grammar#runTasks}), the nodes it creates are held in a store of
+ * their own, and numbered -2, -3, and so on, until the task's nodes are
+ * {@link #register registered} and given their final numbers. The task may
+ * link nodes of this store to them.
+ *
+ * @version $Id$
+ */
+public final class NodeStore {
+    /** Number that stands for no node. */
+    public static final int NONE = -1;
+
+    private static final NodeType[] TYPES = NodeType.values();
+
+    private static final int TYPE = 0x0f;
+    private static final int UP = 0x10;
+    private static final int OPTIMIZED = 0x20;
+    private static final int SYMBOL = 0x40;
+
+    private static final int RERUN = NodeType.RERUN.ordinal();
+
+    private final Grammar grammar;
+
+    // the nodes that the current thread has created while it runs a task;
+    // null for the store of a task
+    private final ThreadLocal<NodeStore> pending;
+
+    private byte[] flags;
+    private int[] next;
+    private int[] sub;
+    private int[] down;
+    private int size;
+
+    // the store of a task only: numbers of nodes of the grammar's store that
+    // the task has linked to nodes of this store
+    private int[] linked;
+    private int linkedCount;
+
+    /**
+     * Creates the store of a grammar.
+     */
+    NodeStore(Grammar grammar) {
+        this(grammar, new ThreadLocal<NodeStore>());
+    }
+
+    private NodeStore(Grammar grammar, ThreadLocal<NodeStore> pending) {
+        this.grammar = grammar;
+        this.pending = pending;
+        this.flags = new byte[16];
+        this.next = new int[16];
+        this.sub = new int[16];
+        this.down = new int[16];
+    }
+
+    /**
+     * Returns the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the type of a node.
+     */
+    public NodeType typ(int n) {
+        if (n < 0) {
+            return task().typ(-2 - n);
+        }
+        return TYPES[flags[n] & TYPE];
+    }
+
+    /**
+     * Returns the successor of a node. If the node {@link #isUp is up}, that
+     * is the node whose substructure the node ends.
+     */
+    public int next(int n) {
+        if (n < 0) {
+            return task().next(-2 - n);
+        }
+        return next[n];
+    }
+
+    /**
+     * Returns whether the <code>next</code> of a node leads to the
+     * successor in the enclosing structure.
+     */
+    public boolean isUp(int n) {
+        if (n < 0) {
+            return task().isUp(-2 - n);
+        }
+        return (flags[n] & UP) != 0;
+    }
+
+    /**
+     * Returns whether a node was created by the optimizer.
+     */
+    public boolean isOptimized(int n) {
+        if (n < 0) {
+            return task().isOptimized(-2 - n);
+        }
+        return (flags[n] & OPTIMIZED) != 0;
+    }
+
+    /**
+     * Returns the first node of the substructure of an alt, iter, opt or
+     * rerun node.
+     */
+    public int sub(int n) {
+        if (n < 0) {
+            return task().sub(-2 - n);
+        }
+        return (flags[n] & SYMBOL) != 0 ? NONE : sub[n];
+    }
+
+    /**
+     * Returns the next alternative of an alt node.
+     */
+    public int down(int n) {
+        if (n < 0) {
+            return task().down(-2 - n);
+        }
+        return (flags[n] & TYPE) == RERUN ? NONE : down[n];
+    }
+
+    /**
+     * Returns the itergraph of a rerun node: the b in "a {b a}", or
+     * {@link #NONE} for "a {a}".
+     */
+    public int itergraph(int n) {
+        if (n < 0) {
+            return task().itergraph(-2 - n);
+        }
+        return (flags[n] & TYPE) == RERUN ? down[n] : NONE;
+    }
+
+    /**
+     * Returns the symbol that a node represents, or null if it represents
+     * none.
+     */
+    public Symbol symbol(int n) {
+        if (n < 0) {
+            return task().symbol(-2 - n);
+        }
+        return (flags[n] & SYMBOL) != 0 ? grammar.symbolById(sub[n]) : null;
+    }
+
+    private NodeStore task() {
+        final NodeStore task = pending.get();
+        if (task == null) {
+            throw new IllegalStateException("node is not registered");
+        }
+        return task;
+    }
+
+    /**
+     * Creates a node that represents a symbol.
+     *
+     * @param typ Type of node
+     * @param symbolId Id of the symbol
+     * @return number of the node
+     */
+    int addSymbol(NodeType typ, int symbolId) {
+        return add(typ.ordinal() | SYMBOL, symbolId);
+    }
+
+    /**
+     * Creates a node with a substructure, or none.
+     *
+     * @param typ Type of node
+     * @param sub First node of substructure, or {@link #NONE}
+     * @param optimized Whether the optimizer creates the node
+     * @return number of the node
+     */
+    int add(NodeType typ, int sub, boolean optimized) {
+        return add(typ.ordinal() | (optimized ? OPTIMIZED : 0), sub);
+    }
+
+    private int add(int flags, int sub) {
+        final NodeStore task = pending.get();
+        if (task != null) {
+            return -2 - task.append(flags, sub);
+        }
+        return append(flags, sub);
+    }
+
+    private int append(int flags, int sub) {
+        if (size == next.length) {
+            grow(size * 2);
+        }
+        this.flags[size] = (byte) flags;
+        this.next[size] = NONE;
+        this.sub[size] = sub;
+        this.down[size] = NONE;
+        return size++;
+    }
+
+    private void grow(int capacity) {
+        flags = Arrays.copyOf(flags, capacity);
+        next = Arrays.copyOf(next, capacity);
+        sub = Arrays.copyOf(sub, capacity);
+        down = Arrays.copyOf(down, capacity);
+    }
+
+    /**
+     * Releases the space reserved for nodes that have not been created.
+     */
+    void trim() {
+        if (size < next.length) {
+            grow(Math.max(size, 1));
+        }
+    }
+
+    void setNext(int n, int next) {
+        if (n >= 0) {
+            this.next[n] = next;
+            if (next < NONE) {
+                task().link(n);
+            }
+        } else {
+            task().next[-2 - n] = next;
+        }
+    }
+
+    void setUp(int n, boolean up) {
+        if (n >= 0) {
+            flags[n] = (byte) (up ? flags[n] | UP : flags[n] & ~UP);
+        } else {
+            final NodeStore task = task();
+            final byte f = task.flags[-2 - n];
+            task.flags[-2 - n] = (byte) (up ? f | UP : f & ~UP);
+        }
+    }
+
+    void setSub(int n, int sub) {
+        if (n >= 0) {
+            this.sub[n] = sub;
+            if (sub < NONE) {
+                task().link(n);
+            }
+        } else {
+            task().sub[-2 - n] = sub;
+        }
+    }
+
+    void setDown(int n, int down) {
+        if (n >= 0) {
+            this.down[n] = down;
+            if (down < NONE) {
+                task().link(n);
+            }
+        } else {
+            task().down[-2 - n] = down;
+        }
+    }
+
+    void setItergraph(int n, int itergraph) {
+        setDown(n, itergraph);
+    }
+
+    /**
+     * Makes a node that represents a symbol represent another symbol, of
+     * another type.
+     */
+    void setSymbol(int n, NodeType typ, int symbolId) {
+        flags[n] = (byte) ((flags[n] & ~TYPE) | typ.ordinal());
+        sub[n] = symbolId;
+    }
+
+    private void link(int n) {
+        if (linked == null) {
+            linked = new int[16];
+        } else if (linkedCount == linked.length) {
+            linked = Arrays.copyOf(linked, linkedCount * 2);
+        }
+        linked[linkedCount++] = n;
+    }
+
+    /**
+     * Starts collecting the nodes that the current thread creates in a store
+     * of their own.
+     *
+     * @return Store of the task
+     */
+    NodeStore startTask() {
+        final NodeStore task = new NodeStore(grammar, null);
+        pending.set(task);
+        return task;
+    }
+
+    /**
+     * Stops collecting the nodes that the current thread creates.
+     */
+    void endTask() {
+        pending.remove();
+    }
+
+    /**
+     * Adds the nodes of a task to this store, numbered after the nodes
+     * already there, and replaces their temporary numbers by the final ones,
+     * in the links of its nodes, of the nodes of this store that the task
+     * linked to them, and in a graph.
+     *
+     * <p>No task may be running.
+     *
+     * @param task Store of the task
+     * @param graph Graph that the task built or rewrote
+     */
+    void register(NodeStore task, Graph graph) {
+        final int base = size;
+        if (size + task.size > next.length) {
+            grow(Math.max(size + task.size, size * 2));
+        }
+        for (int i = 0; i < task.size; i++) {
+            flags[base + i] = task.flags[i];
+            next[base + i] = registered(task.next[i], base);
+            sub[base + i] = registered(task.sub[i], base);
+            down[base + i] = registered(task.down[i], base);
+        }
+        size += task.size;
+        for (int i = 0; i < task.linkedCount; i++) {
+            final int n = task.linked[i];
+            next[n] = registered(next[n], base);
+            sub[n] = registered(sub[n], base);
+            down[n] = registered(down[n], base);
+        }
+        if (graph != null) {
+            graph.l = registered(graph.l, base);
+            graph.r = registered(graph.r, base);
+        }
+    }
+
+    private static int registered(int n, int base) {
+        return n < NONE ? base - 2 - n : n;
+    }
+}
+
+// End NodeStore.java
@@ -0,0 +1,70 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.graph;
+
+
+/**
+ * Rewrites that {@link Grammar#optimize()} can apply to the graph of each
+ * nonterminal.
+ *
+ * <p>Each rewrite matches a pattern at one node of a level and replaces it by
+ * a simpler structure that accepts the same sentences. Rewrites can be turned
+ * on and off individually via {@link Grammar#setRewrites}, to trade the size
+ * of the diagrams against the time taken to optimize a huge grammar.
+ *
+ * @version $Id$
+ */
+public enum Rewrite {
+    /**
+     * Removes line breaks (wrap nodes) within substructures, where they
+     * cannot be honored, and repeated line breaks in the outer structure.
+     * Enabled even if the graph is not optimized.
+     */
+    LINEBREAKS,
+
+    /**
+     * Removes an iter or opt whose only content is an iter or opt, as in
+     * <code>{ [ a ] }</code>, and turns <code>[ { a } ]</code> into
+     * <code>{ a }</code>.
+     */
+    REDUNDANCY,
+
+    /**
+     * Removes epsilon nodes and empty iters and opts from sequences, removes
+     * duplicate alternatives, and makes an epsilon alternative the first.
+     */
+    EPSILON,
+
+    /**
+     * Turns <code>a { a }</code> and <code>a { b a }</code> into rerun nodes.
+     */
+    RERUN;
+}
+
+// End Rewrite.java
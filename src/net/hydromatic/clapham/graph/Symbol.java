@@ -43,6 +43,7 @@ public class Symbol {
     public final NodeType typ;         // t, nt
     public final String   name;        // symbol name
     public Graph    graph;       // nt: to first node of syntax graph
+    int id = -1;                   // index in the grammar's symbol table
     /**The production that generate this symbol*/
     private ProductionNode production;
 
@@ -30,34 +30,39 @@
 package net.hydromatic.clapham.graph;
 
 import net.hydromatic.clapham.chart.Chart;
+import net.hydromatic.clapham.chart.ChartOptions;
 
 /**
- * TODO:
+ * The text of a symbol, measured so that it can be drawn at the center of the
+ * symbol's box.
+ *
+ * <p>A text box holds no reference to the chart it is drawn on, so it can be
+ * kept after the chart is gone.</p>
  *
  * @author jhyde
  * @version $Id$
  * @since Sep 1, 2008
  */
 public class TextBox {
-    private final Chart chart;
     private final String text;
     private final int width;
     private final int height;
+    private final int symbolGapWidth;
     private final NodeType nodeType;
 
-    TextBox(Chart chart, String text, NodeType nodeType) {
-        this.chart = chart;
+    TextBox(ChartOptions options, String text, NodeType nodeType) {
         this.text = text;
         this.nodeType = nodeType;
-        this.width = chart.getOptions().stringWidth(text);
-        this.height = chart.getOptions().fontHeight();
+        this.width = options.stringWidth(text);
+        this.height = options.fontHeight();
+        this.symbolGapWidth = options.symbolGapWidth();
     }
 
-    void drawAtCenter(int x1, int y1, int width, int height) {
+    void drawAtCenter(Chart chart, int x1, int y1, int width, int height) {
         int x =
             x1
             + Math.abs(width - this.width) / 2
-            + chart.getOptions().symbolGapWidth() * 3;
+            + symbolGapWidth * 3;
         int y =
             y1
             + Math.abs(height - this.height) / 2
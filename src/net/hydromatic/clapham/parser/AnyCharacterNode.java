@@ -2,7 +2,6 @@ package net.hydromatic.clapham.parser;
 
 import net.hydromatic.clapham.graph.Grammar;
 import net.hydromatic.clapham.graph.Graph;
-import net.hydromatic.clapham.graph.Node;
 import net.hydromatic.clapham.graph.NodeType;
 import net.hydromatic.clapham.graph.Symbol;
 
@@ -21,10 +20,10 @@ public class AnyCharacterNode extends BaseEbnfNode {
     }
 
     public Graph toGraph(Grammar grammar) {
-        Symbol symbol = new Symbol(NodeType.TERM, s);
+        Symbol symbol = grammar.symbol(NodeType.TERM, s);
         // TODO: do we really need to add it as a Terminal?
         // grammar.terminals.add(symbol);
-        Graph graph = new Graph(new Node(grammar, symbol));
+        Graph graph = new Graph(grammar.newNode(symbol));
         return graph;
     }
 
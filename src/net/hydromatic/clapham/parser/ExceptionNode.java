@@ -2,7 +2,6 @@ package net.hydromatic.clapham.parser;
 
 import net.hydromatic.clapham.graph.Grammar;
 import net.hydromatic.clapham.graph.Graph;
-import net.hydromatic.clapham.graph.Node;
 import net.hydromatic.clapham.graph.NodeType;
 import net.hydromatic.clapham.graph.Symbol;
 
@@ -30,9 +29,9 @@ public class ExceptionNode extends BaseEbnfNode {
     }
 
     public Graph toGraph(Grammar grammar) {
-        Symbol symbol = new Symbol(NodeType.EXCEPTION, operator);
+        Symbol symbol = grammar.symbol(NodeType.EXCEPTION, operator);
         // grammar.symbolMap.put(symbol.name, symbol);
-        Graph g = new Graph(new Node(grammar, symbol));
+        Graph g = new Graph(grammar.newNode(symbol));
         Graph g2 = node.toGraph(grammar);
         grammar.makeException(g, g2);
         return g;
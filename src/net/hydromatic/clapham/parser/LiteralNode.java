@@ -30,7 +30,6 @@ package net.hydromatic.clapham.parser;
 
 import net.hydromatic.clapham.graph.Grammar;
 import net.hydromatic.clapham.graph.Graph;
-import net.hydromatic.clapham.graph.Node;
 import net.hydromatic.clapham.graph.NodeType;
 import net.hydromatic.clapham.graph.Symbol;
 
@@ -49,10 +48,9 @@ public class LiteralNode extends BaseEbnfNode {
     }
 
     public Graph toGraph(Grammar grammar) {
-        Symbol symbol = new Symbol(NodeType.TERM, s);
-        grammar.terminals.add(symbol);
+        Symbol symbol = grammar.terminal(s);
         // grammar.symbolMap.put(symbol.name, symbol);
-        Graph graph = new Graph(new Node(grammar, symbol));
+        Graph graph = new Graph(grammar.newNode(symbol));
         return graph;
     }
 
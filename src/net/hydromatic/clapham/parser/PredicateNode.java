@@ -2,7 +2,6 @@ package net.hydromatic.clapham.parser;
 
 import net.hydromatic.clapham.graph.Grammar;
 import net.hydromatic.clapham.graph.Graph;
-import net.hydromatic.clapham.graph.Node;
 import net.hydromatic.clapham.graph.NodeType;
 import net.hydromatic.clapham.graph.Symbol;
 
@@ -25,9 +24,9 @@ public class PredicateNode extends BaseEbnfNode {
 
     public Graph toGraph(Grammar grammar) {
         final Graph g2 = node.toGraph(grammar);
-        Symbol symbol = new Symbol(NodeType.PREDICATE, s);
+        Symbol symbol = grammar.symbol(NodeType.PREDICATE, s);
         // grammar.symbolMap.put(symbol.name, symbol);
-        Graph g1 = new Graph(new Node(grammar, symbol));
+        Graph g1 = new Graph(grammar.newNode(symbol));
         grammar.makePredicate(g1, g2);
         return g1;
     }
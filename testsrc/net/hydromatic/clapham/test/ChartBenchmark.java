@@ -0,0 +1,157 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.test;
+
+import net.hydromatic.clapham.chart.Chart;
+import net.hydromatic.clapham.chart.ChartOptions;
+import net.hydromatic.clapham.chart.java2d.Batik2DChart;
+import net.hydromatic.clapham.chart.java2d.ImageChart;
+import net.hydromatic.clapham.graph.Grammar;
+import net.hydromatic.clapham.graph.GrammarFactory;
+
+import java.io.*;
+
+/**
+ * Micro-benchmark that compares the ways of rendering the rules of a grammar
+ * as PNG images.
+ *
+ * <p>Run it from the command line, for example
+ *
+ * <blockquote><code>java net.hydromatic.clapham.test.ChartBenchmark
+ * testsrc/net/hydromatic/clapham/example/farrago.bnf 20</code></blockquote>
+ *
+ * <p>Each case renders every rule of the grammar into memory, a few times to
+ * warm up and then the given number of times (default 10), and prints the
+ * mean time per rule. The grammar is laid out once, beforehand.
+ */
+public class ChartBenchmark {
+    private static final int WARMUP = 3;
+
+    private final Grammar grammar;
+    private final int iterations;
+
+    ChartBenchmark(Grammar grammar, int iterations) {
+        this.grammar = grammar;
+        this.iterations = iterations;
+    }
+
+    /**
+     * Command-line entry point.
+     *
+     * @param args Command-line arguments: BNF grammar file, and optionally
+     *   the number of iterations
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            throw new RuntimeException("Must specify grammar file name");
+        }
+        final Grammar grammar =
+            GrammarFactory.build(
+                TestLanguages.BNF, new FileReader(args[0]), true);
+        final int iterations =
+            args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final ChartBenchmark benchmark =
+            new ChartBenchmark(grammar, iterations);
+        final Batik2DChart batikChart =
+            (Batik2DChart) prepare(new Batik2DChart(grammar, false));
+        benchmark.run(
+            "batik",
+            new Case() {
+                public void render(String symbolName, OutputStream out)
+                    throws IOException
+                {
+                    batikChart.drawAndExport(symbolName, out);
+                }
+            });
+        final ImageChart imageChart =
+            (ImageChart) prepare(new ImageChart(grammar));
+        benchmark.run(
+            "image",
+            new Case() {
+                public void render(String symbolName, OutputStream out)
+                    throws IOException
+                {
+                    imageChart.drawAndExport(symbolName, out);
+                }
+            });
+    }
+
+    /**
+     * Runs a case, and prints its mean time per rule.
+     *
+     * @param name Name of case
+     * @param benchmarkCase Case
+     */
+    void run(String name, Case benchmarkCase) throws IOException {
+        for (int i = 0; i < WARMUP; i++) {
+            renderAll(benchmarkCase);
+        }
+        long bytes = 0;
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            bytes += renderAll(benchmarkCase);
+        }
+        final long nanos = System.nanoTime() - start;
+        final int rules = iterations * grammar.symbolMap.size();
+        System.out.println(
+            name + ": " + (nanos / 1000L / rules) + " us/rule ("
+            + (bytes / rules) + " bytes/rule)");
+    }
+
+    private long renderAll(Case benchmarkCase) throws IOException {
+        long bytes = 0;
+        for (String symbolName : grammar.symbolMap.keySet()) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            benchmarkCase.render(symbolName, out);
+            bytes += out.size();
+        }
+        return bytes;
+    }
+
+    /**
+     * Creates a chart's options and lays out the grammar, as the exporter
+     * does before it draws the rules. Layout is not part of the timings.
+     */
+    static Chart prepare(Chart chart) {
+        final ChartOptions options = chart.createOptions();
+        options.withOptimize(true).withInitialLocation(20, 0);
+        chart.setOptions(options);
+        chart.prepare();
+        return chart;
+    }
+
+    /**
+     * Way of rendering a rule as an image.
+     */
+    interface Case {
+        void render(String symbolName, OutputStream out) throws IOException;
+    }
+}
+
+// End ChartBenchmark.java
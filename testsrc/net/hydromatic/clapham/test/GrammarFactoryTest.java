@@ -0,0 +1,80 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.test;
+
+import junit.framework.TestCase;
+import net.hydromatic.clapham.graph.Grammar;
+import net.hydromatic.clapham.graph.GrammarFactory;
+import net.hydromatic.clapham.graph.Rewrite;
+
+import java.io.*;
+import java.util.EnumSet;
+
+/**
+ * Unit test for {@link GrammarFactory}.
+ */
+public class GrammarFactoryTest extends TestCase {
+    private static final String FARRAGO =
+        "testsrc/net/hydromatic/clapham/example/farrago.bnf";
+
+    /**
+     * Tests that building and optimizing the rules on several threads gives
+     * the same symbols, and the same nodes with the same numbers, as
+     * building them on one thread.
+     */
+    public void testParallelBuildIsDeterministic() throws Exception {
+        final String serial = printNodes(FARRAGO, 1);
+        assertTrue(serial.length() > 0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(serial, printNodes(FARRAGO, 4));
+        }
+    }
+
+    /**
+     * Builds and optimizes a grammar, and returns what
+     * {@link Grammar#printNodes} writes about it.
+     */
+    private static String printNodes(String fileName, int parallelism)
+        throws Exception
+    {
+        final Grammar grammar =
+            GrammarFactory.build(
+                TestLanguages.BNF,
+                new FileReader(fileName),
+                EnumSet.allOf(Rewrite.class),
+                parallelism);
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final PrintStream out = new PrintStream(bytes, false, "UTF-8");
+        grammar.printNodes(out);
+        out.close();
+        return bytes.toString("UTF-8");
+    }
+}
+
+// End GrammarFactoryTest.java
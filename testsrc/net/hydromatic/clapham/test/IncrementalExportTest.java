@@ -0,0 +1,229 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.test;
+
+import junit.framework.TestCase;
+import net.hydromatic.clapham.chart.Chart;
+import net.hydromatic.clapham.chart.ChartFactory;
+import net.hydromatic.clapham.chart.exporter.ChartExporterMonitor;
+import net.hydromatic.clapham.chart.exporter.ChartHtmlExporter;
+import net.hydromatic.clapham.chart.svg.SvgChart;
+import net.hydromatic.clapham.graph.Grammar;
+
+import java.io.*;
+
+/**
+ * Unit test for the incremental export of
+ * {@link ChartHtmlExporter#withIncremental(boolean)}.
+ *
+ * <p>Each test exports a grammar, marks the images that the export wrote, and
+ * exports the grammar again. An image that still has its mark was kept, not
+ * drawn again.
+ */
+public class IncrementalExportTest extends TestCase {
+    private static final String GRAMMAR =
+        "A ::= \"x\" B\n"
+        + "B ::= \"y\" ( \"z\" )*\n"
+        + "C ::= A B\n";
+
+    private static final String MARK = "kept";
+
+    private static final ChartExporterMonitor QUIET =
+        new ChartExporterMonitor() {
+            public void beginTask(String message, int totalOfWork) {
+            }
+
+            public void subTask(String message) {
+            }
+
+            public void worked(int unit) {
+            }
+
+            public void done() {
+            }
+        };
+
+    private File directory;
+
+    protected void setUp() throws Exception {
+        directory = File.createTempFile("clapham", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    protected void tearDown() throws Exception {
+        delete(directory);
+    }
+
+    /**
+     * Tests that an export that is not incremental writes no manifest.
+     */
+    public void testNoManifest() throws Exception {
+        export(GRAMMAR, false, 1);
+        assertTrue(image("A").exists());
+        assertFalse(new File(output(), "manifest.properties").exists());
+    }
+
+    /**
+     * Tests that exporting an unchanged grammar again keeps every image, and
+     * writes the same page and manifest.
+     */
+    public void testUnchanged() throws Exception {
+        export(GRAMMAR, true, 1);
+        final String page = read(page());
+        final String manifest = read(manifest());
+        mark("A", "B", "C");
+        export(GRAMMAR, true, 1);
+        assertMarked("A", "B", "C");
+        assertEquals(page, read(page()));
+        assertEquals(manifest, read(manifest()));
+    }
+
+    /**
+     * Tests that the manifest does not depend on how many threads draw the
+     * rules.
+     */
+    public void testManifestIsDeterministic() throws Exception {
+        export(GRAMMAR, true, 1);
+        final String manifest = read(manifest());
+        delete(output());
+        export(GRAMMAR, true, 4);
+        assertEquals(manifest, read(manifest()));
+    }
+
+    /**
+     * Tests that editing a rule draws it again, and removes the images of
+     * the rule that the new image does not replace. The other rules keep
+     * their images.
+     */
+    public void testEditedRule() throws Exception {
+        export(GRAMMAR, true, 1);
+        mark("A", "B", "C");
+        final File stale = new File(image("B").getParentFile(), "B.png");
+        write(stale, MARK);
+        export(GRAMMAR.replace("( \"z\" )*", "\"z\""), true, 1);
+        assertMarked("A", "C");
+        assertFalse(MARK.equals(read(image("B"))));
+        assertFalse(stale.exists());
+    }
+
+    /**
+     * Tests that removing a rule deletes its image. A rule that referred to
+     * it is drawn again, because its image map no longer links to it.
+     */
+    public void testDeletedRule() throws Exception {
+        export(GRAMMAR, true, 1);
+        mark("A", "B", "C");
+        export("A ::= \"x\" B\nC ::= A\n", true, 1);
+        assertFalse(image("B").exists());
+        assertFalse(MARK.equals(read(image("A"))));
+        assertFalse(MARK.equals(read(image("C"))));
+    }
+
+    private void export(String grammar, boolean incremental, int parallelism)
+        throws IOException
+    {
+        new ChartHtmlExporter(
+            new ChartFactory() {
+                public Chart createChart(Grammar grammar) {
+                    return new SvgChart(grammar);
+                }
+            })
+            .withOutputDirectory(directory)
+            .withIncremental(incremental)
+            .withParallelism(parallelism)
+            .export(QUIET, "g", new StringReader(grammar), TestLanguages.BNF);
+    }
+
+    private File output() {
+        return new File(directory, "g");
+    }
+
+    private File page() {
+        return new File(output(), "g.html");
+    }
+
+    private File manifest() {
+        return new File(output(), "manifest.properties");
+    }
+
+    private File image(String rule) {
+        return new File(new File(output(), "images"), rule + ".svg");
+    }
+
+    private void mark(String... rules) throws IOException {
+        for (String rule : rules) {
+            assertTrue(image(rule).exists());
+            write(image(rule), MARK);
+        }
+    }
+
+    private void assertMarked(String... rules) throws IOException {
+        for (String rule : rules) {
+            assertEquals(rule, MARK, read(image(rule)));
+        }
+    }
+
+    private static String read(File file) throws IOException {
+        final Reader reader =
+            new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            final StringBuilder buf = new StringBuilder();
+            final char[] chars = new char[4096];
+            for (int n; (n = reader.read(chars)) != -1;) {
+                buf.append(chars, 0, n);
+            }
+            return buf.toString();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void write(File file, String s) throws IOException {
+        final Writer writer =
+            new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(s);
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static void delete(File file) {
+        final File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
+
+// End IncrementalExportTest.java
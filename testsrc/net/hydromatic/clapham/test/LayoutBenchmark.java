@@ -0,0 +1,123 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.test;
+
+import net.hydromatic.clapham.chart.ChartOptions;
+import net.hydromatic.clapham.chart.svg.SvgChart;
+import net.hydromatic.clapham.graph.Grammar;
+import net.hydromatic.clapham.graph.GrammarFactory;
+
+import java.io.StringReader;
+
+/**
+ * Micro-benchmark of the layout of deeply nested rules, where each level of
+ * nesting is an iteration, an option or a choice that contains the next
+ * level.
+ *
+ * <p>Run it from the command line, for example
+ *
+ * <blockquote><code>java net.hydromatic.clapham.test.LayoutBenchmark
+ * 400 20</code></blockquote>
+ *
+ * <p>where 400 is the deepest nesting (default 200) and 20 the number of
+ * iterations (default 10). For each depth it prints the mean time to lay out
+ * the grammar, and the time per level, which stays about the same as the
+ * depth grows if layout is linear in the depth.
+ */
+public class LayoutBenchmark {
+    private static final int WARMUP = 3;
+
+    /**
+     * Command-line entry point.
+     *
+     * @param args Command-line arguments: the deepest nesting, and the
+     *   number of iterations
+     */
+    public static void main(String[] args) throws Exception {
+        final int maxDepth =
+            args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        final int iterations =
+            args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        for (int depth = maxDepth / 8; depth <= maxDepth; depth *= 2) {
+            run(nested(depth), depth, iterations);
+        }
+    }
+
+    /**
+     * Lays out a grammar a few times, and prints the mean time. Building
+     * and optimizing the grammar is not part of the timings.
+     */
+    private static void run(
+        String text,
+        int depth,
+        int iterations) throws Exception
+    {
+        final Grammar grammar =
+            GrammarFactory.build(
+                TestLanguages.BNF, new StringReader(text), true);
+        final ChartOptions options = new SvgChart(grammar).createOptions();
+        options.withInitialLocation(20, 0);
+        for (int i = 0; i < WARMUP; i++) {
+            grammar.layOut(options);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            grammar.layOut(options);
+        }
+        final long nanos = System.nanoTime() - start;
+        System.out.println(
+            "depth=" + depth + ": "
+            + (nanos / 1000L / iterations) + " us, "
+            + (nanos / iterations / depth) + " ns/level");
+    }
+
+    /**
+     * Generates a rule nested to the given depth, such as
+     * <code>R ::= ( a0 ( a1 ( a2 ... | b2 )? )* | b0 )</code>.
+     */
+    static String nested(int depth) {
+        String body = "z";
+        for (int i = depth - 1; i >= 0; i--) {
+            switch (i % 3) {
+            case 0:
+                body = "( a" + i + " " + body + " | b" + i + " )";
+                break;
+            case 1:
+                body = "( a" + i + " " + body + " )*";
+                break;
+            default:
+                body = "( a" + i + " " + body + " )?";
+                break;
+            }
+        }
+        return "R ::= " + body + "\n";
+    }
+}
+
+// End LayoutBenchmark.java
@@ -0,0 +1,133 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.test;
+
+import net.hydromatic.clapham.graph.GrammarFactory;
+
+import java.io.StringReader;
+
+/**
+ * Micro-benchmark of the grammar optimizer on long generated sequences that
+ * end in an iteration, which the optimizer tries to turn into a rerun node
+ * by matching the nodes before the iteration against the nodes in it.
+ *
+ * <p>Run it from the command line, for example
+ *
+ * <blockquote><code>java net.hydromatic.clapham.test.OptimizerBenchmark
+ * 2000 10</code></blockquote>
+ *
+ * <p>where 2000 is the length of the longest sequence (default 1000) and 10
+ * the number of iterations (default 5). For each length it prints the mean
+ * time to build and optimize the grammar.
+ */
+public class OptimizerBenchmark {
+    private static final int WARMUP = 3;
+
+    /**
+     * Command-line entry point.
+     *
+     * @param args Command-line arguments: the longest sequence, and the
+     *   number of iterations
+     */
+    public static void main(String[] args) throws Exception {
+        final int maxLength =
+            args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        final int iterations =
+            args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        for (int length = maxLength / 8; length <= maxLength; length *= 2) {
+            run("rerun", rerunSequence(length), length, iterations);
+            run("no-match", unmatchedSequence(length), length, iterations);
+            run("near-miss", nearMissSequence(length), length, iterations);
+        }
+    }
+
+    /**
+     * Builds and optimizes a grammar a few times, and prints the mean time.
+     */
+    private static void run(
+        String name,
+        String grammar,
+        int length,
+        int iterations) throws Exception
+    {
+        for (int i = 0; i < WARMUP; i++) {
+            GrammarFactory.build(
+                TestLanguages.BNF, new StringReader(grammar), true);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            GrammarFactory.build(
+                TestLanguages.BNF, new StringReader(grammar), true);
+        }
+        final long nanos = System.nanoTime() - start;
+        System.out.println(
+            name + " length=" + length + ": "
+            + (nanos / 1000L / iterations) + " us");
+    }
+
+    /**
+     * Generates <code>R ::= t1 ... tN ( u t1 ... tN )*</code>, which becomes
+     * a rerun node found at the first node.
+     */
+    static String rerunSequence(int length) {
+        final String seq = sequence("t", length);
+        return "R ::=" + seq + " ( u" + seq + " )*\n";
+    }
+
+    /**
+     * Generates <code>R ::= p1 ... pN ( q1 ... qN )*</code>, where no node
+     * before the iteration matches a node in it.
+     */
+    static String unmatchedSequence(int length) {
+        return "R ::=" + sequence("p", length) + " ("
+            + sequence("q", length) + " )*\n";
+    }
+
+    /**
+     * Generates <code>R ::= a ... a ( a ... a b )*</code>, where almost
+     * every pair of nodes matches for a long way before failing.
+     */
+    static String nearMissSequence(int length) {
+        final StringBuilder seq = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            seq.append(" a");
+        }
+        return "R ::=" + seq + " (" + seq + " b )*\n";
+    }
+
+    private static String sequence(String prefix, int length) {
+        final StringBuilder seq = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            seq.append(' ').append(prefix).append(i);
+        }
+        return seq.toString();
+    }
+}
+
+// End OptimizerBenchmark.java
@@ -0,0 +1,285 @@
+/*
+// $Id$
+// Clapham generates railroad diagrams to represent computer language grammars.
+// Copyright (C) 2008-2009 Julian Hyde
+// All rights reserved.
+//
+// Redistribution and use in source and binary forms, with or without
+// modification, are permitted provided that the following conditions are met:
+//
+// * Redistributions of source code must retain the above copyright notice,
+//   this list of conditions and the following disclaimer.
+//
+// * Redistributions in binary form must reproduce the above copyright notice,
+//   this list of conditions and the following disclaimer in the documentation
+//   and/or other materials provided with the distribution.
+//
+// THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+// AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+// IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+// ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+// LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+// CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+// SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+// INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+// CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+// ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+// POSSIBILITY OF SUCH DAMAGE.
+*/
+package net.hydromatic.clapham.test;
+
+import junit.framework.TestCase;
+import net.hydromatic.clapham.graph.*;
+
+import java.io.StringReader;
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Unit test for the graph optimizer, {@link Grammar#optimize()}.
+ *
+ * <p>Each test optimizes a one-rule grammar and checks the graph, written
+ * with <code>[ ]</code> for options, <code>{ }</code> for iterations,
+ * <code>( | )</code> for alternatives and <code>rerun( )</code> for reruns.
+ */
+public class OptimizerTest extends TestCase {
+    /**
+     * Rule that each {@link Rewrite} except {@link Rewrite#LINEBREAKS}
+     * changes.
+     */
+    private static final String REWRITTEN =
+        "R ::= a ( ( b )? )* ( c | ) d ( d )*";
+
+    /**
+     * Tests the graph of a rule that each rewrite changes, with every
+     * rewrite enabled.
+     */
+    public void testAllRewrites() throws Exception {
+        assertEquals(
+            "a {b} (eps | c) rerun(d)",
+            optimize(REWRITTEN, EnumSet.allOf(Rewrite.class)));
+    }
+
+    /**
+     * Tests that disabling {@link Rewrite#LINEBREAKS} leaves the other
+     * rewrites as they are. The parsers create no wrap nodes, so the graph
+     * is the same as with every rewrite enabled.
+     */
+    public void testWithoutLinebreaks() throws Exception {
+        assertEquals(
+            "a {b} (eps | c) rerun(d)",
+            optimize(REWRITTEN, without(Rewrite.LINEBREAKS)));
+    }
+
+    /**
+     * Tests that disabling {@link Rewrite#REDUNDANCY} keeps an option that
+     * is the only content of an iteration.
+     */
+    public void testWithoutRedundancy() throws Exception {
+        assertEquals(
+            "a {[b]} (eps | c) rerun(d)",
+            optimize(REWRITTEN, without(Rewrite.REDUNDANCY)));
+    }
+
+    /**
+     * Tests that disabling {@link Rewrite#EPSILON} leaves the empty
+     * alternative where the rule has it.
+     */
+    public void testWithoutEpsilon() throws Exception {
+        assertEquals(
+            "a {b} (c | eps) rerun(d)",
+            optimize(REWRITTEN, without(Rewrite.EPSILON)));
+    }
+
+    /**
+     * Tests that disabling {@link Rewrite#RERUN} keeps a node and the
+     * iteration of it that follows apart.
+     */
+    public void testWithoutRerun() throws Exception {
+        assertEquals(
+            "a {b} (eps | c) d {d}",
+            optimize(REWRITTEN, without(Rewrite.RERUN)));
+    }
+
+    /**
+     * Tests that the empty alternative is drawn first in every group of
+     * alternatives in a sequence, not only in the first. The optimizer used
+     * to stop looking at a level once it had moved one.
+     */
+    public void testEpsilonFirstInEveryAlternative() throws Exception {
+        assertEquals(
+            "a (eps | b) (eps | c)",
+            optimize("R ::= a ( b | ) ( c | )"));
+        assertEquals(
+            "a {(eps | b) c (eps | d)}",
+            optimize("R ::= a ( ( b | ) c ( d | ) )*"));
+    }
+
+    /**
+     * Tests an option that is the only content of an iteration. Lifting the
+     * option's content into the iteration used to throw
+     * NullPointerException, because the content's last node is not linked.
+     */
+    public void testOptionInIteration() throws Exception {
+        assertEquals("{x}", optimize("R ::= ( ( x )? )*"));
+        assertEquals("c {x}", optimize("R ::= c ( ( x )? )*"));
+        assertEquals("{x y} z", optimize("R ::= ( ( x y )? )* z"));
+    }
+
+    /**
+     * Tests an option in an iteration in an option, which used to overflow
+     * the stack.
+     */
+    public void testOptionInIterationInOption() throws Exception {
+        assertEquals("c {x}", optimize("R ::= c ( ( ( x )? )* )?"));
+        assertEquals("{x}", optimize("R ::= ( ( ( ( x )* )? )* )?"));
+    }
+
+    /**
+     * Tests that an alternative is removed if it is the same as an earlier
+     * alternative once the levels inside both have been rewritten. The old
+     * optimizer compared the alternatives before it rewrote inside them, and
+     * kept both.
+     */
+    public void testAlternativesSameAfterRewrite() throws Exception {
+        assertEquals(
+            "(a | (b | c))",
+            optimize("R ::= ( a | ( b | c ) | ( b | b | c ) )"));
+        assertEquals(
+            "((b) | c)",
+            optimize("R ::= ( ( b | b ) | ( b | b | b ) | c )"));
+    }
+
+    /**
+     * Tests that alternatives whose structural hashes are equal, but which
+     * are different, are all kept. "Aa" and "BB" have the same string hash,
+     * so the hash alone cannot tell the alternatives apart.
+     */
+    public void testAlternativesWithSameHash() throws Exception {
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+        assertEquals("(Aa | BB)", optimize("R ::= ( Aa | BB | Aa )"));
+        assertEquals(
+            "(x {Aa} y | x {BB} y)",
+            optimize("R ::= ( x ( Aa )* y | x ( BB )* y | x ( Aa )* y )"));
+        assertEquals(
+            "((eps | [Aa]) | (eps | [BB]))",
+            optimize("R ::= ( ( ( Aa )? | ) | ( ( BB )? | ) )"));
+    }
+
+    /**
+     * Tests that duplicate alternatives are removed at every level of
+     * nesting.
+     */
+    public void testDuplicateAlternativesAtEveryLevel() throws Exception {
+        assertEquals(
+            "(a | b {(c | d)})",
+            optimize(
+                "R ::= ( a | b ( c | d | c )* | a | b ( c | d )* )"));
+    }
+
+    /**
+     * Builds and optimizes a grammar, and returns the graph of rule "R".
+     */
+    private static String optimize(String rule) throws Exception {
+        return optimize(rule, EnumSet.allOf(Rewrite.class));
+    }
+
+    /**
+     * Builds a grammar, optimizes it with the given rewrites, and returns
+     * the graph of rule "R".
+     */
+    private static String optimize(String rule, Set<Rewrite> rewrites)
+        throws Exception
+    {
+        final Grammar grammar =
+            GrammarFactory.build(
+                TestLanguages.BNF, new StringReader(rule), rewrites);
+        final StringBuilder buf = new StringBuilder();
+        unparseLevel(
+            buf, grammar.getNodes(), grammar.symbolMap.get("R").graph.l,
+            NodeStore.NONE);
+        return buf.toString();
+    }
+
+    /**
+     * Returns every rewrite but one.
+     */
+    private static Set<Rewrite> without(Rewrite rewrite) {
+        final Set<Rewrite> rewrites = EnumSet.allOf(Rewrite.class);
+        rewrites.remove(rewrite);
+        return rewrites;
+    }
+
+    /**
+     * Writes the nodes of a level, and checks that the level ends where it
+     * should: at a node whose <code>next</code> leads back to the enclosing
+     * iteration, or at the end of the rule.
+     */
+    private static void unparseLevel(
+        StringBuilder buf, NodeStore nodes, int n, int parent)
+    {
+        for (int count = 0;; n = nodes.next(n)) {
+            if (count++ > 0) {
+                buf.append(' ');
+            }
+            unparse(buf, nodes, n);
+            if (nodes.isUp(n)) {
+                if (parent != NodeStore.NONE
+                    && nodes.typ(parent) == NodeType.ITER)
+                {
+                    assertEquals(parent, nodes.next(n));
+                }
+                return;
+            }
+            if (nodes.next(n) == NodeStore.NONE) {
+                return;
+            }
+            assertTrue("level does not end", parent != nodes.next(n));
+        }
+    }
+
+    private static void unparse(StringBuilder buf, NodeStore nodes, int n) {
+        switch (nodes.typ(n)) {
+        case TERM:
+        case NONTERM:
+            buf.append(nodes.symbol(n).name);
+            break;
+        case EPS:
+            buf.append("eps");
+            break;
+        case OPT:
+            buf.append('[');
+            unparseLevel(buf, nodes, nodes.sub(n), n);
+            buf.append(']');
+            break;
+        case ITER:
+            buf.append('{');
+            unparseLevel(buf, nodes, nodes.sub(n), n);
+            buf.append('}');
+            break;
+        case RERUN:
+            buf.append("rerun(");
+            unparseLevel(buf, nodes, nodes.sub(n), n);
+            if (nodes.itergraph(n) != NodeStore.NONE) {
+                buf.append(", ");
+                unparseLevel(buf, nodes, nodes.itergraph(n), n);
+            }
+            buf.append(')');
+            break;
+        case ALT:
+            buf.append('(');
+            for (int a = n; a != NodeStore.NONE; a = nodes.down(a)) {
+                if (a != n) {
+                    buf.append(" | ");
+                }
+                unparseLevel(buf, nodes, nodes.sub(a), a);
+            }
+            buf.append(')');
+            break;
+        default:
+            buf.append(nodes.typ(n));
+        }
+    }
+}
+
+// End OptimizerTest.java
@@ -2,7 +2,6 @@
 // $Id$
 // Clapham generates railroad diagrams to represent computer language grammars.
 // Copyright (C) 2008-2009 Julian Hyde
-// Copyright (c) 2005 Stefan Schoergenhumer, Markus Dopler
 // All rights reserved.
 //
 // Redistribution and use in source and binary forms, with or without
@@ -27,22 +26,35 @@
 // ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
 // POSSIBILITY OF SUCH DAMAGE.
 */
-package net.hydromatic.clapham.graph;
+package net.hydromatic.clapham.test;
+
+import net.hydromatic.clapham.parser.Language;
+import net.hydromatic.clapham.parser.LanguageParserException;
+import net.hydromatic.clapham.parser.ProductionNode;
+import net.hydromatic.clapham.parser.bnf.BnfParser;
+
+import java.io.StringReader;
+import java.util.List;
 
 /**
- * TODO:
- *
- * @author jhyde
- * @version $Id$
- * @since Aug 27, 2008
+ * Languages that the tests and benchmarks read grammars in.
  */
-public class AltNode extends Node {
-    public AltNode(Grammar grammar, Node sub) {
-        super(
-            grammar,
-            NodeType.ALT,
-            sub);
+class TestLanguages {
+    /** Parses grammars in BNF. */
+    static final Language BNF = new Language() {
+        public List<ProductionNode> parse(String input)
+            throws LanguageParserException
+        {
+            try {
+                return new BnfParser(new StringReader(input)).Syntax();
+            } catch (Throwable t) {
+                throw new LanguageParserException(t, t.getMessage());
+            }
+        }
+    };
+
+    private TestLanguages() {
     }
 }
 
-// End AltNode.java
+// End TestLanguages.java